@@ -0,0 +1,64 @@
+package org.acme.bench;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.guacamole.GuacamoleException;
+import org.apache.guacamole.io.GuacamoleReader;
+import org.apache.guacamole.io.ReaderGuacamoleReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Guacamole relay as done by {@code GuacTunnelResource}: parse instructions from
+ * guacd with a {@link GuacamoleReader} and copy them into a String per WebSocket
+ * frame, and copy inbound frames into a char[] for the writer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuacRelayBenchmark {
+
+    private static final String INSTRUCTIONS =
+            "4.sync,10.1700000000;"
+            + "3.img,1.1,2.14,1.0,9.image/png,2.64,3.128;"
+            + "4.blob,1.1,28.iVBORw0KGgoAAAANSUhEUgAAAAEAAAAB;"
+            + "3.end,1.1;";
+
+    private String stream;
+    private GuacamoleReader reader;
+    private String inbound;
+
+    @Setup
+    public void setup() {
+        stream = INSTRUCTIONS.repeat(4096);
+        reader = new ReaderGuacamoleReader(new StringReader(stream));
+        inbound = "5.mouse,3.512,3.384,1.0;";
+    }
+
+    @Benchmark
+    public String outboundFrame() throws GuacamoleException {
+        char[] buf = reader.read();
+        if (buf == null) {
+            reader = new ReaderGuacamoleReader(new StringReader(stream));
+            buf = reader.read();
+        }
+        return new String(buf);
+    }
+
+    @Benchmark
+    public char[] inboundFrame() {
+        return inbound.toCharArray();
+    }
+}
@@ -0,0 +1,78 @@
+package org.acme.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.acme.terminal.TerminalFrames;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-chunk cost of the SSH terminal relay framing in {@link TerminalFrames}: the stdout
+ * pumps turn each read into a text frame, and inbound frames are split and encoded back
+ * to bytes for stdin. Covers both the {@code /ws/sshterm} and {@code /ws/sshmux} formats.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TerminalRelayBenchmark {
+
+    private static final char MSG_DATA = '0';
+
+    @Param({ "16", "1024", "8192" })
+    int chunkSize;
+
+    private byte[] buffer;
+    private String inboundFrame;
+    private String inboundMuxFrame;
+
+    @Setup
+    public void setup() {
+        byte[] line = "R1# show ip bgp summary\r\nNeighbor        V         AS   MsgRcvd   MsgSent\r\n"
+                .getBytes(StandardCharsets.UTF_8);
+        buffer = new byte[chunkSize];
+        for (int i = 0; i < chunkSize; i++) {
+            buffer[i] = line[i % line.length];
+        }
+        char[] keys = new char[Math.min(chunkSize, 256)];
+        Arrays.fill(keys, 'a');
+        inboundFrame = MSG_DATA + new String(keys);
+        inboundMuxFrame = TerminalFrames.mux(MSG_DATA, 12, new String(keys));
+    }
+
+    @Benchmark
+    public String outboundFrame() {
+        return TerminalFrames.output(MSG_DATA, buffer, buffer.length);
+    }
+
+    @Benchmark
+    public byte[] inboundFrame() {
+        char type = inboundFrame.charAt(0);
+        return type == MSG_DATA ? TerminalFrames.input(TerminalFrames.payload(inboundFrame)) : null;
+    }
+
+    @Benchmark
+    public String outboundMuxFrame() {
+        return TerminalFrames.mux(MSG_DATA, 12, TerminalFrames.text(buffer, buffer.length));
+    }
+
+    @Benchmark
+    public byte[] inboundMuxFrame() {
+        int channel = TerminalFrames.channel(inboundMuxFrame);
+        if (channel == TerminalFrames.NO_CHANNEL) return null;
+        return TerminalFrames.input(TerminalFrames.muxPayload(inboundMuxFrame));
+    }
+}
@@ -0,0 +1,49 @@
+package org.acme.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.acme.usage.UsagePlan;
+import org.acme.ws.WsTicketService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ticket issue + consume round-trip, single threaded and under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WsTicketBenchmark {
+
+    private WsTicketService tickets;
+
+    @Setup
+    public void setup() {
+        tickets = new WsTicketService();
+    }
+
+    @Benchmark
+    public Object issueAndConsume() {
+        WsTicketService.Ticket ticket = tickets.issue("student", "session", UsagePlan.FREE);
+        return tickets.consume(ticket.value());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object issueAndConsumeContended() {
+        WsTicketService.Ticket ticket = tickets.issue("student", "session", UsagePlan.FREE);
+        return tickets.consume(ticket.value());
+    }
+}
@@ -0,0 +1,85 @@
+package org.acme.compression;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.acme.metrics.LabMetrics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Cost and ratio of {@link FrameCompressor} on router CLI output of different frame
+ * sizes. The {@code wireBytes}/{@code rawBytes} auxiliary counters give the ratio.
+ * Lives in the compressor's package to use its package-private constructor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCompressorBenchmark {
+
+    private static final String ROUTES = "B>* 10.%d.%d.0/24 [20/0] via 192.0.2.%d, eth1, weight 1, 00:%02d:%02d\r\n";
+
+    @Param({ "256", "4096", "16384" })
+    int frameSize;
+
+    @Param({ "1", "6" })
+    int level;
+
+    private FrameCompressor compressor;
+    private String[] frames;
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long rawBytes;
+        public long wireBytes;
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        compressor = new FrameCompressor(level, 0,
+                new LabMetrics(new SimpleMeterRegistry()).compression(LabMetrics.Endpoint.SSHTERM));
+        frames = new String[64];
+        int route = 0;
+        for (int f = 0; f < frames.length; f++) {
+            StringBuilder frame = new StringBuilder(frameSize + 128).append('0');
+            while (frame.length() < frameSize) {
+                route++;
+                frame.append(String.format(ROUTES, route / 250, route % 250, route % 7 + 1, route % 60, route % 59));
+            }
+            frames[f] = frame.substring(0, frameSize);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        compressor.close();
+    }
+
+    @Benchmark
+    public ByteBuffer compress(Bytes bytes) {
+        String frame = frames[next++ & (frames.length - 1)];
+        ByteBuffer wire = compressor.compress(frame);
+        bytes.rawBytes += frame.length();
+        bytes.wireBytes += wire.remaining();
+        return wire;
+    }
+}
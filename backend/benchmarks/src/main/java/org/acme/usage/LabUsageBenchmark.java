@@ -0,0 +1,107 @@
+package org.acme.usage;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.acme.LabScheduler;
+import org.acme.diagnostics.EventLog;
+import org.acme.diagnostics.EventLogSettings;
+import org.acme.metrics.LabMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.runtime.QuarkusPrincipal;
+import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+
+/**
+ * {@link LabUsageService} reservation lifecycle and plan resolution. Lives in the
+ * service's package so it can wire the injected fields without CDI.
+ * {@code principals=1} puts every thread on the same account stripe; {@code 200000}
+ * approximates a campus-wide account table for the allocation-free quota check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabUsageBenchmark {
+
+    @Param({ "1", "1000", "200000" })
+    int principals;
+
+    private LabUsageService service;
+    private String[] names;
+    private SecurityIdentity premiumIdentity;
+    private SecurityIdentity freeIdentity;
+
+    @Setup
+    public void setup() {
+        service = new LabUsageService();
+        service.settings = new LabUsageSettings(100_000, 100_000, 30, "premium", false, 15, 15);
+        service.metrics = new LabMetrics(new SimpleMeterRegistry());
+        service.scheduler = new LabScheduler();
+        service.events = new EventLog(new EventLogSettings(8192, 1, 200, 1, 200, 100, 50), service.metrics);
+        service.initOverride();
+        names = new String[principals];
+        for (int i = 0; i < principals; i++) {
+            names[i] = "student" + i;
+            service.snapshot(names[i], UsagePlan.FREE);
+        }
+        premiumIdentity = QuarkusSecurityIdentity.builder()
+                .setPrincipal(new QuarkusPrincipal("alice"))
+                .addRole("student")
+                .addRole("premium")
+                .build();
+        freeIdentity = QuarkusSecurityIdentity.builder()
+                .setPrincipal(new QuarkusPrincipal("bob"))
+                .addRole("student")
+                .addAttribute("subscription", "basic")
+                .build();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object prepareAndFinishContended() {
+        String principal = names[ThreadLocalRandom.current().nextInt(names.length)];
+        LabUsageService.UsageReservation reservation = service.prepareSession(principal, UsagePlan.FREE);
+        service.startSession(reservation.sessionId());
+        return service.finishSession(reservation.sessionId());
+    }
+
+    @Benchmark
+    public Object prepareAndFinish() {
+        String principal = names[ThreadLocalRandom.current().nextInt(names.length)];
+        LabUsageService.UsageReservation reservation = service.prepareSession(principal, UsagePlan.FREE);
+        service.startSession(reservation.sessionId());
+        return service.finishSession(reservation.sessionId());
+    }
+
+    @Benchmark
+    public long quotaCheck() {
+        String principal = names[ThreadLocalRandom.current().nextInt(names.length)];
+        return service.remainingSeconds(principal, UsagePlan.FREE);
+    }
+
+    @Benchmark
+    public UsagePlan resolvePlanPremiumRole() {
+        return service.resolvePlan(premiumIdentity);
+    }
+
+    @Benchmark
+    public UsagePlan resolvePlanFree() {
+        return service.resolvePlan(freeIdentity);
+    }
+}
@@ -1,6 +1,9 @@
 package org.acme;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.websocket.CloseReason;
 import jakarta.websocket.OnClose;
 import jakarta.websocket.OnError;
@@ -11,10 +14,26 @@ import jakarta.websocket.server.ServerEndpoint;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.*;
 
+import org.acme.admission.DrainController;
+import org.acme.compression.FrameCompression;
+import org.acme.compression.FrameCompressor;
+import org.acme.diagnostics.BlockedWriteEvent;
+import org.acme.diagnostics.EventLog;
+import org.acme.diagnostics.GuacdHandshakeEvent;
+import org.acme.diagnostics.RelayFrameEvent;
+import org.acme.guac.GuacDisplay;
+import org.acme.guac.LinkMonitor;
+import org.acme.guac.LinkQuality;
+import org.acme.health.HealthMonitor;
+import org.acme.health.TargetUnavailableException;
+import org.acme.ratelimit.OutputShaper;
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.UsagePlan;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
@@ -51,12 +70,14 @@ public class GuacTunnelResource {
 
 
     private static final class Conn {
+        final Session ws;
         final GuacamoleSocket socket;
         final GuacamoleReader reader;
         final GuacamoleWriter writer;
+        final LinkMonitor link;
         final Future<?> pumpTask;
-        Conn(GuacamoleSocket s, GuacamoleReader r, GuacamoleWriter w, Future<?> t) {
-            socket = s; reader = r; writer = w; pumpTask = t;
+        Conn(Session ws, GuacamoleSocket s, GuacamoleReader r, GuacamoleWriter w, LinkMonitor l, Future<?> t) {
+            this.ws = ws; socket = s; reader = r; writer = w; link = l; pumpTask = t;
         }
     }
 
@@ -64,10 +85,74 @@ public class GuacTunnelResource {
     private final ExecutorService pumps = Executors.newCachedThreadPool(r -> {
         Thread t = new Thread(r, "guac-pump"); t.setDaemon(true); return t;
     });
+
+    @Inject
+    LabMetrics metrics;
+
+    @Inject
+    HealthMonitor health;
+
+    @Inject
+    FrameCompression compression;
+
+    @Inject
+    LabScheduler scheduler;
+
+    @Inject
+    OutputShaper outputShaper;
+
+    @Inject
+    EventLog events;
+
+    @Inject
+    DrainController drain;
+
+    private LabMetrics.RelayMeters relayMeters;
+
+    @PostConstruct
+    void initMetrics() {
+        relayMeters = metrics.relay(LabMetrics.Endpoint.TUNNEL);
+        metrics.gauge("lab.guac.active", "Open Guacamole tunnels", sessions, Map::size, "endpoint", "tunnel");
+        // the Guacamole protocol has no way to ask a client to move, so tunnels are closed at staggered times
+        drain.register(new DrainController.Participant() {
+            @Override
+            public int active() {
+                return sessions.size();
+            }
+
+            @Override
+            public void migrate(Duration spread) {
+                sessions.values().forEach(c -> scheduler.schedule(() -> closeDraining(c.ws),
+                        DrainController.reconnectDelay(spread)));
+            }
+
+            @Override
+            public void closeAll() {
+                sessions.values().forEach(c -> closeDraining(c.ws));
+            }
+        });
+    }
+
+    @PreDestroy
+    void closeTunnels() {
+        sessions.values().forEach(c -> {
+            try { if (c.pumpTask != null) c.pumpTask.cancel(true); } catch (Exception ignored) {}
+            try { c.socket.close(); } catch (Exception ignored) {}
+        });
+        sessions.clear();
+        pumps.shutdownNow();
+    }
     
     @OnOpen
     public void onOpen(Session ws) {
+        if (drain.isDraining()) {
+            closeDraining(ws);
+            return;
+        }
         try {
+            if (!health.isAvailable(HealthMonitor.Kind.SSH, sshHost, sshPort)) {
+                throw HealthMonitor.unavailable(HealthMonitor.Kind.SSH);
+            }
             final String resolvedSsh = InetAddress.getByName(sshHost).getHostAddress();
             Log.infof("Starting tunnel %s: guacd %s:%d -> ssh %s:%d (%s), user=%s",
             ws.getId(), guacdHost, guacdPort, sshHost, sshPort, resolvedSsh, sshUser);
@@ -80,12 +165,12 @@ public class GuacTunnelResource {
             cfg.setParameter("password", sshPass);
             cfg.setParameter("ignore-host-key", "true"); // demo SSH containers rotate host keys
 
-            GuacamoleClientInformation info = new GuacamoleClientInformation();
-            info.setOptimalResolution(1280);
-            info.setOptimalScreenHeight(720);
-            info.setOptimalScreenWidth(1280);
-            info.setOptimalResolution(96);
-            Log.infof("Using SSH %s:%d via guacd %s:%d", sshHost, sshPort, guacdHost, guacdPort);
+            LinkQuality linkHint = GuacDisplay.linkHint(ws);
+            GuacDisplay.configure(cfg, linkHint);
+            GuacamoleClientInformation info = GuacDisplay.clientInformation(ws, linkHint);
+            Log.infof("Using SSH %s:%d via guacd %s:%d, display %dx%d@%d, link %s", sshHost, sshPort, guacdHost,
+                    guacdPort, info.getOptimalScreenWidth(), info.getOptimalScreenHeight(),
+                    info.getOptimalResolution(), linkHint);
 
 
         //     GuacamoleSocket raw = new InetGuacamoleSocket(guacdHost, guacdPort);
@@ -103,16 +188,39 @@ public class GuacTunnelResource {
         //     safeClose(ws);
         // }
         Log.infof("WS %s connecting guacd %s:%d ...", ws.getId(), guacdHost, guacdPort);
-        GuacamoleSocket raw = new InetGuacamoleSocket(guacdHost, guacdPort); // may throw
+        long handshakeStart = System.nanoTime();
+        GuacdHandshakeEvent handshake = GuacdHandshakeEvent.begin(LabMetrics.Endpoint.TUNNEL.tag(), cfg.getProtocol(),
+                sshHost + ":" + sshPort);
+        health.checkAvailable(HealthMonitor.Kind.GUACD, guacdHost, guacdPort);
+        GuacamoleSocket raw;
+        try {
+            raw = new InetGuacamoleSocket(guacdHost, guacdPort);
+        } catch (GuacamoleException e) {
+            health.recordFailure(HealthMonitor.Kind.GUACD, guacdHost, guacdPort, e);
+            throw e;
+        }
+        health.recordSuccess(HealthMonitor.Kind.GUACD, guacdHost, guacdPort);
         GuacamoleSocket configured = new ConfiguredGuacamoleSocket(raw, cfg, info);
+        metrics.recordGuacdHandshake(System.nanoTime() - handshakeStart);
+        handshake.commit();
 
         var reader = configured.getReader();
         var writer = configured.getWriter();
-        var task = pumps.submit(() -> pumpGuacToBrowser(ws, reader));
-        sessions.put(ws.getId(), new Conn(configured, reader, writer, task));
+        FrameCompressor compressor = compression.open(ws, LabMetrics.Endpoint.TUNNEL);
+        LinkMonitor link = new LinkMonitor(linkHint, metrics.guacLink(LabMetrics.Endpoint.TUNNEL), scheduler);
+        // the tunnel is not tied to a lab user, so it is shaped as the free plan
+        OutputShaper.Flow shaping = outputShaper.open(UsagePlan.FREE);
+        var task = pumps.submit(() -> pumpGuacToBrowser(ws, reader, compressor, link, shaping));
+        sessions.put(ws.getId(), new Conn(ws, configured, reader, writer, link, task));
 
-        Log.infof("Tunnel up for %s -> %s:%d", ws.getId(), sshHost, sshPort);
+        events.info(EventLog.Category.TUNNEL, "tunnel.open", "endpoint", LabMetrics.Endpoint.TUNNEL.tag(),
+                "ws", ws.getId(), "target", sshHost, "port", sshPort);
 
+        } catch (TargetUnavailableException e) {
+            Log.warnf("WS %s rejected: %s", ws.getId(), e.getMessage());
+            try {
+                if (ws.isOpen()) ws.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, e.getMessage()));
+            } catch (IOException ignored) {}
         } catch (GuacamoleException e) {
             Log.errorf(e, "WS %s GuacamoleException: %s", ws.getId(), e.getMessage());
             safeClose(ws);
@@ -140,16 +248,38 @@ public class GuacTunnelResource {
         Conn c = sessions.get(ws.getId());
         if (c == null) { safeClose(ws); return; }
         try {
-            System.out.println("WS IN " + msg.length() + " chars: " +
-                (msg.length() > 40 ? msg.substring(0,40) + "..." : msg));
-            char[] data = msg.toCharArray();
-            c.writer.write(data, 0, data.length);
+            events.debug(EventLog.Category.MESSAGE, "guac.in", "ws", ws.getId(), "chars", msg.length());
+            c.link.inbound(msg);
+            if (c.link.deferResize(msg, resize -> forwardResize(ws, c, resize))) {
+                return;
+            }
+            write(c, msg);
         } catch (GuacamoleException e) {
             Log.warn("Error writing to guacd", e);
             onClose(ws);
         }
     }   
 
+    private void forwardResize(Session ws, Conn c, String resize) {
+        try {
+            write(c, resize);
+        } catch (GuacamoleException e) {
+            Log.warn("Error writing to guacd", e);
+            onClose(ws);
+        }
+    }
+
+    private void write(Conn c, String msg) throws GuacamoleException {
+        char[] data = msg.toCharArray();
+        // Deferred resizes are written from the scheduler, concurrently with onMessage.
+        synchronized (c.writer) {
+            BlockedWriteEvent event = BlockedWriteEvent.begin(BlockedWriteEvent.GUACD, data.length);
+            c.writer.write(data, 0, data.length);
+            event.commit();
+        }
+        relayMeters.inbound(data.length);
+    }
+
     @OnClose
     public void onClose(Session ws) {
         Conn c = sessions.remove(ws.getId());
@@ -158,9 +288,8 @@ public class GuacTunnelResource {
             try { c.socket.close(); } catch (Exception ignored) {}
         }
         safeClose(ws);
-        Log.infof("Tunnel closed for %s", ws.getId());
-        Log.infof("Service name %s", guacdHost);
-
+        events.info(EventLog.Category.TUNNEL, "tunnel.closed", "endpoint", LabMetrics.Endpoint.TUNNEL.tag(),
+                "ws", ws.getId());
     }
     public void onClose(Session ws, CloseReason reason) {
     var c = sessions.remove(ws.getId());
@@ -185,14 +314,25 @@ public class GuacTunnelResource {
     if (ws != null) onClose(ws, new CloseReason(CloseReason.CloseCodes.UNEXPECTED_CONDITION, t.getMessage()));
     }
 
-    private void pumpGuacToBrowser(Session ws, GuacamoleReader reader) {
+    private void pumpGuacToBrowser(Session ws, GuacamoleReader reader, FrameCompressor compressor,
+            LinkMonitor link, OutputShaper.Flow shaping) {
         try {
-            char[] buf;
-            while (ws.isOpen() && (buf = reader.read()) != null) {
-                if (buf.length > 0) ws.getBasicRemote().sendText(new String(buf));
+            while (ws.isOpen()) {
+                RelayFrameEvent frame = RelayFrameEvent.begin(LabMetrics.Endpoint.TUNNEL.tag());
+                char[] buf = reader.read();
+                if (buf == null) break;
+                if (buf.length > 0) {
+                    frame.read(buf.length);
+                    link.outbound(buf);
+                    if (shaping != null) shaping.pace(buf.length);
+                    FrameCompression.sendBlocking(ws, compressor, new String(buf));
+                    relayMeters.outbound(buf.length);
+                    frame.commit();
+                }
             }
         } catch (Exception ignored) {
         } finally {
+            FrameCompression.close(compressor);
             safeClose(ws);
         }
     }
@@ -201,4 +341,10 @@ public class GuacTunnelResource {
         try { if (ws != null && ws.isOpen()) ws.close(); } catch (IOException ignored) {}
     }
 
+    private void closeDraining(Session ws) {
+        try {
+            if (ws.isOpen()) ws.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, DrainController.DRAINING_MESSAGE));
+        } catch (IOException ignored) {}
+    }
+
 }
@@ -3,6 +3,7 @@ package org.acme;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
@@ -10,6 +11,21 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import org.acme.admission.DrainController;
+import org.acme.compression.FrameCompression;
+import org.acme.compression.FrameCompressor;
+import org.acme.diagnostics.BlockedWriteEvent;
+import org.acme.diagnostics.EventLog;
+import org.acme.diagnostics.GuacdHandshakeEvent;
+import org.acme.diagnostics.RelayFrameEvent;
+import org.acme.guac.GuacDisplay;
+import org.acme.guac.LinkMonitor;
+import org.acme.guac.LinkQuality;
+import org.acme.health.HealthMonitor;
+import org.acme.health.TargetUnavailableException;
+import org.acme.ratelimit.OutputShaper;
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.UsagePlan;
 import org.apache.guacamole.GuacamoleException;
 import org.apache.guacamole.io.GuacamoleReader;
 import org.apache.guacamole.io.GuacamoleWriter;
@@ -21,7 +37,10 @@ import org.apache.guacamole.protocol.GuacamoleConfiguration;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import io.quarkus.logging.Log;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.websocket.CloseReason;
 import jakarta.websocket.OnClose;
 import jakarta.websocket.OnError;
@@ -58,18 +77,81 @@ public class GuacTunnelResourcessh {
     Target(String h,int p,String u,String pw){host=h;port=p;user=u;pass=pw;}
   }
   private static final class Conn {
+    final Session ws;
     final GuacamoleSocket socket;
     final GuacamoleReader reader;
     final GuacamoleWriter writer;
+    final LinkMonitor link;
     final Future<?> pumpTask;
-    Conn(GuacamoleSocket s, GuacamoleReader r, GuacamoleWriter w, Future<?> t){ socket=s; reader=r; writer=w; pumpTask=t; }
+    Conn(Session ws, GuacamoleSocket s, GuacamoleReader r, GuacamoleWriter w, LinkMonitor l, Future<?> t){ this.ws=ws; socket=s; reader=r; writer=w; link=l; pumpTask=t; }
   }
 
   private final Map<String, Conn> sessions = new ConcurrentHashMap<>();
   private final ExecutorService pumps = Executors.newCachedThreadPool(r -> { Thread t=new Thread(r,"guac-pump"); t.setDaemon(true); return t; });
+
+  @Inject
+  LabMetrics metrics;
+
+  @Inject
+  HealthMonitor health;
+
+  @Inject
+  FrameCompression compression;
+
+  @Inject
+  LabScheduler scheduler;
+
+  @Inject
+  OutputShaper outputShaper;
+
+  @Inject
+  EventLog events;
+
+  @Inject
+  DrainController drain;
+
+  private LabMetrics.RelayMeters relayMeters;
+
+  @PostConstruct
+  void initMetrics() {
+    relayMeters = metrics.relay(LabMetrics.Endpoint.CONT);
+    metrics.gauge("lab.guac.active", "Open Guacamole tunnels", sessions, Map::size, "endpoint", "cont");
+    // Guacamole clients cannot be asked to move, so tunnels are closed at staggered times
+    drain.register(new DrainController.Participant() {
+      @Override
+      public int active() {
+        return sessions.size();
+      }
+
+      @Override
+      public void migrate(Duration spread) {
+        sessions.values().forEach(c -> scheduler.schedule(() -> closeDraining(c.ws),
+            DrainController.reconnectDelay(spread)));
+      }
+
+      @Override
+      public void closeAll() {
+        sessions.values().forEach(c -> closeDraining(c.ws));
+      }
+    });
+  }
+
+  @PreDestroy
+  void closeTunnels() {
+    sessions.values().forEach(c -> {
+      try { if (c.pumpTask != null) c.pumpTask.cancel(true); } catch (Exception ignored) {}
+      try { c.socket.close(); } catch (Exception ignored) {}
+    });
+    sessions.clear();
+    pumps.shutdownNow();
+  }
   
   @OnOpen
 public void onOpen(Session ws, @PathParam("node") String node) {
+  if (drain.isDraining()) {
+    closeDraining(ws);
+    return;
+  }
   try {
         Log.infof("WS %s open; node=%s", safeId(ws), node);
 
@@ -85,20 +167,19 @@ public void onOpen(Session ws, @PathParam("node") String node) {
         return;
       }
 
-      String host = "clab-bgp01-" + node; // containerlab hostname convention
-      // Quick DNS sanity
-      try {
-        InetAddress addr = InetAddress.getByName(host);
-        Log.infof("Resolved %s -> %s", host, addr.getHostAddress());
-      } catch (Exception e) {
-        Log.warnf("DNS failed for %s: %s", host, e.getMessage());
-      }
     Target t = NODES.get(node);
     if (t == null) {
       Log.warnf("WS %s rejected: unknown node '%s'. Allowed=%s", ws.getId(), node, NODES.keySet());
       ws.close(new CloseReason(CloseReason.CloseCodes.CANNOT_ACCEPT, "Unknown node"));
       return;
     }
+    // fail fast (before DNS and guacd) while the node or guacd is known to be down
+    if (!health.isAvailable(HealthMonitor.Kind.SSH, t.host, t.port)) {
+      throw HealthMonitor.unavailable(HealthMonitor.Kind.SSH);
+    }
+    if (!health.isAvailable(HealthMonitor.Kind.GUACD, guacdHost, guacdPort)) {
+      throw HealthMonitor.unavailable(HealthMonitor.Kind.GUACD);
+    }
     // Resolve host early (gives a clean error if DNS is off)
     // String sshIp;
     // try {
@@ -131,24 +212,46 @@ public void onOpen(Session ws, @PathParam("node") String node) {
     cfg.setParameter("password", t.pass);
     cfg.setParameter("ignore-host-key", "true"); // containerlab nodes regenerate keys on each run
 
-    GuacamoleClientInformation info = new GuacamoleClientInformation();
-    info.setOptimalResolution(1280);
-    info.setOptimalScreenHeight(720);
-    info.setOptimalScreenWidth(1280);
-    info.setOptimalResolution(96);
+    // viewport from ?width=&height=&dpi=, colour depth and image formats from ?link=
+    LinkQuality linkHint = GuacDisplay.linkHint(ws);
+    GuacDisplay.configure(cfg, linkHint);
+    GuacamoleClientInformation info = GuacDisplay.clientInformation(ws, linkHint);
+    Log.infof("WS %s display %dx%d@%d, link %s", ws.getId(), info.getOptimalScreenWidth(),
+        info.getOptimalScreenHeight(), info.getOptimalResolution(), linkHint);
 
     // Connect to guacd
-    GuacamoleSocket raw = new InetGuacamoleSocket(guacdHost, guacdPort);
+    long handshakeStart = System.nanoTime();
+    GuacdHandshakeEvent handshake = GuacdHandshakeEvent.begin(LabMetrics.Endpoint.CONT.tag(), cfg.getProtocol(),
+            t.host + ":" + t.port);
+    health.checkAvailable(HealthMonitor.Kind.GUACD, guacdHost, guacdPort);
+    GuacamoleSocket raw;
+    try {
+      raw = new InetGuacamoleSocket(guacdHost, guacdPort);
+    } catch (GuacamoleException e) {
+      health.recordFailure(HealthMonitor.Kind.GUACD, guacdHost, guacdPort, e);
+      throw e;
+    }
+    health.recordSuccess(HealthMonitor.Kind.GUACD, guacdHost, guacdPort);
     GuacamoleSocket configured = new ConfiguredGuacamoleSocket(raw, cfg, info);
+    metrics.recordGuacdHandshake(System.nanoTime() - handshakeStart);
+    handshake.commit();
 
     GuacamoleReader reader = configured.getReader();
     GuacamoleWriter writer = configured.getWriter();
 
-    Future<?> task = pumps.submit(() -> pumpGuacToBrowser(ws, reader));
-    sessions.put(ws.getId(), new Conn(configured, reader, writer, task));
+    FrameCompressor compressor = compression.open(ws, LabMetrics.Endpoint.CONT);
+    LinkMonitor link = new LinkMonitor(linkHint, metrics.guacLink(LabMetrics.Endpoint.CONT), scheduler);
+    // node consoles are not tied to a lab user, so they are shaped as the free plan
+    OutputShaper.Flow shaping = outputShaper.open(UsagePlan.FREE);
+    Future<?> task = pumps.submit(() -> pumpGuacToBrowser(ws, reader, compressor, link, shaping));
+    sessions.put(ws.getId(), new Conn(ws, configured, reader, writer, link, task));
 
-    Log.infof("Tunnel up for %s -> %s:%d", ws.getId(), t.host, t.port);
+    events.info(EventLog.Category.TUNNEL, "tunnel.open", "endpoint", LabMetrics.Endpoint.CONT.tag(),
+        "ws", ws.getId(), "node", node, "target", t.host, "port", t.port);
 
+    } catch (TargetUnavailableException e) {
+        Log.warnf("WS %s rejected: %s", safeId(ws), e.getMessage());
+        closeUnavailable(ws, e);
     } catch (Throwable e) {
         Log.errorf(e, "WS %s failed to open tunnel", ws != null ? ws.getId() : "n/a");
         safeClose(ws);
@@ -169,7 +272,22 @@ public void onOpen(Session ws, @PathParam("node") String node) {
   public void onMessage(String msg, Session ws) {
     Conn c = sessions.get(ws.getId());
     if (c == null) { safeClose(ws); return; }
-    try { c.writer.write(msg.toCharArray(), 0, msg.length()); }
+    events.debug(EventLog.Category.MESSAGE, "guac.in", "ws", ws.getId(), "chars", msg.length());
+    c.link.inbound(msg);
+    if (c.link.deferResize(msg, resize -> write(ws, c, resize))) return;
+    write(ws, c, msg);
+  }
+
+  private void write(Session ws, Conn c, String msg) {
+    try {
+      // deferred resizes arrive from the scheduler, concurrently with onMessage
+      synchronized (c.writer) {
+        BlockedWriteEvent event = BlockedWriteEvent.begin(BlockedWriteEvent.GUACD, msg.length());
+        c.writer.write(msg.toCharArray(), 0, msg.length());
+        event.commit();
+      }
+      relayMeters.inbound(msg.length());
+    }
     catch (GuacamoleException e) { Log.warn("Write to guacd failed", e); onClose(ws); }
   }
 
@@ -181,7 +299,8 @@ public void onOpen(Session ws, @PathParam("node") String node) {
       try { c.socket.close(); } catch (Exception ignored) {}
     }
     safeClose(ws);
-    Log.infof("Tunnel closed for %s", ws.getId());
+    events.info(EventLog.Category.TUNNEL, "tunnel.closed", "endpoint", LabMetrics.Endpoint.CONT.tag(),
+        "ws", ws.getId());
   }
 
   @OnError
@@ -190,19 +309,42 @@ public void onOpen(Session ws, @PathParam("node") String node) {
     if (ws != null) onClose(ws);
   }
 
-  private void pumpGuacToBrowser(Session ws, GuacamoleReader reader) {
+  private void pumpGuacToBrowser(Session ws, GuacamoleReader reader, FrameCompressor compressor, LinkMonitor link,
+      OutputShaper.Flow shaping) {
     try {
-      char[] buf;
-      while (ws.isOpen() && (buf = reader.read()) != null) {
-        if (buf.length > 0) ws.getBasicRemote().sendText(new String(buf));
+      while (ws.isOpen()) {
+        RelayFrameEvent frame = RelayFrameEvent.begin(LabMetrics.Endpoint.CONT.tag());
+        char[] buf = reader.read();
+        if (buf == null) break;
+        if (buf.length > 0) {
+          frame.read(buf.length);
+          link.outbound(buf);
+          if (shaping != null) shaping.pace(buf.length);
+          FrameCompression.sendBlocking(ws, compressor, new String(buf));
+          relayMeters.outbound(buf.length);
+          frame.commit();
+        }
       }
     } catch (Exception ignored) {
     } finally {
+      FrameCompression.close(compressor);
       safeClose(ws);
     }
   }
     private void safeClose(Session ws){ try { if (ws != null && ws.isOpen()) ws.close(); } catch (IOException ignored) {} }
 
+    private void closeDraining(Session ws) {
+      try {
+        if (ws.isOpen()) ws.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, DrainController.DRAINING_MESSAGE));
+      } catch (IOException ignored) {}
+    }
+
+    private void closeUnavailable(Session ws, TargetUnavailableException e) {
+      try {
+        if (ws != null && ws.isOpen()) ws.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, e.getMessage()));
+      } catch (IOException ignored) {}
+    }
+
     private boolean isAllowedNode(String node) {
     return Objects.equals(node, "r1") || Objects.equals(node, "r2") || Objects.equals(node, "r3");
     }
@@ -0,0 +1,53 @@
+package org.acme;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Shared timer for short housekeeping tasks (session expiry and the like) so
+ * features don't each start their own timer threads. Tasks must not block.
+ */
+@ApplicationScoped
+public class LabScheduler {
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    public LabScheduler() {
+        executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "lab-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, Duration delay) {
+        return executor.schedule(guarded(task), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period) {
+        return executor.scheduleAtFixedRate(guarded(task), initialDelay.toMillis(), period.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static Runnable guarded(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                Log.errorf(e, "Scheduled task failed");
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package org.acme;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.acme.metrics.LabMetrics;
+import org.acme.terminal.SshConnector;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Creates the beans every first connect needs while the pod is starting instead of on the
+ * first WebSocket: application-scoped beans are otherwise built lazily, so the first
+ * student after a restart paid for starting the MINA {@code SshClient} (thread pools,
+ * crypto provider registration) and the target registry. Records how long after JVM
+ * start the backend was ready.
+ */
+@ApplicationScoped
+public class LabStartup {
+
+    @ConfigProperty(name = "lab.startup.eager-init", defaultValue = "true")
+    boolean eagerInit;
+
+    @Inject
+    SshConnector connector;
+
+    @Inject
+    SshTargetRegistry registry;
+
+    @Inject
+    LabMetrics metrics;
+
+    private volatile double readySeconds;
+
+    void onStart(@Observes StartupEvent event) {
+        long started = System.nanoTime();
+        if (eagerInit) {
+            connector.start();
+            registry.targets();
+        }
+        readySeconds = ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+        metrics.gauge("lab.startup.ready.seconds", "Time from JVM start until startup initialization finished",
+                this, startup -> startup.readySeconds);
+        Log.infof("Backend ready %.0f ms after JVM start (eager init %.0f ms, CDS %s)", readySeconds * 1000,
+                (System.nanoTime() - started) / 1e6, sharingMode());
+    }
+
+    /**
+     * Which class data sharing archive the JVM mapped: {@code app} for the AppCDS archive
+     * passed with {@code -XX:SharedArchiveFile}, {@code default} for the JDK's own archive
+     * (on by default, so it says nothing about the fast-start image), or {@code off}. An
+     * archive that fails to map disables sharing altogether, which shows up as {@code off}.
+     */
+    static String sharingMode() {
+        return sharingMode(System.getProperty("java.vm.info", ""),
+                ManagementFactory.getRuntimeMXBean().getInputArguments());
+    }
+
+    static String sharingMode(String vmInfo, List<String> jvmArguments) {
+        if (!vmInfo.contains("sharing")) {
+            return "off";
+        }
+        boolean appArchive = jvmArguments.stream().anyMatch(arg -> arg.startsWith("-XX:SharedArchiveFile="));
+        return appArchive ? "app" : "default";
+    }
+}
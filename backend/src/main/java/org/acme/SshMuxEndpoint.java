@@ -0,0 +1,564 @@
+package org.acme;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.acme.SshTargetRegistry.Target;
+import org.acme.health.TargetUnavailableException;
+import org.acme.metrics.LabMetrics;
+import org.acme.admission.AdmissionController;
+import org.acme.admission.DrainController;
+import org.acme.diagnostics.BlockedWriteEvent;
+import org.acme.diagnostics.EventLog;
+import org.acme.diagnostics.RelayFrameEvent;
+import org.acme.ratelimit.OutputShaper;
+import org.acme.ratelimit.RateLimiter;
+import org.acme.ratelimit.TokenBucket;
+import org.acme.terminal.InputQueue;
+import org.acme.terminal.OutputWindow;
+import org.acme.terminal.SshConnector;
+import org.acme.terminal.SshPreconnector;
+import org.acme.terminal.TerminalFrames;
+import org.acme.terminal.TerminalSettings;
+import org.acme.usage.LabUsageService;
+import org.acme.usage.UsagePlan;
+import org.acme.ws.WsTicketService;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.OnClose;
+import jakarta.websocket.OnError;
+import jakarta.websocket.OnMessage;
+import jakarta.websocket.OnOpen;
+import jakarta.websocket.Session;
+import jakarta.websocket.server.ServerEndpoint;
+
+/**
+ * Several node terminals over one WebSocket. The socket is admitted with a single ticket
+ * and holds a single usage session for the whole lab visit; channels to individual nodes
+ * are opened and closed in-band. Frames are {@code <type><channel>:<payload>}:
+ *
+ * <ul>
+ * <li>client: {@code o} open (payload = node id), {@code 0} input, {@code 1} resize
+ * ({@code <cols>x<rows>}), {@code w} grant output credit (payload = bytes), {@code c} close</li>
+ * <li>server: {@code o} channel ready, {@code 0} output, {@code c} channel closed (payload = reason),
+ * {@code m} on channel 0: the backend is draining, reconnect with a new ticket after payload milliseconds</li>
+ * </ul>
+ *
+ * Each channel starts with {@code lab.terminal.mux.window-bytes} of output credit; its pumps
+ * stop reading from SSH when the credit is used up, which pushes back on the node. A
+ * lab-scoped ticket restricts channels to that lab's nodes.
+ */
+@ServerEndpoint("/ws/sshmux")
+@ApplicationScoped
+public class SshMuxEndpoint {
+
+    private static final char MSG_DATA = '0';
+    private static final char MSG_RESIZE = '1';
+    private static final char MSG_OPEN = 'o';
+    private static final char MSG_CLOSE = 'c';
+    private static final char MSG_MIGRATE = 'm';
+    private static final char MSG_WINDOW = 'w';
+
+    private final ExecutorService pumps = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ssh-mux-pump");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<String, MuxSocket> sockets = new ConcurrentHashMap<>();
+
+    @Inject
+    SshTargetRegistry registry;
+
+    @Inject
+    WsTicketService ticketService;
+
+    @Inject
+    LabUsageService usageService;
+
+    @Inject
+    RateLimiter rateLimiter;
+
+    @Inject
+    OutputShaper outputShaper;
+
+    @Inject
+    EventLog events;
+
+    @Inject
+    AdmissionController admission;
+
+    @Inject
+    LabMetrics metrics;
+
+    @Inject
+    TerminalSettings terminalSettings;
+
+    @Inject
+    SshConnector connector;
+
+    @Inject
+    DrainController drain;
+
+    private LabMetrics.RelayMeters relayMeters;
+
+    @PostConstruct
+    void initMetrics() {
+        relayMeters = metrics.relay(LabMetrics.Endpoint.SSHMUX);
+        metrics.gauge("lab.terminal.mux.sockets", "Open multiplexed terminal sockets", sockets, Map::size);
+        drain.register(new DrainController.Participant() {
+            @Override
+            public int active() {
+                return sockets.size();
+            }
+
+            @Override
+            public void migrate(Duration spread) {
+                sockets.values().forEach(mux -> {
+                    String delay = Long.toString(DrainController.reconnectDelay(spread).toMillis());
+                    pumps.execute(() -> mux.send(MSG_MIGRATE, 0, delay));
+                });
+            }
+
+            @Override
+            public void closeAll() {
+                sockets.values().forEach(mux -> safeClose(mux.ws, CloseReason.CloseCodes.TRY_AGAIN_LATER,
+                        DrainController.DRAINING_MESSAGE));
+            }
+        });
+    }
+
+    @PreDestroy
+    void closeSockets() {
+        sockets.values().forEach(mux -> mux.channels.values().forEach(MuxChannel::close));
+        sockets.clear();
+        pumps.shutdownNow();
+    }
+
+    @OnOpen
+    public void onOpen(Session ws) {
+        String ticketValue = extractSingleParam(ws, "ticket");
+        Optional<WsTicketService.Ticket> ticket = ticketService.consume(ticketValue);
+        if (ticket.isEmpty()) {
+            Log.warnf("WS %s rejected: missing or invalid ticket", ws.getId());
+            safeClose(ws, CloseReason.CloseCodes.VIOLATED_POLICY, "Invalid ticket");
+            return;
+        }
+        // mux channels connect on demand, so a shell opened for the ticket has no taker
+        ticket.get().discardPending();
+        String sessionId = ticket.get().sessionId();
+        if (drain.isDraining()) {
+            ticketService.release(ticket.get());
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, DrainController.DRAINING_MESSAGE);
+            return;
+        }
+        Set<String> nodes = ticket.get().nodes();
+        usageService.startSession(sessionId).ifPresentOrElse(session -> {
+            ws.setMaxTextMessageBufferSize(65536);
+            ws.getUserProperties().put("principal", session.principal());
+            sockets.put(ws.getId(), new MuxSocket(ws, session.principal(), session.plan(), sessionId, nodes));
+            events.info(EventLog.Category.TUNNEL, "tunnel.open", "endpoint", LabMetrics.Endpoint.SSHMUX.tag(),
+                    "ws", ws.getId(), "principal", session.principal());
+        }, () -> {
+            Log.warnf("WS %s rejected: quota exhausted for ticket session", ws.getId());
+            ticketService.release(ticket.get());
+            safeClose(ws, CloseReason.CloseCodes.VIOLATED_POLICY, "Lab hours exhausted");
+        });
+    }
+
+    @OnMessage
+    public void onMessage(Session ws, String payload) {
+        MuxSocket mux = sockets.get(ws.getId());
+        if (mux == null) {
+            safeClose(ws, CloseReason.CloseCodes.CANNOT_ACCEPT, "No lab session");
+            return;
+        }
+        if (payload == null || payload.length() < 3) return;
+        relayMeters.inbound(TerminalFrames.utf8Length(payload));
+
+        int channelId = TerminalFrames.channel(payload);
+        if (channelId == TerminalFrames.NO_CHANNEL) {
+            Log.debugf("WS %s malformed mux frame", ws.getId());
+            return;
+        }
+        char type = payload.charAt(0);
+        String body = TerminalFrames.muxPayload(payload);
+
+        if (type == MSG_OPEN) {
+            int id = channelId;
+            pumps.execute(() -> openChannel(mux, id, body.trim()));
+            return;
+        }
+        MuxChannel channel = mux.channels.get(channelId);
+        if (channel == null) {
+            return;
+        }
+        switch (type) {
+            case MSG_DATA -> {
+                if (channel.admitInput() && !channel.write(body)) {
+                    metrics.recordInputOverflow();
+                    if (terminalSettings.overflowPolicy() == TerminalSettings.OverflowPolicy.CLOSE) {
+                        closeChannel(mux, channel, "Input queue overflow");
+                    }
+                }
+            }
+            case MSG_RESIZE -> channel.resize(body);
+            case MSG_WINDOW -> channel.grant(body);
+            case MSG_CLOSE -> closeChannel(mux, channel, "Closed by client");
+            default -> Log.debugf("WS %s unknown mux frame type %s", ws.getId(), type);
+        }
+    }
+
+    @OnClose
+    public void onClose(Session ws) {
+        MuxSocket mux = sockets.remove(ws.getId());
+        if (mux != null) {
+            mux.closeChannels();
+            usageService.finishSession(mux.sessionId);
+        }
+        events.info(EventLog.Category.TUNNEL, "tunnel.closed", "endpoint", LabMetrics.Endpoint.SSHMUX.tag(),
+                "ws", ws.getId());
+    }
+
+    @OnError
+    public void onError(Session ws, Throwable error) {
+        Log.errorf(error, "WS %s error", ws != null ? ws.getId() : "n/a");
+        safeClose(ws, CloseReason.CloseCodes.UNEXPECTED_CONDITION, error.getMessage());
+    }
+
+    private void openChannel(MuxSocket mux, int channelId, String nodeId) {
+        if (drain.isDraining()) {
+            mux.send(MSG_CLOSE, channelId, DrainController.DRAINING_MESSAGE);
+            return;
+        }
+        String refused = mux.claim(channelId);
+        if (refused != null) {
+            mux.send(MSG_CLOSE, channelId, refused);
+            return;
+        }
+        try {
+            connectChannel(mux, channelId, nodeId);
+        } finally {
+            mux.unclaim(channelId);
+        }
+    }
+
+    /**
+     * Admit and open a channel whose id {@link MuxSocket#claim claimed}; the claim keeps
+     * the id and its slot reserved until the channel is installed or refused.
+     */
+    private void connectChannel(MuxSocket mux, int channelId, String nodeId) {
+        if (!mux.allows(nodeId)) {
+            mux.send(MSG_CLOSE, channelId, "Node not in lab");
+            return;
+        }
+        Target target = registry.find(nodeId).orElse(null);
+        if (target == null) {
+            mux.send(MSG_CLOSE, channelId, "Unknown node");
+            return;
+        }
+        if (!rateLimiter.tryAcquire(RateLimiter.Scope.CONNECT, mux.plan, mux.principal, nodeId)) {
+            mux.send(MSG_CLOSE, channelId, "Rate limit exceeded");
+            return;
+        }
+        AdmissionController.Lease lease = admission.admit(mux.plan).orElse(null);
+        if (lease == null) {
+            mux.send(MSG_CLOSE, channelId, AdmissionController.CAPACITY_MESSAGE);
+            return;
+        }
+        boolean admitted = false;
+        SshConnector.Shell shell = null;
+        TokenBucket inputLimit = null;
+        try {
+            shell = openShell(target, mux.plan);
+            inputLimit = rateLimiter.hold(RateLimiter.Scope.MESSAGE, mux.plan, mux.principal, nodeId);
+            MuxChannel channel = new MuxChannel(mux, channelId, nodeId, shell, inputLimit, lease);
+            admitted = true;
+            mux.channels.put(channelId, channel);
+            if (sockets.get(mux.ws.getId()) != mux) {
+                // the socket closed while the SSH handshake was running
+                mux.channels.remove(channelId, channel);
+                channel.close();
+                return;
+            }
+            channel.start();
+            lease.onPreempt(() -> closeChannel(mux, channel, AdmissionController.PREEMPTED_MESSAGE));
+            mux.send(MSG_OPEN, channelId, "");
+            events.info(EventLog.Category.TUNNEL, "channel.open", "endpoint", LabMetrics.Endpoint.SSHMUX.tag(),
+                    "ws", mux.ws.getId(), "channel", channelId, "node", nodeId);
+        } catch (TargetUnavailableException e) {
+            Log.warnf("WS %s channel %d node=%s unavailable", mux.ws.getId(), channelId, nodeId);
+            mux.send(MSG_CLOSE, channelId, e.getMessage());
+        } catch (Exception e) {
+            Log.errorf(e, "WS %s failed to open channel %d to node=%s", mux.ws.getId(), channelId, nodeId);
+            mux.send(MSG_CLOSE, channelId, e.getMessage() != null ? e.getMessage() : "SSH connect failed");
+        } finally {
+            if (!admitted) {
+                lease.release();
+                rateLimiter.release(inputLimit);
+                if (shell != null) {
+                    SshPreconnector.close(shell);
+                }
+            }
+        }
+    }
+
+    private SshConnector.Shell openShell(Target target, UsagePlan plan) throws Exception {
+        if (!admission.acquireHandshake(plan)) {
+            throw new TargetUnavailableException(AdmissionController.CAPACITY_MESSAGE);
+        }
+        try {
+            return connector.openShell(target, 120, 32);
+        } finally {
+            admission.releaseHandshake();
+        }
+    }
+
+    private void closeChannel(MuxSocket mux, MuxChannel channel, String reason) {
+        if (mux.channels.remove(channel.id, channel)) {
+            pumps.execute(channel::close);
+            mux.send(MSG_CLOSE, channel.id, reason);
+        }
+    }
+
+    private void safeClose(Session ws, CloseReason.CloseCodes code, String message) {
+        try {
+            if (ws != null && ws.isOpen()) {
+                ws.close(new CloseReason(code, message != null ? message : code.name()));
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+    private String extractSingleParam(Session ws, String name) {
+        if (ws == null) return null;
+        Map<String, List<String>> params = ws.getRequestParameterMap();
+        if (params == null) return null;
+        List<String> values = params.get(name);
+        if (values == null || values.isEmpty()) return null;
+        return values.get(0);
+    }
+
+    private final class MuxSocket {
+        private final Session ws;
+        private final String principal;
+        private final UsagePlan plan;
+        private final String sessionId;
+        private final Set<String> nodes;
+        private final OutputShaper.Flow shaping;
+        private final Map<Integer, MuxChannel> channels = new ConcurrentHashMap<>();
+        /** Channel ids claimed by an open in progress; claims are made under its monitor. */
+        private final Set<Integer> opening = new HashSet<>();
+
+        MuxSocket(Session ws, String principal, UsagePlan plan, String sessionId, Set<String> nodes) {
+            this.ws = ws;
+            this.principal = principal;
+            this.plan = plan;
+            this.sessionId = sessionId;
+            this.nodes = nodes;
+            this.shaping = outputShaper.open(plan);
+        }
+
+        boolean allows(String nodeId) {
+            return nodes == null || nodes.contains(nodeId);
+        }
+
+        /**
+         * Reserve {@code channelId} and one channel slot before the SSH handshake, so two
+         * opens racing for the same id or the last slot cannot both proceed.
+         *
+         * @return {@code null} if claimed, otherwise the reason to refuse the channel.
+         */
+        String claim(int channelId) {
+            synchronized (opening) {
+                if (channels.containsKey(channelId) || opening.contains(channelId)) {
+                    return "Channel in use";
+                }
+                if (channels.size() + opening.size() >= terminalSettings.muxMaxChannels()) {
+                    return "Too many channels";
+                }
+                opening.add(channelId);
+                return null;
+            }
+        }
+
+        void unclaim(int channelId) {
+            synchronized (opening) {
+                opening.remove(channelId);
+            }
+        }
+
+        /**
+         * Frames from all channel pumps share one socket, so sends are serialized here.
+         */
+        synchronized void send(char type, int channelId, String payload) {
+            if (!ws.isOpen()) return;
+            String frame = TerminalFrames.mux(type, channelId, payload);
+            BlockedWriteEvent event = BlockedWriteEvent.begin(BlockedWriteEvent.WEBSOCKET, frame.length());
+            try {
+                ws.getBasicRemote().sendText(frame);
+            } catch (IOException e) {
+                Log.debugf(e, "WS %s send failed", ws.getId());
+            }
+            event.commit();
+        }
+
+        /**
+         * Channel teardown waits for the SSH side, so it runs on the pump pool, not the WebSocket thread.
+         */
+        void closeChannels() {
+            channels.values().forEach(channel -> pumps.execute(channel::close));
+            channels.clear();
+        }
+    }
+
+    private final class MuxChannel {
+        private final MuxSocket mux;
+        private final int id;
+        private final String nodeId;
+        private final SshConnector.Shell shell;
+        private final TokenBucket inputLimit;
+        private final InputQueue input;
+        private final InputStream stdout;
+        private final InputStream stderr;
+        private final AdmissionController.Lease lease;
+        private final OutputWindow window;
+        private Future<?> stdoutPump;
+        private Future<?> stderrPump;
+
+        MuxChannel(MuxSocket mux, int id, String nodeId, SshConnector.Shell shell, TokenBucket inputLimit,
+                AdmissionController.Lease lease) {
+            this.mux = mux;
+            this.lease = lease;
+            this.id = id;
+            this.nodeId = nodeId;
+            this.shell = shell;
+            this.inputLimit = inputLimit;
+            this.window = new OutputWindow(terminalSettings.muxWindowBytes());
+            OutputStream stdin = Objects.requireNonNull(shell.channel().getInvertedIn(), "stdin");
+            int chunkBytes = (int) Math.min((long) terminalSettings.inputChunkBytes(),
+                    shell.channel().getRemoteWindow().getPacketSize());
+            this.input = new InputQueue(pumps, stdin, terminalSettings.inputQueueBytes(), Math.max(64, chunkBytes),
+                    e -> closeChannel(mux, this, "SSH input failed"));
+            this.stdout = Objects.requireNonNull(shell.channel().getInvertedOut(), "stdout");
+            this.stderr = Objects.requireNonNull(shell.channel().getInvertedErr(), "stderr");
+        }
+
+        void start() {
+            stdoutPump = pumps.submit(() -> pump(stdout));
+            stderrPump = pumps.submit(() -> pump(stderr));
+        }
+
+        boolean admitInput() {
+            if (inputLimit == null || inputLimit.tryAcquire()) {
+                return true;
+            }
+            rateLimiter.reject(RateLimiter.Scope.MESSAGE, mux.plan);
+            relayMeters.throttled();
+            return false;
+        }
+
+        boolean write(String data) {
+            if (data.isEmpty()) return true;
+            return input.offer(TerminalFrames.input(data));
+        }
+
+        void resize(String dims) {
+            String[] parts = dims.split("x");
+            if (parts.length != 2) return;
+            try {
+                int cols = Math.max(Integer.parseInt(parts[0].trim()), 20);
+                int rows = Math.max(Integer.parseInt(parts[1].trim()), 10);
+                shell.channel().sendWindowChange(cols, rows, cols * 8, rows * 16);
+            } catch (NumberFormatException e) {
+                Log.debugf("Invalid resize payload '%s'", dims);
+            } catch (IOException e) {
+                Log.errorf("Failed to resize terminal: %s", e.getMessage());
+            }
+        }
+
+        void grant(String amount) {
+            long bytes;
+            try {
+                bytes = Long.parseLong(amount.trim());
+            } catch (NumberFormatException e) {
+                return;
+            }
+            window.grant(bytes);
+        }
+
+        private void pump(InputStream stream) {
+            byte[] buffer = new byte[8192];
+            // bytes of a character split by the previous read, kept at the start of the buffer;
+            // reads are cut at the remaining credit, so splits are common here
+            int carried = 0;
+            try {
+                while (true) {
+                    int allowed = window.reserve(buffer.length - carried);
+                    if (allowed < 0) break;
+                    RelayFrameEvent frame = RelayFrameEvent.begin(LabMetrics.Endpoint.SSHMUX.tag());
+                    int read = stream.read(buffer, carried, allowed);
+                    if (read == -1) break;
+                    window.refund(allowed - read);
+                    if (read == 0) continue;
+                    frame.read(read);
+                    if (mux.shaping != null) mux.shaping.pace(read);
+                    int available = carried + read;
+                    int complete = TerminalFrames.completeLength(buffer, available);
+                    if (complete > 0) {
+                        mux.send(MSG_DATA, id, TerminalFrames.text(buffer, complete));
+                        relayMeters.outbound(complete);
+                    }
+                    carried = available - complete;
+                    System.arraycopy(buffer, complete, buffer, 0, carried);
+                    frame.commit();
+                }
+            } catch (Exception e) {
+                Log.debugf(e, "SSH mux pump ended for channel %d (%s)", id, nodeId);
+            } finally {
+                closeChannel(mux, this, "SSH stream closed");
+            }
+        }
+
+        void close() {
+            if (window.close()) {
+                rateLimiter.release(inputLimit);
+            }
+            lease.release();
+            input.close();
+            if (stdoutPump != null) stdoutPump.cancel(true);
+            if (stderrPump != null) stderrPump.cancel(true);
+            try {
+                shell.channel().waitFor(EnumSet.of(ClientChannelEvent.CLOSED), Duration.ofSeconds(5));
+            } catch (Exception ignored) {
+            }
+            try {
+                shell.channel().close(false);
+            } catch (Exception ignored) {
+            }
+            try {
+                shell.session().close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package org.acme;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class SshTargetRegistry {
@@ -25,6 +31,9 @@ public class SshTargetRegistry {
     @ConfigProperty(name = "app.ssh.pass", defaultValue = "password")
     String defaultPassword;
 
+    @Inject
+    Config config;
+
     private Map<String, Target> nodes;
 
     @PostConstruct
@@ -32,12 +41,53 @@ public class SshTargetRegistry {
         nodes = Map.of(
             "default", new Target(defaultHost, defaultPort, defaultUser, defaultPassword),
             "ssh",     new Target(defaultHost, defaultPort, defaultUser, defaultPassword),
-            "r1",      new Target("clab-bgp01-r1", 22, "clab", "clab"),
-            "r2",      new Target("clab-bgp01-r2", 22, "clab", "clab"),
-            "r3",      new Target("clab-bgp01-r3", 22, "clab", "clab")
+            "r1",      withOverrides("r1", new Target("clab-bgp01-r1", 22, "clab", "clab")),
+            "r2",      withOverrides("r2", new Target("clab-bgp01-r2", 22, "clab", "clab")),
+            "r3",      withOverrides("r3", new Target("clab-bgp01-r3", 22, "clab", "clab"))
         );
     }
 
+    /**
+     * Lab nodes can be re-pointed with {@code app.nodes.<id>.host|port|user|pass}
+     * (e.g. at an embedded SSH server in load tests).
+     */
+    private Target withOverrides(String id, Target defaults) {
+        String prefix = "app.nodes." + id + ".";
+        return new Target(
+                config.getOptionalValue(prefix + "host", String.class).orElse(defaults.host()),
+                config.getOptionalValue(prefix + "port", Integer.class).orElse(defaults.port()),
+                config.getOptionalValue(prefix + "user", String.class).orElse(defaults.user()),
+                config.getOptionalValue(prefix + "pass", String.class).orElse(defaults.password()));
+    }
+
+    /**
+     * Nodes that make up a lab, configured as {@code app.labs.<lab>.nodes=r1,r2,...}.
+     * Empty when the lab is unknown or lists a node this registry cannot reach.
+     */
+    public Optional<Set<String>> labNodes(String labId) {
+        if (labId == null || labId.isBlank()) {
+            return Optional.empty();
+        }
+        List<String> ids = config.getOptionalValues("app.labs." + labId.trim() + ".nodes", String.class)
+                .orElse(List.of());
+        Set<String> result = new LinkedHashSet<>();
+        for (String id : ids) {
+            String node = id.trim();
+            if (!nodes.containsKey(node)) {
+                return Optional.empty();
+            }
+            result.add(node);
+        }
+        return result.isEmpty() ? Optional.empty() : Optional.of(Collections.unmodifiableSet(result));
+    }
+
+    /**
+     * All nodes by id, including the {@code default}/{@code ssh} aliases.
+     */
+    public Map<String, Target> targets() {
+        return nodes;
+    }
+
     public Optional<Target> find(String id) {
         if (id == null) {
             return Optional.empty();
@@ -3,25 +3,48 @@ package org.acme;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
 
-import org.apache.sshd.client.SshClient;
 import org.apache.sshd.client.channel.ClientChannelEvent;
 import org.apache.sshd.client.channel.ChannelShell;
 import org.apache.sshd.client.session.ClientSession;
-import org.apache.sshd.client.future.ConnectFuture;
-import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
 import org.acme.SshTargetRegistry.Target;
+import org.acme.admission.AdmissionController;
+import org.acme.admission.DrainController;
+import org.acme.compression.FrameCompression;
+import org.acme.compression.FrameCompressor;
+import org.acme.diagnostics.EventLog;
+import org.acme.diagnostics.RelayFrameEvent;
+import org.acme.health.HealthMonitor;
+import org.acme.health.TargetUnavailableException;
+import org.acme.metrics.EchoLatencyProbe;
+import org.acme.metrics.LabMetrics;
+import org.acme.ratelimit.OutputShaper;
+import org.acme.ratelimit.RateLimiter;
+import org.acme.ratelimit.TokenBucket;
+import org.acme.terminal.InputQueue;
+import org.acme.terminal.ObserverHub;
+import org.acme.terminal.PendingShell;
+import org.acme.terminal.ScreenModel;
+import org.acme.terminal.ScrollbackBuffer;
+import org.acme.terminal.SshConnector;
+import org.acme.terminal.SshPreconnector;
+import org.acme.terminal.TerminalFrames;
+import org.acme.terminal.TerminalSettings;
 import org.acme.usage.LabUsageService;
+import org.acme.usage.UsagePlan;
 import org.acme.ws.WsTicketService;
 
 import io.quarkus.logging.Log;
@@ -44,7 +67,21 @@ public class SshTerminalEndpoint {
 
     private static final char MSG_DATA = '0';
     private static final char MSG_RESIZE = '1';
-    private static final Duration SSH_TIMEOUT = Duration.ofSeconds(10);
+    /** Server to client: resume token of this terminal, sent on open and on every resume. */
+    private static final char MSG_SESSION = '2';
+    /**
+     * Server to client: output position the client is at after a screen snapshot replaced
+     * the replay, to be used as {@code offset} on the next resume.
+     */
+    private static final char MSG_POSITION = '3';
+    /**
+     * Server to client: the backend is shutting down; reconnect with a new ticket after the
+     * given number of milliseconds. The socket keeps working until then.
+     */
+    private static final char MSG_MIGRATE = '4';
+
+    private static final int INITIAL_COLUMNS = 120;
+    private static final int INITIAL_ROWS = 32;
 
     private final ExecutorService pumps = Executors.newCachedThreadPool(r -> {
         Thread t = new Thread(r, "ssh-term-pump");
@@ -53,8 +90,20 @@ public class SshTerminalEndpoint {
     });
 
     private final Map<String, ClientConnection> activeConnections = new ConcurrentHashMap<>();
+    private final Map<String, ClientConnection> detachedConnections = new ConcurrentHashMap<>();
 
-    private SshClient sshClient;
+    /**
+     * A running terminal as shown to instructors; {@code id} is what observers attach to.
+     */
+    public record TerminalInfo(String id, String node, String principal, Instant openedAt, boolean attached,
+            int observers) {
+    }
+
+    @Inject
+    HealthMonitor health;
+
+    @Inject
+    FrameCompression compression;
 
     @Inject
     SshTargetRegistry registry;
@@ -65,28 +114,81 @@ public class SshTerminalEndpoint {
     @Inject
     LabUsageService usageService;
 
+    @Inject
+    RateLimiter rateLimiter;
+
+    @Inject
+    OutputShaper outputShaper;
+
+    @Inject
+    AdmissionController admission;
+
+    @Inject
+    LabMetrics metrics;
+
+    @Inject
+    EchoLatencyProbe latencyProbe;
+
+    @Inject
+    TerminalSettings terminalSettings;
+
+    @Inject
+    LabScheduler scheduler;
+
+    @Inject
+    SshConnector connector;
+
+    @Inject
+    EventLog events;
+
+    @Inject
+    DrainController drain;
+
+    private LabMetrics.RelayMeters relayMeters;
+
     @PostConstruct
-    void startClient() {
-        sshClient = SshClient.setUpDefaultClient();
-        sshClient.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
-        sshClient.start();
+    void initMetrics() {
+        relayMeters = metrics.relay(LabMetrics.Endpoint.SSHTERM);
+        metrics.gauge("lab.terminal.active", "Open SSH terminal connections", activeConnections, Map::size);
+        metrics.gauge("lab.terminal.detached", "SSH terminals waiting to be resumed", detachedConnections, Map::size);
+        drain.register(new DrainController.Participant() {
+            @Override
+            public int active() {
+                return activeConnections.size();
+            }
+
+            @Override
+            public void migrate(Duration spread) {
+                activeConnections.values().forEach(c -> c.migrate(DrainController.reconnectDelay(spread)));
+            }
+
+            @Override
+            public void closeAll() {
+                activeConnections.values().forEach(c -> pumps.execute(
+                        () -> c.terminate(CloseReason.CloseCodes.TRY_AGAIN_LATER, DrainController.DRAINING_MESSAGE)));
+                detachedConnections.values().forEach(ClientConnection::close);
+                detachedConnections.clear();
+            }
+        });
     }
 
     @PreDestroy
-    void stopClient() {
+    void closeConnections() {
         activeConnections.values().forEach(ClientConnection::close);
         activeConnections.clear();
+        detachedConnections.values().forEach(ClientConnection::close);
+        detachedConnections.clear();
         pumps.shutdownNow();
-        if (sshClient != null && !sshClient.isClosed()) {
-            try {
-                sshClient.close();
-            } catch (Exception ignored) {
-            }
-        }
     }
 
     @OnOpen
     public void onOpen(Session ws, @PathParam("node") String nodeId) {
+        String resumeToken = extractSingleParam(ws, "resume");
+        if (resumeToken != null) {
+            resume(ws, nodeId, resumeToken);
+            return;
+        }
+
         String ticketValue = extractSingleParam(ws, "ticket");
         if (ticketValue == null) {
             Log.warnf("WS %s rejected: missing ticket", safeId(ws));
@@ -94,7 +196,7 @@ public class SshTerminalEndpoint {
             return;
         }
 
-        var ticket = ticketService.consume(ticketValue);
+        var ticket = ticketService.consume(ticketValue, nodeId);
         if (ticket.isEmpty()) {
             Log.warnf("WS %s rejected: invalid ticket", safeId(ws));
             safeClose(ws, CloseReason.CloseCodes.VIOLATED_POLICY, "Invalid ticket");
@@ -102,50 +204,207 @@ public class SshTerminalEndpoint {
         }
         WsTicketService.Ticket resolvedTicket = ticket.get();
         String sessionId = resolvedTicket.sessionId();
+        if (drain.isDraining()) {
+            ticketService.release(resolvedTicket);
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, DrainController.DRAINING_MESSAGE);
+            return;
+        }
+        if (!rateLimiter.tryAcquire(RateLimiter.Scope.CONNECT, resolvedTicket.plan(), resolvedTicket.principal(), nodeId)) {
+            Log.warnf("WS %s rejected: connect rate limit for %s", safeId(ws), resolvedTicket.principal());
+            ticketService.release(resolvedTicket);
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, "Rate limit exceeded");
+            return;
+        }
+        Target known = registry.find(nodeId).orElse(null);
+        if (known != null && !health.isAvailable(HealthMonitor.Kind.SSH, known.host(), known.port())) {
+            Log.warnf("WS %s rejected: node %s is marked unavailable", safeId(ws), nodeId);
+            ticketService.release(resolvedTicket);
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, HealthMonitor.unavailable(HealthMonitor.Kind.SSH).getMessage());
+            return;
+        }
         usageService.startSession(sessionId).ifPresentOrElse(session -> {
             ws.getUserProperties().put("principal", session.principal());
             ws.getUserProperties().put("sessionId", session.sessionId());
             ws.getUserProperties().put("usagePlan", session.plan());
 
-            registry.find(nodeId).ifPresentOrElse(target -> openSsh(ws, nodeId, target, sessionId), () -> {
+            registry.find(nodeId).ifPresentOrElse(
+                    target -> openSsh(ws, nodeId, target, sessionId, resolvedTicket.pending()), () -> {
                 Log.warnf("WS %s rejected: unknown node '%s'", safeId(ws), nodeId);
+                resolvedTicket.discardPending();
                 usageService.finishSession(sessionId);
                 safeClose(ws, CloseReason.CloseCodes.CANNOT_ACCEPT, "Unknown node");
             });
         }, () -> {
             Log.warnf("WS %s rejected: quota exhausted for ticket session", safeId(ws));
-            usageService.cancelSession(sessionId);
+            ticketService.release(resolvedTicket);
             safeClose(ws, CloseReason.CloseCodes.VIOLATED_POLICY, "Lab hours exhausted");
         });
     }
 
-    private void openSsh(Session ws, String nodeId, Target target, String sessionId) {
+    /**
+     * @param pending shell opened when the ticket was issued, or {@code null} to connect now
+     */
+    private void openSsh(Session ws, String nodeId, Target target, String sessionId, PendingShell pending) {
+        UsagePlan plan = (UsagePlan) ws.getUserProperties().get("usagePlan");
+        // a preconnected shell already holds a session slot for this connection
+        AdmissionController.Lease lease = pending != null ? pending.takeLease() : null;
+        if (lease == null) {
+            lease = admission.admit(plan).orElse(null);
+        }
+        if (lease == null) {
+            Log.warnf("WS %s rejected: no session capacity for plan %s", safeId(ws), plan);
+            if (pending != null) {
+                pending.discard();
+            }
+            usageService.finishSession(sessionId);
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, AdmissionController.CAPACITY_MESSAGE);
+            return;
+        }
+        boolean admitted = false;
+        TokenBucket inputLimit = null;
+        SshConnector.Shell shell = null;
         try {
             ws.setMaxTextMessageBufferSize(65536);
-            Log.infof("WS %s connecting SSH node=%s host=%s:%d user=%s",
-                    safeId(ws), nodeId, target.host(), target.port(), ws.getUserProperties().get("principal"));
-
-            ConnectFuture connectFuture = sshClient.connect(target.user(), target.host(), target.port());
-            ClientSession session = connectFuture.verify(SSH_TIMEOUT).getSession();
-            session.addPasswordIdentity(target.password());
-            session.auth().verify(SSH_TIMEOUT);
-
-            ChannelShell shell = session.createShellChannel();
-            shell.setEnv("TERM", "xterm-256color");
-            shell.setPtyType("xterm");
-            shell.setPtyColumns(120);
-            shell.setPtyLines(32);
-            shell.open().verify(SSH_TIMEOUT);
-
-            ClientConnection connection = new ClientConnection(ws, session, shell);
-            connection.start(pumps);
+            shell = pending != null ? pending.take(nodeId, SshConnector.SSH_TIMEOUT) : null;
+            boolean preconnected = shell != null;
+            if (shell == null) {
+                shell = openShell(target, plan);
+            }
+
+            inputLimit = rateLimiter.hold(RateLimiter.Scope.MESSAGE, plan,
+                    (String) ws.getUserProperties().get("principal"), nodeId);
+            ClientConnection connection = new ClientConnection(ws, nodeId, sessionId, shell.session(), shell.channel(),
+                    plan, inputLimit, latencyProbe.track(nodeId), lease);
+            admitted = true;
+            lease.onPreempt(connection::preempt);
             activeConnections.put(ws.getId(), connection);
-            Log.infof("WS %s SSH tunnel ready -> %s", safeId(ws), nodeId);
+            connection.start(pumps);
+            connection.announce(ws);
+            events.info(EventLog.Category.TUNNEL, "tunnel.open", "endpoint", LabMetrics.Endpoint.SSHTERM.tag(),
+                    "ws", ws.getId(), "principal", ws.getUserProperties().get("principal"), "node", nodeId,
+                    "target", target.host(), "port", target.port(), "preconnected", preconnected);
 
+        } catch (TargetUnavailableException e) {
+            Log.warnf("WS %s node=%s unavailable: %s", safeId(ws), nodeId, e.getMessage());
+            usageService.finishSession(sessionId);
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, e.getMessage());
         } catch (Exception e) {
             Log.errorf(e, "WS %s failed to open SSH tunnel for node=%s", safeId(ws), nodeId);
             usageService.finishSession(sessionId);
             safeClose(ws, CloseReason.CloseCodes.UNEXPECTED_CONDITION, e.getMessage());
+        } finally {
+            if (!admitted) {
+                lease.release();
+                rateLimiter.release(inputLimit);
+                if (shell != null) {
+                    SshPreconnector.close(shell);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the shell within an SSH handshake slot for the user's plan.
+     */
+    private SshConnector.Shell openShell(Target target, UsagePlan plan) throws Exception {
+        if (!admission.acquireHandshake(plan)) {
+            throw new TargetUnavailableException(AdmissionController.CAPACITY_MESSAGE);
+        }
+        try {
+            return connector.openShell(target, INITIAL_COLUMNS, INITIAL_ROWS);
+        } finally {
+            admission.releaseHandshake();
+        }
+    }
+
+    /**
+     * Reattach a WebSocket to a detached terminal. The resume token alone is not enough: the
+     * client also presents a fresh {@code ticket}, which must belong to the user who opened
+     * the terminal and passes the same drain and connect-rate checks as a new console. The
+     * optional {@code offset} parameter is the number of output bytes the client has already
+     * received, counted as the UTF-8 length of the {@code 0} frame payloads; without it the
+     * replay starts where the previous socket was detached.
+     */
+    private void resume(Session ws, String nodeId, String resumeToken) {
+        if (drain.isDraining()) {
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, DrainController.DRAINING_MESSAGE);
+            return;
+        }
+        WsTicketService.Ticket ticket = ticketService.consume(extractSingleParam(ws, "ticket"), nodeId).orElse(null);
+        if (ticket == null) {
+            Log.warnf("WS %s rejected: resume without a valid ticket", safeId(ws));
+            safeClose(ws, CloseReason.CloseCodes.VIOLATED_POLICY, "Invalid ticket");
+            return;
+        }
+        ticket.discardPending();
+        ClientConnection connection = detachedConnections.get(resumeToken);
+        if (ticket.remainingUses() <= 1 && (connection == null || !connection.sessionId.equals(ticket.sessionId()))) {
+            // a resumed terminal keeps its own usage session, so the ticket's reservation goes unused
+            usageService.cancelSession(ticket.sessionId());
+        }
+        if (connection == null || !connection.nodeId.equals(nodeId)
+                || !connection.principal.equalsIgnoreCase(ticket.principal().trim())) {
+            Log.warnf("WS %s rejected: unknown or expired resume token", safeId(ws));
+            safeClose(ws, CloseReason.CloseCodes.VIOLATED_POLICY, "Unknown or expired resume token");
+            return;
+        }
+        if (!rateLimiter.tryAcquire(RateLimiter.Scope.CONNECT, ticket.plan(), ticket.principal(), nodeId)) {
+            Log.warnf("WS %s rejected: connect rate limit for %s", safeId(ws), ticket.principal());
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, "Rate limit exceeded");
+            return;
+        }
+        if (!detachedConnections.remove(resumeToken, connection)) {
+            safeClose(ws, CloseReason.CloseCodes.VIOLATED_POLICY, "Unknown or expired resume token");
+            return;
+        }
+        ws.setMaxTextMessageBufferSize(65536);
+        ws.getUserProperties().put("principal", connection.principal);
+        ws.getUserProperties().put("sessionId", connection.sessionId);
+        ws.getUserProperties().put("usagePlan", connection.plan);
+        activeConnections.put(ws.getId(), connection);
+        usageService.resumeSession(connection.sessionId);
+        if (!connection.attach(ws, parseOffset(extractSingleParam(ws, "offset")))) {
+            activeConnections.remove(ws.getId());
+            settleUsage(ws);
+            safeClose(ws, CloseReason.CloseCodes.NORMAL_CLOSURE, "SSH stream closed");
+            return;
+        }
+        events.info(EventLog.Category.TUNNEL, "tunnel.resumed", "endpoint", LabMetrics.Endpoint.SSHTERM.tag(),
+                "ws", ws.getId(), "node", nodeId);
+    }
+
+    public List<TerminalInfo> terminals() {
+        return connections().map(ClientConnection::info).toList();
+    }
+
+    /**
+     * Subscribe {@code viewer} read-only to a running terminal; it first receives the
+     * current screen (or the retained scrollback when the screen model is off), then live output.
+     *
+     * @return {@code false} if the terminal is gone or already has its maximum number of viewers.
+     */
+    public boolean observe(String terminalId, Session viewer) {
+        return connections().filter(c -> c.id.equals(terminalId)).findFirst()
+                .map(c -> c.observe(viewer))
+                .orElse(false);
+    }
+
+    public void unobserve(String terminalId, Session viewer) {
+        connections().filter(c -> c.id.equals(terminalId)).forEach(c -> c.observers.remove(viewer));
+    }
+
+    private Stream<ClientConnection> connections() {
+        return Stream.concat(activeConnections.values().stream(), detachedConnections.values().stream()).distinct();
+    }
+
+    private static long parseOffset(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(raw.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
         }
     }
 
@@ -157,12 +416,18 @@ public class SshTerminalEndpoint {
             return;
         }
         if (payload == null || payload.isEmpty()) return;
+        relayMeters.inbound(TerminalFrames.utf8Length(payload));
+        if (!connection.admitInput()) {
+            return;
+        }
 
         char type = payload.charAt(0);
-        String data = payload.substring(1);
+        String data = TerminalFrames.payload(payload);
         try {
             if (type == MSG_DATA) {
-                connection.write(data);
+                if (!connection.write(data)) {
+                    handleInputOverflow(ws);
+                }
             } else if (type == MSG_RESIZE) {
                 connection.resize(data);
             }
@@ -172,14 +437,33 @@ public class SshTerminalEndpoint {
         }
     }
 
+    private void handleInputOverflow(Session ws) {
+        metrics.recordInputOverflow();
+        if (terminalSettings.overflowPolicy() == TerminalSettings.OverflowPolicy.CLOSE) {
+            Log.warnf("WS %s input queue overflow, closing", safeId(ws));
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, "Input queue overflow");
+        } else {
+            Log.debugf("WS %s input queue overflow, frame dropped", safeId(ws));
+        }
+    }
+
     @OnClose
     public void onClose(Session ws) {
         ClientConnection connection = activeConnections.remove(ws.getId());
         if (connection != null) {
+            // a client leaving a draining backend reconnects elsewhere, so there is nothing to resume
+            if (!drain.isDraining() && connection.detach(ws)) {
+                usageService.suspendSession(connection.sessionId);
+                events.info(EventLog.Category.TUNNEL, "tunnel.detached", "endpoint",
+                        LabMetrics.Endpoint.SSHTERM.tag(), "ws", ws.getId(), "graceSeconds",
+                        terminalSettings.resumeGrace().getSeconds());
+                return;
+            }
             connection.close();
         }
         settleUsage(ws);
-        Log.infof("WS %s closed", safeId(ws));
+        events.info(EventLog.Category.TUNNEL, "tunnel.closed", "endpoint", LabMetrics.Endpoint.SSHTERM.tag(),
+                "ws", ws.getId());
     }
 
     @OnError
@@ -214,17 +498,15 @@ public class SshTerminalEndpoint {
         }
         Object raw = ws.getUserProperties().get("sessionId");
         if (raw instanceof String sessionId) {
-            usageService.finishSession(sessionId).ifPresent(snapshot -> {
-                Log.debugf("Usage updated for %s plan=%s consumed=%d remaining=%d",
-                        snapshot.principal(),
-                        snapshot.plan(),
-                        snapshot.consumedSeconds(),
-                        snapshot.remainingSeconds());
-            });
+            settleUsage(sessionId);
             ws.getUserProperties().remove("sessionId");
         }
     }
 
+    private void settleUsage(String sessionId) {
+        usageService.finishSession(sessionId);
+    }
+
     private String extractSingleParam(Session ws, String name) {
         if (ws == null) return null;
         Map<String, List<String>> params = ws.getRequestParameterMap();
@@ -235,20 +517,63 @@ public class SshTerminalEndpoint {
     }
 
     private class ClientConnection {
-        private final Session socket;
+        private final String id = UUID.randomUUID().toString();
+        private final Instant openedAt = Instant.now();
+        private final String nodeId;
+        private final String sessionId;
+        private final String principal;
+        private final String resumeToken = UUID.randomUUID().toString();
+        private final Object outputLock = new Object();
+        private final ScrollbackBuffer scrollback;
+        private final boolean resumable;
+        private final ScreenModel screen;
+        private volatile Session socket;
+        private FrameCompressor compressor;
+        private volatile boolean closed;
+        private long detachedAt;
+        private ScheduledFuture<?> expiry;
         private final ClientSession sshSession;
         private final ChannelShell shell;
-        private final OutputStream stdin;
+        private final InputQueue input;
         private final InputStream stdout;
         private final InputStream stderr;
+        private final UsagePlan plan;
+        private final TokenBucket inputLimit;
+        private final OutputShaper.Flow shaping;
+        private final EchoLatencyProbe.Tracker echoTracker;
+        private final ObserverHub observers;
+        private final AdmissionController.Lease lease;
         private Future<?> stdoutPump;
         private Future<?> stderrPump;
 
-        ClientConnection(Session socket, ClientSession sshSession, ChannelShell shell) throws Exception {
+        ClientConnection(Session socket, String nodeId, String sessionId, ClientSession sshSession, ChannelShell shell,
+                UsagePlan plan, TokenBucket inputLimit, EchoLatencyProbe.Tracker echoTracker,
+                AdmissionController.Lease lease) throws Exception {
             this.socket = socket;
+            this.nodeId = nodeId;
+            this.sessionId = sessionId;
+            this.principal = (String) socket.getUserProperties().get("principal");
+            this.resumable = terminalSettings.resumeEnabled();
+            // kept for observers too, so they get a replay whether or not resume is enabled
+            this.scrollback = resumable || terminalSettings.observersPerTerminal() > 0
+                    ? new ScrollbackBuffer(terminalSettings.scrollbackBytes())
+                    : null;
+            this.compressor = compression.open(socket, LabMetrics.Endpoint.SSHTERM);
+            this.screen = terminalSettings.screenModelEnabled() ? new ScreenModel(INITIAL_COLUMNS, INITIAL_ROWS) : null;
             this.sshSession = sshSession;
             this.shell = shell;
-            this.stdin = Objects.requireNonNull(shell.getInvertedIn(), "stdin");
+            this.plan = plan;
+            this.inputLimit = inputLimit;
+            this.shaping = outputShaper.open(plan);
+            this.echoTracker = echoTracker;
+            this.lease = lease;
+            this.observers = new ObserverHub(terminalSettings.observersPerTerminal(),
+                    terminalSettings.observerPendingBytes(), pumps, metrics::recordObserverDrop);
+            OutputStream stdin = Objects.requireNonNull(shell.getInvertedIn(), "stdin");
+            int chunkBytes = (int) Math.min((long) terminalSettings.inputChunkBytes(),
+                    shell.getRemoteWindow().getPacketSize());
+            this.input = new InputQueue(pumps, stdin, terminalSettings.inputQueueBytes(), Math.max(64, chunkBytes),
+                    this::onInputFailure);
             this.stdout = Objects.requireNonNull(shell.getInvertedOut(), "stdout");
             this.stderr = Objects.requireNonNull(shell.getInvertedErr(), "stderr");
         }
@@ -258,10 +583,143 @@ public class SshTerminalEndpoint {
             stderrPump = executor.submit(() -> pump(stderr, MSG_DATA));
         }
 
-        void write(String data) throws Exception {
-            if (data == null || data.isEmpty()) return;
-            stdin.write(data.getBytes(StandardCharsets.UTF_8));
-            stdin.flush();
+        /**
+         * Tell the client how to resume this terminal if its socket drops.
+         */
+        void announce(Session ws) {
+            if (resumable) {
+                ws.getAsyncRemote().sendText(MSG_SESSION + resumeToken);
+            }
+        }
+
+        /**
+         * Keep the SSH session running without a socket; output keeps filling the scrollback.
+         *
+         * @return {@code false} if resume is disabled or the terminal is already gone.
+         */
+        boolean detach(Session ws) {
+            synchronized (outputLock) {
+                if (closed || !resumable || socket != ws) {
+                    return false;
+                }
+                socket = null;
+                FrameCompression.close(compressor);
+                compressor = null;
+                detachedAt = scrollback.position();
+                detachedConnections.put(resumeToken, this);
+                expiry = scheduler.schedule(this::expire, terminalSettings.resumeGrace());
+            }
+            return true;
+        }
+
+        /**
+         * Bind a new socket and replay the output it missed, from {@code offset} when the client
+         * supplied one (negative otherwise). When that is more than a screenful, a snapshot of
+         * the screen model is sent instead, so attaching costs the same however long the
+         * socket was away.
+         */
+        boolean attach(Session ws, long offset) {
+            synchronized (outputLock) {
+                if (closed) {
+                    return false;
+                }
+                if (expiry != null) {
+                    expiry.cancel(false);
+                    expiry = null;
+                }
+                long from = offset >= 0 ? offset : detachedAt;
+                socket = ws;
+                FrameCompression.close(compressor);
+                compressor = compression.open(ws, LabMetrics.Endpoint.SSHTERM);
+                announce(ws);
+                if (screen != null && scrollback.position() - from > (long) screen.columns() * screen.rows()) {
+                    FrameCompression.sendAsync(ws, compressor, MSG_DATA + screen.snapshot());
+                    ws.getAsyncRemote().sendText(MSG_POSITION + Long.toString(scrollback.position()));
+                    return true;
+                }
+                byte[] missed = scrollback.readFrom(from);
+                if (missed.length > 0) {
+                    FrameCompression.sendAsync(ws, compressor, TerminalFrames.output(MSG_DATA, missed, missed.length));
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Ask the attached client to reconnect elsewhere after {@code delay}.
+         */
+        void migrate(Duration delay) {
+            Session target = socket;
+            if (target != null && target.isOpen()) {
+                target.getAsyncRemote().sendText(MSG_MIGRATE + Long.toString(delay.toMillis()));
+            }
+        }
+
+        TerminalInfo info() {
+            return new TerminalInfo(id, nodeId, principal, openedAt, socket != null, observers.size());
+        }
+
+        boolean observe(Session viewer) {
+            synchronized (outputLock) {
+                if (closed) {
+                    return false;
+                }
+                String replay = null;
+                long replayBytes = 0;
+                if (screen != null) {
+                    String snapshot = screen.snapshot();
+                    replay = MSG_DATA + snapshot;
+                    replayBytes = TerminalFrames.utf8Length(snapshot);
+                } else if (scrollback != null) {
+                    byte[] retained = scrollback.readFrom(0L);
+                    if (retained.length > 0) {
+                        replay = TerminalFrames.output(MSG_DATA, retained, retained.length);
+                        replayBytes = retained.length;
+                    }
+                }
+                return observers.add(viewer, replay, replayBytes);
+            }
+        }
+
+        private void expire() {
+            if (detachedConnections.remove(resumeToken, this)) {
+                Log.infof("Detached SSH terminal for %s on %s expired", principal, nodeId);
+                close();
+                // the detached time is not charged; settle only what was used before it
+                usageService.resumeSession(sessionId);
+                settleUsage(sessionId);
+            }
+        }
+
+        /**
+         * Inbound frames over the plan's message rate are dropped rather than queued, and
+         * counted in {@code lab.relay.throttled}.
+         */
+        boolean admitInput() {
+            if (inputLimit == null || inputLimit.tryAcquire()) {
+                return true;
+            }
+            rateLimiter.reject(RateLimiter.Scope.MESSAGE, plan);
+            relayMeters.throttled();
+            Log.debugf("Input from %s on %s throttled", principal, nodeId);
+            return false;
+        }
+
+        /**
+         * Hand input to the session's writer task; never blocks the WebSocket thread.
+         *
+         * @return {@code false} if the input queue is full and the frame was not accepted.
+         */
+        boolean write(String data) {
+            if (data == null || data.isEmpty()) return true;
+            if (echoTracker != null) echoTracker.input();
+            return input.offer(TerminalFrames.input(data));
+        }
+
+        private void onInputFailure(IOException e) {
+            Log.debugf(e, "SSH stdin write failed for %s on %s", principal, nodeId);
+            close();
+            safeClose(socket, CloseReason.CloseCodes.UNEXPECTED_CONDITION, "SSH input failed");
         }
 
         void resize(String dims) {
@@ -274,6 +732,11 @@ public class SshTerminalEndpoint {
                 cols = Math.max(cols, 20);
                 rows = Math.max(rows, 10);
                 shell.sendWindowChange(cols, rows, cols * 8, rows * 16);
+                if (screen != null) {
+                    synchronized (outputLock) {
+                        screen.resize(cols, rows);
+                    }
+                }
             } catch (NumberFormatException e) {
                 Log.debugf("Invalid resize payload '%s'", dims);
             } catch (IOException e) {
@@ -283,23 +746,98 @@ public class SshTerminalEndpoint {
 
         private void pump(InputStream stream, char type) {
             byte[] buffer = new byte[8192];
+            // bytes of a character split by the previous read, kept at the start of the buffer
+            int carried = 0;
             try {
-                int read;
-                while ((read = stream.read(buffer)) != -1) {
-                    if (read <= 0) continue;
-                    if (!socket.isOpen()) break;
-                    String text = new String(buffer, 0, read, StandardCharsets.UTF_8);
-                    socket.getAsyncRemote().sendText(String.valueOf(type) + text);
+                while (true) {
+                    RelayFrameEvent frame = RelayFrameEvent.begin(LabMetrics.Endpoint.SSHTERM.tag());
+                    int read = stream.read(buffer, carried, buffer.length - carried);
+                    if (read == -1) break;
+                    if (read == 0) continue;
+                    frame.read(read);
+                    if (shaping != null) shaping.pace(read);
+                    int available = carried + read;
+                    int complete = TerminalFrames.completeLength(buffer, available);
+                    if (complete > 0 && !deliver(buffer, complete, type)) break;
+                    carried = available - complete;
+                    System.arraycopy(buffer, complete, buffer, 0, carried);
+                    frame.commit();
                 }
             } catch (Exception e) {
                 Log.debugf(e, "SSH pump ended");
             } finally {
-                close();
-                safeClose(socket, CloseReason.CloseCodes.NORMAL_CLOSURE, "SSH stream closed");
+                terminate();
+            }
+        }
+
+        /**
+         * @return {@code false} once there is nobody left to deliver output to.
+         */
+        private boolean deliver(byte[] buffer, int read, char type) {
+            synchronized (outputLock) {
+                if (scrollback != null) {
+                    scrollback.append(buffer, 0, read);
+                }
+                if (screen != null) {
+                    screen.feed(buffer, 0, read);
+                }
+                Session target = socket;
+                boolean ownerOpen = target != null && target.isOpen();
+                if (ownerOpen || !observers.isEmpty()) {
+                    // one immutable frame shared by the owner and every observer
+                    String frame = TerminalFrames.output(type, buffer, read);
+                    if (ownerOpen) {
+                        FrameCompression.sendAsync(target, compressor, frame);
+                    }
+                    observers.publish(frame, read);
+                }
+                if (!ownerOpen) {
+                    // a closed socket is about to be detached when resume is enabled
+                    return resumable;
+                }
+            }
+            relayMeters.outbound(read);
+            if (echoTracker != null) echoTracker.output();
+            return true;
+        }
+
+        private void terminate() {
+            terminate(CloseReason.CloseCodes.NORMAL_CLOSURE, "SSH stream closed");
+        }
+
+        /**
+         * Give the slot to a premium user; runs on the thread admitting them.
+         */
+        void preempt() {
+            Log.infof("Terminal %s for %s preempted", id, principal);
+            pumps.execute(() -> terminate(CloseReason.CloseCodes.TRY_AGAIN_LATER, AdmissionController.PREEMPTED_MESSAGE));
+        }
+
+        private void terminate(CloseReason.CloseCodes code, String reason) {
+            close();
+            Session target = socket;
+            if (target != null) {
+                safeClose(target, code, reason);
+            } else if (detachedConnections.remove(resumeToken, this)) {
+                settleUsage(sessionId);
             }
         }
 
         void close() {
+            boolean first;
+            synchronized (outputLock) {
+                first = !closed;
+                closed = true;
+            }
+            if (first) {
+                rateLimiter.release(inputLimit);
+            }
+            lease.release();
+            input.close();
+            observers.closeAll("SSH stream closed");
+            synchronized (outputLock) {
+                FrameCompression.close(compressor);
+            }
             if (stdoutPump != null) stdoutPump.cancel(true);
             if (stderrPump != null) stderrPump.cancel(true);
             try {
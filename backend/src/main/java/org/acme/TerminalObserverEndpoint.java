@@ -0,0 +1,76 @@
+package org.acme;
+
+import java.util.List;
+
+import org.acme.ws.WsTicketService;
+
+import io.quarkus.logging.Log;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.OnClose;
+import jakarta.websocket.OnError;
+import jakarta.websocket.OnMessage;
+import jakarta.websocket.OnOpen;
+import jakarta.websocket.Session;
+import jakarta.websocket.server.PathParam;
+import jakarta.websocket.server.ServerEndpoint;
+
+/**
+ * Read-only view of another user's SSH terminal. Output frames are the same as on
+ * {@code /ws/sshterm}; anything the viewer sends is ignored.
+ */
+@ServerEndpoint("/ws/observe/{terminal}")
+@ApplicationScoped
+public class TerminalObserverEndpoint {
+
+    @Inject
+    SshTerminalEndpoint terminals;
+
+    @Inject
+    WsTicketService ticketService;
+
+    @OnOpen
+    public void onOpen(Session ws, @PathParam("terminal") String terminalId) {
+        String ticketValue = ws.getRequestParameterMap().getOrDefault("ticket", List.of()).stream()
+                .findFirst().orElse(null);
+        var ticket = ticketService.consumeObserver(ticketValue, terminalId);
+        if (ticket.isEmpty()) {
+            Log.warnf("WS %s observer rejected: invalid ticket", ws.getId());
+            safeClose(ws, CloseReason.CloseCodes.VIOLATED_POLICY, "Invalid ticket");
+            return;
+        }
+        ws.getUserProperties().put("principal", ticket.get().principal());
+        if (!terminals.observe(terminalId, ws)) {
+            Log.warnf("WS %s observer rejected: terminal %s unavailable", ws.getId(), terminalId);
+            safeClose(ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, "Terminal unavailable");
+            return;
+        }
+        Log.infof("WS %s %s observing terminal %s", ws.getId(), ticket.get().principal(), terminalId);
+    }
+
+    @OnMessage
+    public void onMessage(Session ws, String payload) {
+        // read-only
+    }
+
+    @OnClose
+    public void onClose(Session ws, @PathParam("terminal") String terminalId) {
+        terminals.unobserve(terminalId, ws);
+    }
+
+    @OnError
+    public void onError(Session ws, Throwable error) {
+        Log.debugf(error, "WS %s observer error", ws.getId());
+        safeClose(ws, CloseReason.CloseCodes.UNEXPECTED_CONDITION, error.getMessage());
+    }
+
+    private void safeClose(Session ws, CloseReason.CloseCodes code, String message) {
+        try {
+            if (ws != null && ws.isOpen()) {
+                ws.close(new CloseReason(code, message != null ? message : code.name()));
+            }
+        } catch (Exception ignored) {
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.acme;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.acme.ws.WsTicketService;
+
+import io.quarkus.security.identity.SecurityIdentity;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Lets instructors find running student terminals and obtain a ticket to watch one
+ * read-only over {@code /ws/observe/<terminal>}.
+ */
+@Path("/api/admin/terminals")
+@RolesAllowed({ "${lab.admin-role}", "${lab.observer-role}" })
+@Produces(MediaType.APPLICATION_JSON)
+public class TerminalObserverResource {
+
+    @Inject
+    SshTerminalEndpoint terminals;
+
+    @Inject
+    WsTicketService ticketService;
+
+    @Inject
+    SecurityIdentity identity;
+
+    @GET
+    public List<SshTerminalEndpoint.TerminalInfo> list() {
+        return terminals.terminals();
+    }
+
+    @POST
+    @Path("/{terminal}/observe")
+    public ObserveResponse observe(@PathParam("terminal") String terminalId) {
+        boolean running = terminals.terminals().stream().anyMatch(t -> t.id().equals(terminalId));
+        if (!running) {
+            throw new WebApplicationException("Unknown terminal", Response.Status.NOT_FOUND);
+        }
+        WsTicketService.ObserverTicket ticket = ticketService.issueObserver(identity.getPrincipal().getName(), terminalId);
+        return new ObserveResponse(ticket.value(), ticket.expiresAt(), "/ws/observe/" + terminalId);
+    }
+
+    public record ObserveResponse(String ticket, Instant expiresAt, String wsPath) {
+    }
+}
@@ -0,0 +1,277 @@
+package org.acme.admission;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.UsagePlan;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Priority admission by {@link UsagePlan}. Terminal sessions hold a {@link Lease} on one
+ * of {@code lab.admission.max-sessions} slots; a share of them is reserved for PREMIUM.
+ * Free users may borrow reserved slots while they are unused, but when a premium user
+ * arrives to a full backend the most recently admitted borrowing free session is
+ * preempted to make room. SSH handshakes, the expensive part of opening a session, are
+ * gated the same way except that free users never take the reserved handshake slots.
+ */
+@ApplicationScoped
+public class AdmissionController {
+
+    public static final String CAPACITY_MESSAGE = "Lab capacity reached, try again later";
+    public static final String PREEMPTED_MESSAGE = "Session ended to make room for priority users";
+
+    public enum Stage {
+        TICKET, SESSION, HANDSHAKE
+    }
+
+    private final Object lock = new Object();
+    private final int[] sessions = new int[UsagePlan.values().length];
+    private final List<Lease> freeLeases = new ArrayList<>();
+    private final LongAdder[] rejections = new LongAdder[Stage.values().length * UsagePlan.values().length];
+    private final LongAdder preemptions = new LongAdder();
+
+    private final Object handshakeLock = new Object();
+    private int handshakes;
+    private int premiumWaiting;
+
+    @Inject
+    AdmissionSettings settings;
+
+    @Inject
+    LabMetrics metrics;
+
+    @PostConstruct
+    void initMetrics() {
+        for (UsagePlan plan : UsagePlan.values()) {
+            metrics.gauge("lab.admission.sessions", "Admitted terminal sessions", sessions,
+                    s -> s[plan.ordinal()], "plan", plan.id());
+            for (Stage stage : Stage.values()) {
+                LongAdder adder = new LongAdder();
+                rejections[index(stage, plan)] = adder;
+                metrics.counter("lab.admission.rejections", "Requests refused for lack of capacity", adder,
+                        LongAdder::sum, "plan", plan.id(), "stage", stage.name().toLowerCase());
+            }
+        }
+        metrics.counter("lab.admission.preemptions", "Free sessions closed to admit premium ones", preemptions,
+                LongAdder::sum);
+    }
+
+    /**
+     * Whether a session for {@code plan} would be admitted right now; checked when a
+     * ticket is issued so that users are turned away before anything is reserved.
+     */
+    public boolean canAdmit(UsagePlan plan) {
+        if (!settings.enabled()) {
+            return true;
+        }
+        synchronized (lock) {
+            if (inUse() < settings.maxSessions() || (isPremium(plan) && borrowed() > 0)) {
+                return true;
+            }
+        }
+        rejections[index(Stage.TICKET, plan)].increment();
+        return false;
+    }
+
+    /**
+     * Take a session slot, preempting a borrowing free session for a premium user if needed.
+     *
+     * @return the lease to release when the session ends, or empty when there is no room.
+     */
+    public Optional<Lease> admit(UsagePlan plan) {
+        return admit(plan, true);
+    }
+
+    /**
+     * Take a session slot only if one is free, without preempting anyone or counting a
+     * rejection; for speculative work such as opening a shell before the WebSocket connects.
+     */
+    public Optional<Lease> tryAdmit(UsagePlan plan) {
+        return admit(plan, false);
+    }
+
+    private Optional<Lease> admit(UsagePlan plan, boolean preempt) {
+        UsagePlan effective = isPremium(plan) ? UsagePlan.PREMIUM : UsagePlan.FREE;
+        Lease lease = new Lease(effective);
+        if (!settings.enabled()) {
+            lease.tracked = false;
+            return Optional.of(lease);
+        }
+        Lease victim = null;
+        synchronized (lock) {
+            if (inUse() >= settings.maxSessions()) {
+                if (!preempt) {
+                    return Optional.empty();
+                }
+                if (effective != UsagePlan.PREMIUM || borrowed() <= 0) {
+                    rejections[index(Stage.SESSION, effective)].increment();
+                    return Optional.empty();
+                }
+                victim = freeLeases.remove(freeLeases.size() - 1);
+                victim.tracked = false;
+                sessions[UsagePlan.FREE.ordinal()]--;
+            }
+            sessions[effective.ordinal()]++;
+            if (effective == UsagePlan.FREE) {
+                freeLeases.add(lease);
+            }
+        }
+        if (victim != null) {
+            preemptions.increment();
+            Log.infof("Preempting a free session to admit a premium one");
+            victim.preempt();
+        }
+        return Optional.of(lease);
+    }
+
+    /**
+     * Wait up to {@code lab.admission.handshake-wait-millis} for an SSH handshake slot.
+     * Free users leave the reserved slots alone and yield to waiting premium users.
+     *
+     * @return {@code false} if no slot became available in time.
+     */
+    public boolean acquireHandshake(UsagePlan plan) throws InterruptedException {
+        if (!settings.enabled()) {
+            return true;
+        }
+        boolean premium = isPremium(plan);
+        long deadline = System.nanoTime() + settings.handshakeWait().toNanos();
+        synchronized (handshakeLock) {
+            if (premium) {
+                premiumWaiting++;
+            }
+            try {
+                while (!handshakeAvailable(premium)) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        rejections[index(Stage.HANDSHAKE, premium ? UsagePlan.PREMIUM : UsagePlan.FREE)].increment();
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(handshakeLock, left);
+                }
+                handshakes++;
+                return true;
+            } finally {
+                if (premium) {
+                    premiumWaiting--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Take an SSH handshake slot only if one is free right now, under the same plan rules
+     * as {@link #acquireHandshake}; refusals are not counted as rejections.
+     */
+    public boolean tryAcquireHandshake(UsagePlan plan) {
+        if (!settings.enabled()) {
+            return true;
+        }
+        synchronized (handshakeLock) {
+            if (!handshakeAvailable(isPremium(plan))) {
+                return false;
+            }
+            handshakes++;
+            return true;
+        }
+    }
+
+    public void releaseHandshake() {
+        if (!settings.enabled()) {
+            return;
+        }
+        synchronized (handshakeLock) {
+            handshakes--;
+            handshakeLock.notifyAll();
+        }
+    }
+
+    private boolean handshakeAvailable(boolean premium) {
+        if (premium) {
+            return handshakes < settings.maxHandshakes();
+        }
+        return premiumWaiting == 0 && handshakes < settings.maxHandshakes() - settings.premiumHandshakes();
+    }
+
+    private void release(Lease lease) {
+        synchronized (lock) {
+            if (!lease.tracked) {
+                return;
+            }
+            lease.tracked = false;
+            sessions[lease.plan.ordinal()]--;
+            if (lease.plan == UsagePlan.FREE) {
+                freeLeases.remove(lease);
+            }
+        }
+    }
+
+    private int inUse() {
+        return sessions[UsagePlan.FREE.ordinal()] + sessions[UsagePlan.PREMIUM.ordinal()];
+    }
+
+    /** Free sessions sitting on slots reserved for premium. */
+    private int borrowed() {
+        return sessions[UsagePlan.FREE.ordinal()] - (settings.maxSessions() - settings.premiumSessions());
+    }
+
+    private static boolean isPremium(UsagePlan plan) {
+        return plan == UsagePlan.PREMIUM;
+    }
+
+    private static int index(Stage stage, UsagePlan plan) {
+        UsagePlan effective = plan != null ? plan : UsagePlan.FREE;
+        return stage.ordinal() * UsagePlan.values().length + effective.ordinal();
+    }
+
+    /**
+     * One admitted session. Releasing is idempotent.
+     */
+    public final class Lease {
+        private final UsagePlan plan;
+        private boolean tracked = true; // guarded by the controller's lock
+        private Runnable onPreempt;
+        private boolean preempted;
+
+        private Lease(UsagePlan plan) {
+            this.plan = plan;
+        }
+
+        /**
+         * What to do if this session is preempted; runs immediately if it already was.
+         */
+        public void onPreempt(Runnable action) {
+            boolean now;
+            synchronized (this) {
+                onPreempt = action;
+                now = preempted;
+            }
+            if (now) {
+                action.run();
+            }
+        }
+
+        public void release() {
+            AdmissionController.this.release(this);
+        }
+
+        private void preempt() {
+            Runnable action;
+            synchronized (this) {
+                preempted = true;
+                action = onPreempt;
+            }
+            if (action != null) {
+                action.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.acme.admission;
+
+import java.time.Duration;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class AdmissionSettings {
+
+    private final boolean enabled;
+    private final int maxSessions;
+    private final int premiumSessions;
+    private final int maxHandshakes;
+    private final int premiumHandshakes;
+    private final Duration handshakeWait;
+
+    public AdmissionSettings(
+            @ConfigProperty(name = "lab.admission.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "lab.admission.max-sessions", defaultValue = "200") int maxSessions,
+            @ConfigProperty(name = "lab.admission.max-handshakes", defaultValue = "16") int maxHandshakes,
+            @ConfigProperty(name = "lab.admission.premium-reserved-percent", defaultValue = "25") int premiumPercent,
+            @ConfigProperty(name = "lab.admission.handshake-wait-millis", defaultValue = "3000") long handshakeWaitMillis) {
+
+        this.enabled = enabled;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.maxHandshakes = Math.max(1, maxHandshakes);
+        int percent = Math.min(100, Math.max(0, premiumPercent));
+        this.premiumSessions = reserved(this.maxSessions, percent);
+        this.premiumHandshakes = reserved(this.maxHandshakes, percent);
+        this.handshakeWait = Duration.ofMillis(Math.max(0L, handshakeWaitMillis));
+    }
+
+    private static int reserved(int total, int percent) {
+        return (int) Math.min(total, (total * (long) percent + 99) / 100);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** Terminal sessions (consoles and mux channels) open at once, across all plans. */
+    public int maxSessions() {
+        return maxSessions;
+    }
+
+    /** Session slots free users may only borrow and lose first. */
+    public int premiumSessions() {
+        return premiumSessions;
+    }
+
+    /** SSH handshakes in flight at once, across all plans. */
+    public int maxHandshakes() {
+        return maxHandshakes;
+    }
+
+    /** Handshake slots free users never take. */
+    public int premiumHandshakes() {
+        return premiumHandshakes;
+    }
+
+    public Duration handshakeWait() {
+        return handshakeWait;
+    }
+}
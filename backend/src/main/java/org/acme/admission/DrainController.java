@@ -0,0 +1,143 @@
+package org.acme.admission;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.acme.diagnostics.EventLog;
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.LabUsageService;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Drains the pod on shutdown instead of dropping every connection at once. Tickets and
+ * new WebSockets are refused from the moment shutdown starts; each connected client is
+ * told to reconnect at a random point within {@code lab.drain.reconnect-spread-seconds},
+ * so a rolling deploy moves users to the other pods gradually. Shutdown waits until the
+ * connections have left or {@code lab.drain.deadline-seconds} has passed, settles the
+ * usage of every remaining session in one batch and then closes what is left.
+ */
+@ApplicationScoped
+public class DrainController {
+
+    public static final String DRAINING_MESSAGE = "Server restarting, reconnect to continue";
+
+    private static final long POLL_MILLIS = 250L;
+
+    /**
+     * An endpoint holding long-lived connections.
+     */
+    public interface Participant {
+
+        /** Connections that still have a client attached. */
+        int active();
+
+        /**
+         * Ask every attached client to move; each is given its own delay from
+         * {@link DrainController#reconnectDelay(Duration)}. Must not block.
+         */
+        void migrate(Duration spread);
+
+        /** Close whatever is still open; usage has already been settled. */
+        void closeAll();
+    }
+
+    private final List<Participant> participants = new CopyOnWriteArrayList<>();
+    private volatile boolean draining;
+
+    @Inject
+    DrainSettings settings;
+
+    @Inject
+    LabUsageService usageService;
+
+    @Inject
+    LabMetrics metrics;
+
+    @Inject
+    EventLog events;
+
+    @PostConstruct
+    void initMetrics() {
+        metrics.gauge("lab.drain.active", "Whether the backend is draining for shutdown", this,
+                drain -> drain.draining ? 1 : 0);
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public void register(Participant participant) {
+        participants.add(participant);
+    }
+
+    void onShutdown(@Observes ShutdownEvent event) {
+        if (settings.enabled()) {
+            drain();
+        }
+    }
+
+    void drain() {
+        draining = true;
+        long started = System.nanoTime();
+        int connected = active();
+        events.info(EventLog.Category.TUNNEL, "drain.started", "connections", connected, "deadlineSeconds",
+                settings.deadline().getSeconds());
+        for (Participant participant : participants) {
+            migrate(participant);
+        }
+        long deadline = started + settings.deadline().toNanos();
+        try {
+            while (active() > 0 && System.nanoTime() - deadline < 0) {
+                Thread.sleep(POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int remaining = active();
+        int settled = usageService.settleAll();
+        participants.forEach(DrainController::closeAll);
+        events.info(EventLog.Category.TUNNEL, "drain.finished", "connections", connected, "closed", remaining,
+                "settled", settled, "millis", (System.nanoTime() - started) / 1_000_000L);
+    }
+
+    private void migrate(Participant participant) {
+        try {
+            participant.migrate(settings.spread());
+        } catch (RuntimeException e) {
+            Log.warnf(e, "Drain: failed to migrate clients of %s", participant);
+        }
+    }
+
+    private static void closeAll(Participant participant) {
+        try {
+            participant.closeAll();
+        } catch (RuntimeException e) {
+            Log.warnf(e, "Drain: failed to close connections of %s", participant);
+        }
+    }
+
+    private int active() {
+        int total = 0;
+        for (Participant participant : participants) {
+            total += participant.active();
+        }
+        return total;
+    }
+
+    /**
+     * A uniformly random delay within {@code spread}, so that clients of one pod do not
+     * all arrive at the next one together.
+     */
+    public static Duration reconnectDelay(Duration spread) {
+        long millis = spread.toMillis();
+        return millis <= 0 ? Duration.ZERO : Duration.ofMillis(ThreadLocalRandom.current().nextLong(millis));
+    }
+}
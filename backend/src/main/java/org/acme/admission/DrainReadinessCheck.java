@@ -0,0 +1,29 @@
+package org.acme.admission;
+
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Reports the pod not ready ({@code /q/health/ready}) while it drains, so the Service stops
+ * routing new tickets and reconnecting clients to it and they land on the other pods.
+ */
+@Readiness
+@ApplicationScoped
+public class DrainReadinessCheck implements HealthCheck {
+
+    @Inject
+    DrainController drain;
+
+    @Override
+    public HealthCheckResponse call() {
+        boolean draining = drain.isDraining();
+        return HealthCheckResponse.named("lab-drain")
+                .status(!draining)
+                .withData("draining", draining)
+                .build();
+    }
+}
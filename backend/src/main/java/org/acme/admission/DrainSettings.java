@@ -0,0 +1,40 @@
+package org.acme.admission;
+
+import java.time.Duration;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class DrainSettings {
+
+    private final boolean enabled;
+    private final Duration deadline;
+    private final Duration spread;
+
+    public DrainSettings(
+            @ConfigProperty(name = "lab.drain.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "lab.drain.deadline-seconds", defaultValue = "45") long deadlineSeconds,
+            @ConfigProperty(name = "lab.drain.reconnect-spread-seconds", defaultValue = "30") long spreadSeconds) {
+
+        this.enabled = enabled;
+        this.deadline = Duration.ofSeconds(Math.max(0L, deadlineSeconds));
+        // clients must have moved before the deadline closes what is left
+        this.spread = Duration.ofSeconds(Math.min(Math.max(0L, spreadSeconds), this.deadline.getSeconds()));
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** How long shutdown waits for connections to leave before closing the rest. */
+    public Duration deadline() {
+        return deadline;
+    }
+
+    /** Window over which clients are told to reconnect elsewhere; never longer than the deadline. */
+    public Duration spread() {
+        return spread;
+    }
+}
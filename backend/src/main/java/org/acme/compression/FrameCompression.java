@@ -0,0 +1,87 @@
+package org.acme.compression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.acme.diagnostics.BlockedWriteEvent;
+import org.acme.metrics.LabMetrics;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.websocket.Session;
+
+/**
+ * Opt-in compression of outbound WebSocket frames. A client that connects with
+ * {@code ?compress=deflate} receives frames of at least {@code lab.ws.compression.threshold-bytes}
+ * as binary messages: the UTF-8 length of the text frame they replace (4 bytes, big-endian)
+ * followed by raw-deflate data (sync-flushed, one stream per socket) that inflates to exactly
+ * that frame. Smaller frames such as keystroke echoes stay plain text. Clients that don't ask
+ * are unaffected.
+ */
+@ApplicationScoped
+public class FrameCompression {
+
+    public static final String PARAM = "compress";
+    public static final String DEFLATE = "deflate";
+
+    @ConfigProperty(name = "lab.ws.compression.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "lab.ws.compression.threshold-bytes", defaultValue = "256")
+    int thresholdBytes;
+
+    @ConfigProperty(name = "lab.ws.compression.level", defaultValue = "6")
+    int level;
+
+    @Inject
+    LabMetrics metrics;
+
+    /**
+     * @return a compressor for this socket, or {@code null} if the client did not ask for
+     *         compression or it is disabled.
+     */
+    public FrameCompressor open(Session ws, LabMetrics.Endpoint endpoint) {
+        if (!enabled || ws == null) {
+            return null;
+        }
+        List<String> requested = ws.getRequestParameterMap().get(PARAM);
+        if (requested == null || !requested.contains(DEFLATE)) {
+            return null;
+        }
+        return new FrameCompressor(Math.max(0, Math.min(9, level)), Math.max(0, thresholdBytes),
+                metrics.compression(endpoint));
+    }
+
+    /**
+     * Queue a frame without blocking, compressed when {@code compressor} is set and the
+     * frame is large enough.
+     */
+    public static void sendAsync(Session ws, FrameCompressor compressor, String frame) {
+        ByteBuffer compressed = compressor != null ? compressor.compress(frame) : null;
+        if (compressed != null) {
+            ws.getAsyncRemote().sendBinary(compressed);
+        } else {
+            ws.getAsyncRemote().sendText(frame);
+        }
+    }
+
+    public static void sendBlocking(Session ws, FrameCompressor compressor, String frame) throws IOException {
+        ByteBuffer compressed = compressor != null ? compressor.compress(frame) : null;
+        BlockedWriteEvent event = BlockedWriteEvent.begin(BlockedWriteEvent.WEBSOCKET,
+                compressed != null ? compressed.remaining() : frame.length());
+        if (compressed != null) {
+            ws.getBasicRemote().sendBinary(compressed);
+        } else {
+            ws.getBasicRemote().sendText(frame);
+        }
+        event.commit();
+    }
+
+    public static void close(FrameCompressor compressor) {
+        if (compressor != null) {
+            compressor.close();
+        }
+    }
+}
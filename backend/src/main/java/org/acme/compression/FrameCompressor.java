@@ -0,0 +1,63 @@
+package org.acme.compression;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.acme.metrics.LabMetrics;
+
+/**
+ * One raw-deflate stream per WebSocket. Each compressed frame is sync-flushed, so the
+ * client can inflate it on arrival with a single long-lived inflater while the window
+ * of earlier output acts as a shared dictionary for the next frames. A frame starts with
+ * its inflated length (4 bytes, big-endian), since a streaming inflater does not mark
+ * where one flush ends.
+ */
+public final class FrameCompressor {
+
+    private static final int LENGTH_BYTES = 4;
+
+    private final Deflater deflater;
+    private final int thresholdBytes;
+    private final LabMetrics.CompressionMeters meters;
+    private byte[] buffer = new byte[8192];
+    private boolean closed;
+
+    FrameCompressor(int level, int thresholdBytes, LabMetrics.CompressionMeters meters) {
+        this.deflater = new Deflater(level, true);
+        this.thresholdBytes = thresholdBytes;
+        this.meters = meters;
+    }
+
+    /**
+     * @return the deflated frame, or {@code null} when the frame is below the threshold
+     *         (or the compressor is closed) and should go out as text.
+     */
+    public synchronized ByteBuffer compress(String frame) {
+        if (frame.length() < thresholdBytes || closed) {
+            meters.skipped();
+            return null;
+        }
+        long started = System.nanoTime();
+        byte[] raw = frame.getBytes(StandardCharsets.UTF_8);
+        deflater.setInput(raw);
+        int length = LENGTH_BYTES;
+        while (true) {
+            length += deflater.deflate(buffer, length, buffer.length - length, Deflater.SYNC_FLUSH);
+            if (length < buffer.length) {
+                break;
+            }
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        meters.compressed(raw.length, length, System.nanoTime() - started);
+        return ByteBuffer.wrap(Arrays.copyOf(buffer, length)).putInt(0, raw.length);
+    }
+
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            deflater.end();
+        }
+    }
+}
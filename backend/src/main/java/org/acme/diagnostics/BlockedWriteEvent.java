@@ -0,0 +1,42 @@
+package org.acme.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A blocking write that took long enough to stall its relay: a WebSocket send, an SSH
+ * stdin write or a write to guacd. Only writes above the threshold are recorded, with
+ * their stack trace.
+ */
+@Name("org.acme.BlockedWrite")
+@Label("Blocked Write")
+@Category({ "Lab", "Relay" })
+@Description("Blocking relay write above the threshold")
+@Threshold("10 ms")
+public final class BlockedWriteEvent extends jdk.jfr.Event {
+
+    public static final String WEBSOCKET = "websocket";
+    public static final String SSH_STDIN = "ssh-stdin";
+    public static final String GUACD = "guacd";
+
+    @Label("Target")
+    String target;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    public static BlockedWriteEvent begin(String target, long bytes) {
+        BlockedWriteEvent event = new BlockedWriteEvent();
+        if (event.isEnabled()) {
+            event.target = target;
+            event.bytes = bytes;
+            event.begin();
+        }
+        return event;
+    }
+}
@@ -0,0 +1,294 @@
+package org.acme.diagnostics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.acme.metrics.LabMetrics;
+import org.jboss.logging.Logger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Structured log of tunnel, quota and per-message events. Callers pass the event name and
+ * alternating key/value fields; nothing is formatted on the calling thread. Events whose
+ * level is enabled go through per-category sampling and a rate cap into a bounded lock-free
+ * ring, and a single writer thread renders them as {@code key=value} lines on the
+ * {@code org.acme.events.<category>} loggers. A full ring drops events instead of blocking.
+ */
+@ApplicationScoped
+public class EventLog {
+
+    public enum Category {
+        TUNNEL("tunnel"),
+        QUOTA("quota"),
+        MESSAGE("message");
+
+        private final String id;
+
+        Category(String id) {
+            this.id = id;
+        }
+
+        public String id() {
+            return id;
+        }
+    }
+
+    private static final int MAX_FIELDS = 12;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private long tail;
+
+    private final Logger[] loggers = new Logger[Category.values().length];
+    private final EventLogSettings.Sampling[] sampling = new EventLogSettings.Sampling[Category.values().length];
+    private final AtomicLong[] seen = new AtomicLong[Category.values().length];
+    private final AtomicLong[] windows = new AtomicLong[Category.values().length];
+    private final AtomicInteger[] windowCounts = new AtomicInteger[Category.values().length];
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+
+    private final LabMetrics metrics;
+    private volatile Thread writer;
+    private volatile boolean running;
+
+    @Inject
+    public EventLog(EventLogSettings settings, LabMetrics metrics) {
+        this.metrics = metrics;
+        int capacity = Integer.highestOneBit(settings.bufferSize() - 1) << 1;
+        ring = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Slot(i);
+        }
+        mask = capacity - 1;
+        for (Category category : Category.values()) {
+            int i = category.ordinal();
+            loggers[i] = Logger.getLogger("org.acme.events." + category.id());
+            sampling[i] = settings.sampling(category);
+            seen[i] = new AtomicLong();
+            windows[i] = new AtomicLong();
+            windowCounts[i] = new AtomicInteger();
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        metrics.counter("lab.events.written", "Structured log events written", written, LongAdder::sum);
+        metrics.counter("lab.events.dropped", "Structured log events not written", sampledOut, LongAdder::sum,
+                "reason", "sampled");
+        metrics.counter("lab.events.dropped", "Structured log events not written", rateLimited, LongAdder::sum,
+                "reason", "rate");
+        metrics.counter("lab.events.dropped", "Structured log events not written", overflowed, LongAdder::sum,
+                "reason", "overflow");
+        running = true;
+        Thread t = new Thread(this::writeLoop, "lab-event-log");
+        t.setDaemon(true);
+        writer = t;
+        t.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        Thread t = writer;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void debug(Category category, String event, Object... fields) {
+        log(Logger.Level.DEBUG, category, event, null, fields);
+    }
+
+    public void info(Category category, String event, Object... fields) {
+        log(Logger.Level.INFO, category, event, null, fields);
+    }
+
+    public void warn(Category category, String event, Throwable error, Object... fields) {
+        log(Logger.Level.WARN, category, event, error, fields);
+    }
+
+    public boolean isEnabled(Logger.Level level, Category category) {
+        return loggers[category.ordinal()].isEnabled(level);
+    }
+
+    private void log(Logger.Level level, Category category, String event, Throwable error, Object[] fields) {
+        int c = category.ordinal();
+        if (!loggers[c].isEnabled(level)) {
+            return;
+        }
+        EventLogSettings.Sampling rule = sampling[c];
+        int sample = level.ordinal() > Logger.Level.WARN.ordinal() ? rule.every() : 1;
+        if (sample > 1 && seen[c].getAndIncrement() % sample != 0) {
+            sampledOut.increment();
+            return;
+        }
+        if (rule.maxPerSecond() > 0 && !withinRate(c, rule.maxPerSecond())) {
+            rateLimited.increment();
+            return;
+        }
+        if (!publish(level, category, event, error, sample, fields)) {
+            overflowed.increment();
+        }
+    }
+
+    /**
+     * Fixed one-second windows; a race at the window edge may let a few extra events through.
+     */
+    private boolean withinRate(int c, int max) {
+        long second = System.nanoTime() / 1_000_000_000L;
+        AtomicLong window = windows[c];
+        long current = window.get();
+        if (current != second && window.compareAndSet(current, second)) {
+            windowCounts[c].set(0);
+        }
+        return windowCounts[c].incrementAndGet() <= max;
+    }
+
+    /**
+     * Claim the next slot (bounded MPMC sequence scheme) and fill it.
+     */
+    private boolean publish(Logger.Level level, Category category, String event, Throwable error, int sample,
+            Object[] fields) {
+        long position;
+        Slot slot;
+        while (true) {
+            position = head.get();
+            slot = ring[(int) position & mask];
+            long diff = slot.sequence - position;
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+        slot.level = level;
+        slot.category = category;
+        slot.event = event;
+        slot.error = error;
+        slot.sample = sample;
+        slot.timestamp = System.currentTimeMillis();
+        int count = fields == null ? 0 : Math.min(fields.length, MAX_FIELDS);
+        System.arraycopy(fields == null ? slot.fields : fields, 0, slot.fields, 0, count);
+        slot.fieldCount = count;
+        slot.sequence = position + 1;
+        return true;
+    }
+
+    private void writeLoop() {
+        StringBuilder line = new StringBuilder(256);
+        while (running) {
+            if (drain(line) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        drain(line);
+    }
+
+    /**
+     * @return the number of events written.
+     */
+    int drain(StringBuilder line) {
+        int count = 0;
+        while (true) {
+            Slot slot = ring[(int) tail & mask];
+            if (slot.sequence != tail + 1) {
+                return count;
+            }
+            line.setLength(0);
+            render(slot, line);
+            Logger.Level level = slot.level;
+            Category category = slot.category;
+            Throwable error = slot.error;
+            slot.clear();
+            slot.sequence = tail + ring.length;
+            tail++;
+            loggers[category.ordinal()].log(level, line.toString(), error);
+            written.increment();
+            count++;
+        }
+    }
+
+    static void render(Slot slot, StringBuilder line) {
+        line.append("event=").append(slot.event);
+        for (int i = 0; i + 1 < slot.fieldCount; i += 2) {
+            line.append(' ').append(slot.fields[i]).append('=');
+            appendValue(line, slot.fields[i + 1]);
+        }
+        if (slot.sample > 1) {
+            // each written event stands for this many
+            line.append(" sample=").append(slot.sample);
+        }
+        line.append(" ts=").append(slot.timestamp);
+    }
+
+    private static void appendValue(StringBuilder line, Object value) {
+        String text = String.valueOf(value);
+        boolean quote = text.isEmpty();
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char ch = text.charAt(i);
+            quote = ch <= ' ' || ch == '"' || ch == '=';
+        }
+        if (!quote) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                line.append('\\').append(ch);
+            } else if (ch == '\n') {
+                line.append("\\n");
+            } else if (ch < ' ') {
+                line.append(' ');
+            } else {
+                line.append(ch);
+            }
+        }
+        line.append('"');
+    }
+
+    static final class Slot {
+        volatile long sequence;
+        Logger.Level level;
+        Category category;
+        String event;
+        Throwable error;
+        int sample;
+        long timestamp;
+        final Object[] fields = new Object[MAX_FIELDS];
+        int fieldCount;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        void clear() {
+            event = null;
+            error = null;
+            for (int i = 0; i < fieldCount; i++) {
+                fields[i] = null;
+            }
+            fieldCount = 0;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.acme.diagnostics;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Structured event log: ring size and, per category, 1-in-N sampling of events below
+ * WARN and a cap on events written per second.
+ */
+@ApplicationScoped
+public class EventLogSettings {
+
+    /**
+     * Keep one event in {@code every}; write at most {@code maxPerSecond} (non-positive: no cap).
+     */
+    public record Sampling(int every, int maxPerSecond) {
+    }
+
+    private final int bufferSize;
+    private final Sampling tunnel;
+    private final Sampling quota;
+    private final Sampling message;
+
+    public EventLogSettings(
+            @ConfigProperty(name = "lab.events.buffer-size", defaultValue = "8192") int bufferSize,
+            @ConfigProperty(name = "lab.events.tunnel.sample-every", defaultValue = "1") int tunnelEvery,
+            @ConfigProperty(name = "lab.events.tunnel.max-per-second", defaultValue = "200") int tunnelMax,
+            @ConfigProperty(name = "lab.events.quota.sample-every", defaultValue = "1") int quotaEvery,
+            @ConfigProperty(name = "lab.events.quota.max-per-second", defaultValue = "200") int quotaMax,
+            @ConfigProperty(name = "lab.events.message.sample-every", defaultValue = "100") int messageEvery,
+            @ConfigProperty(name = "lab.events.message.max-per-second", defaultValue = "50") int messageMax) {
+
+        this.bufferSize = Math.max(16, bufferSize);
+        this.tunnel = new Sampling(Math.max(1, tunnelEvery), tunnelMax);
+        this.quota = new Sampling(Math.max(1, quotaEvery), quotaMax);
+        this.message = new Sampling(Math.max(1, messageEvery), messageMax);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public Sampling sampling(EventLog.Category category) {
+        return switch (category) {
+            case TUNNEL -> tunnel;
+            case QUOTA -> quota;
+            case MESSAGE -> message;
+        };
+    }
+}
@@ -0,0 +1,38 @@
+package org.acme.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Socket connect plus protocol handshake with guacd for one tunnel.
+ */
+@Name("org.acme.GuacdHandshake")
+@Label("guacd Handshake")
+@Category({ "Lab", "Guacamole" })
+@Description("Connect and protocol handshake with guacd")
+@StackTrace(false)
+public final class GuacdHandshakeEvent extends jdk.jfr.Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Protocol")
+    String protocol;
+
+    @Label("Target")
+    String target;
+
+    public static GuacdHandshakeEvent begin(String endpoint, String protocol, String target) {
+        GuacdHandshakeEvent event = new GuacdHandshakeEvent();
+        if (event.isEnabled()) {
+            event.endpoint = endpoint;
+            event.protocol = protocol;
+            event.target = target;
+            event.begin();
+        }
+        return event;
+    }
+}
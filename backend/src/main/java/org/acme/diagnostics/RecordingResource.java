@@ -0,0 +1,53 @@
+package org.acme.diagnostics;
+
+import java.time.Duration;
+import java.util.List;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Flight recordings of the running server, for profiling a live class without turning
+ * on debug logging.
+ */
+@Path("/api/admin/recordings")
+@RolesAllowed("${lab.admin-role}")
+@Produces(MediaType.APPLICATION_JSON)
+public class RecordingResource {
+
+    @Inject
+    RecordingService recordings;
+
+    @GET
+    public List<RecordingService.RecordingInfo> list() {
+        return recordings.list();
+    }
+
+    /**
+     * Start recording {@code name}; {@code ?settings=profile} samples more, {@code ?relay=true}
+     * adds per-frame pump events, {@code ?minutes=} bounds the recording (capped by config).
+     */
+    @POST
+    @Path("/{name}")
+    public RecordingService.RecordingInfo start(@PathParam("name") String name, @QueryParam("settings") String settings,
+            @QueryParam("relay") boolean relay, @QueryParam("minutes") long minutes) {
+        return recordings.start(name, settings, relay, Duration.ofMinutes(Math.max(0L, minutes)));
+    }
+
+    @DELETE
+    @Path("/{name}")
+    public RecordingService.RecordingInfo stop(@PathParam("name") String name) {
+        return recordings.stop(name)
+                .orElseThrow(() -> new WebApplicationException("Unknown recording", Response.Status.NOT_FOUND));
+    }
+}
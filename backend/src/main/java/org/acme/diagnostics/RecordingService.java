@@ -0,0 +1,140 @@
+package org.acme.diagnostics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Starts and stops JDK Flight Recorder recordings on a live server. A recording writes
+ * to {@code lab.diagnostics.recording-dir} when stopped, and stops by itself after
+ * {@code lab.diagnostics.max-recording-minutes} if nobody does.
+ */
+@ApplicationScoped
+public class RecordingService {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
+            .withZone(ZoneOffset.UTC);
+
+    private final Map<String, Recording> recordings = new ConcurrentHashMap<>();
+
+    @ConfigProperty(name = "lab.diagnostics.recording-dir", defaultValue = "/tmp/lab-recordings")
+    String directory;
+
+    @ConfigProperty(name = "lab.diagnostics.max-recording-minutes", defaultValue = "30")
+    long maxMinutes;
+
+    @PreDestroy
+    void stopAll() {
+        recordings.keySet().forEach(this::stop);
+    }
+
+    /**
+     * @param settings JDK configuration to start from, {@code default} or {@code profile}
+     * @param relayFrames also record one event per relayed frame
+     */
+    public RecordingInfo start(String name, String settings, boolean relayFrames, Duration duration) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new WebApplicationException("Invalid recording name", Response.Status.BAD_REQUEST);
+        }
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings == null || settings.isBlank() ? "default" : settings);
+        } catch (IOException | ParseException e) {
+            throw new WebApplicationException("Unknown recording settings", Response.Status.BAD_REQUEST);
+        }
+        Duration max = Duration.ofMinutes(maxMinutes);
+        Recording recording = new Recording(configuration);
+        recording.setName(name);
+        recording.setToDisk(true);
+        recording.setDuration(duration == null || duration.isZero() || duration.compareTo(max) > 0 ? max : duration);
+        if (relayFrames) {
+            recording.enable(RelayFrameEvent.class);
+        }
+        if (recordings.putIfAbsent(name, recording) != null) {
+            recording.close();
+            throw new WebApplicationException("Recording already exists", Response.Status.CONFLICT);
+        }
+        try {
+            Path dir = Files.createDirectories(Path.of(directory));
+            recording.setDestination(dir.resolve(name + '-' + STAMP.format(Instant.now()) + ".jfr"));
+            recording.start();
+        } catch (IOException | RuntimeException e) {
+            recordings.remove(name, recording);
+            recording.close();
+            throw new WebApplicationException("Could not start recording: " + e.getMessage(),
+                    Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        Log.infof("Flight recording %s started (%s, relay frames %s)", name, configuration.getName(), relayFrames);
+        return RecordingInfo.of(recording);
+    }
+
+    /**
+     * Stop a recording and write it out; a recording that already stopped on its own is
+     * just forgotten.
+     */
+    public Optional<RecordingInfo> stop(String name) {
+        Recording recording = recordings.remove(name);
+        if (recording == null) {
+            return Optional.empty();
+        }
+        try {
+            if (recording.getState() == RecordingState.RUNNING) {
+                recording.stop();
+            }
+            RecordingInfo info = RecordingInfo.of(recording);
+            Log.infof("Flight recording %s written to %s", name, recording.getDestination());
+            return Optional.of(info);
+        } finally {
+            recording.close();
+        }
+    }
+
+    public List<RecordingInfo> list() {
+        return recordings.values().stream().map(RecordingInfo::of).toList();
+    }
+
+    /**
+     * @param file absolute path of the dump, {@code null} while still recording
+     */
+    public record RecordingInfo(String name, String state, Instant startedAt, Duration maxDuration, String file,
+            long sizeBytes) {
+
+        static RecordingInfo of(Recording recording) {
+            Path destination = recording.getDestination();
+            // a recording with a destination is closed once it has been written there
+            boolean written = (recording.getState() == RecordingState.STOPPED
+                    || recording.getState() == RecordingState.CLOSED) && destination != null && Files.exists(destination);
+            long size = 0L;
+            if (written) {
+                try {
+                    size = Files.size(destination);
+                } catch (IOException ignored) {
+                }
+            }
+            return new RecordingInfo(recording.getName(), recording.getState().name().toLowerCase(),
+                    recording.getStartTime(), recording.getDuration(), written ? destination.toString() : null, size);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.acme.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One iteration of an output pump: waiting for the upstream read, then pacing and sending
+ * the frame. Disabled by default because there is one per frame; a recording turns it
+ * on explicitly (see {@link RecordingService}).
+ */
+@Name("org.acme.RelayFrame")
+@Label("Relay Frame")
+@Category({ "Lab", "Relay" })
+@Description("Output pump read and send of one frame")
+@Enabled(false)
+@StackTrace(false)
+public final class RelayFrameEvent extends jdk.jfr.Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Read Time")
+    @Description("Time spent waiting for the upstream read")
+    @Timespan(Timespan.NANOSECONDS)
+    long readTime;
+
+    private transient long readStarted;
+
+    public static RelayFrameEvent begin(String endpoint) {
+        RelayFrameEvent event = new RelayFrameEvent();
+        if (event.isEnabled()) {
+            event.endpoint = endpoint;
+            event.readStarted = System.nanoTime();
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * Mark the end of the read; the rest of the event's duration is the send.
+     */
+    public void read(long bytes) {
+        if (isEnabled()) {
+            this.bytes = bytes;
+            this.readTime = System.nanoTime() - readStarted;
+        }
+    }
+}
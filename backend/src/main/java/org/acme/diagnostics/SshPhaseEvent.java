@@ -0,0 +1,38 @@
+package org.acme.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One connect, auth or shell-open phase towards a lab node.
+ */
+@Name("org.acme.SshPhase")
+@Label("SSH Phase")
+@Category({ "Lab", "SSH" })
+@Description("Connect, auth or shell-open towards a lab node")
+@StackTrace(false)
+public final class SshPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Host")
+    String host;
+
+    @Label("Port")
+    int port;
+
+    public static SshPhaseEvent begin(String phase, String host, int port) {
+        SshPhaseEvent event = new SshPhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase;
+            event.host = host;
+            event.port = port;
+            event.begin();
+        }
+        return event;
+    }
+}
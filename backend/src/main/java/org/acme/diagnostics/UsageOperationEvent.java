@@ -0,0 +1,35 @@
+package org.acme.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A reservation, start, finish or snapshot in {@code LabUsageService}.
+ */
+@Name("org.acme.UsageOperation")
+@Label("Usage Operation")
+@Category({ "Lab", "Usage" })
+@Description("LabUsageService operation")
+@StackTrace(false)
+public final class UsageOperationEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Key")
+    @Description("Principal or usage session id")
+    String key;
+
+    public static UsageOperationEvent begin(String operation, String key) {
+        UsageOperationEvent event = new UsageOperationEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.key = key;
+            event.begin();
+        }
+        return event;
+    }
+}
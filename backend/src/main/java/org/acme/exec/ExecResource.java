@@ -0,0 +1,124 @@
+package org.acme.exec;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.acme.SshTargetRegistry;
+
+import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Multi;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+
+/**
+ * Run a command on several lab nodes at once (e.g. {@code vtysh -c 'show ip bgp summary'}
+ * for grading). {@code POST /api/admin/exec} answers when every node is done;
+ * {@code POST /api/admin/exec/stream} sends each node's result as a server-sent event as
+ * soon as that node finishes, and an {@code error} event if the run itself breaks off.
+ * Only admins may run commands; observers can watch terminals but not act on the nodes.
+ */
+@Path("/api/admin/exec")
+@RolesAllowed("${lab.admin-role}")
+@Consumes(MediaType.APPLICATION_JSON)
+public class ExecResource {
+
+    @Inject
+    ExecService execService;
+
+    @Inject
+    ExecSettings settings;
+
+    @Inject
+    SshTargetRegistry registry;
+
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<ExecService.ExecResult> run(ExecRequest request) {
+        List<ExecService.ExecResult> results = Collections.synchronizedList(new ArrayList<>());
+        execService.runAll(resolveNodes(request), command(request), settings.timeout(request.timeoutSeconds()),
+                results::add).join();
+        return results;
+    }
+
+    @POST
+    @Path("/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public Multi<OutboundSseEvent> stream(ExecRequest request, @Context Sse sse) {
+        List<String> nodes = resolveNodes(request);
+        String command = command(request);
+        Duration timeout = settings.timeout(request.timeoutSeconds());
+        return Multi.createFrom().emitter(emitter -> {
+            CompletableFuture<Void> runs;
+            try {
+                runs = execService.runAll(nodes, command, timeout, result -> emitter.emit(sse.newEventBuilder()
+                        .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                        .data(ExecService.ExecResult.class, result)
+                        .build()));
+            } catch (RuntimeException e) {
+                runs = CompletableFuture.failedFuture(e);
+            }
+            runs.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    Log.errorf(cause, "Streaming exec on %s failed", nodes);
+                    emitter.emit(sse.newEventBuilder()
+                            .name("error")
+                            .mediaType(MediaType.TEXT_PLAIN_TYPE)
+                            .data(String.class, cause.getMessage() != null ? cause.getMessage() : cause.toString())
+                            .build());
+                }
+                emitter.complete();
+            });
+        });
+    }
+
+    private List<String> resolveNodes(ExecRequest request) {
+        if (request == null) {
+            throw new WebApplicationException("Missing request body", Response.Status.BAD_REQUEST);
+        }
+        Set<String> nodes = new LinkedHashSet<>();
+        if (request.lab() != null && !request.lab().isBlank()) {
+            nodes.addAll(registry.labNodes(request.lab().trim())
+                    .orElseThrow(() -> new WebApplicationException("Unknown lab", Response.Status.NOT_FOUND)));
+        }
+        if (request.nodes() != null) {
+            request.nodes().stream().filter(n -> n != null && !n.isBlank()).map(String::trim).forEach(nodes::add);
+        }
+        if (nodes.isEmpty()) {
+            throw new WebApplicationException("No nodes selected", Response.Status.BAD_REQUEST);
+        }
+        return List.copyOf(nodes);
+    }
+
+    private static String command(ExecRequest request) {
+        if (request.command() == null || request.command().isBlank()) {
+            throw new WebApplicationException("Missing command", Response.Status.BAD_REQUEST);
+        }
+        return request.command();
+    }
+
+    /**
+     * @param lab            run on every node of this lab
+     * @param nodes          additional node ids
+     * @param timeoutSeconds per-node budget; defaults to {@code lab.exec.timeout-seconds}
+     */
+    public record ExecRequest(String lab, List<String> nodes, String command, Integer timeoutSeconds) {
+    }
+}
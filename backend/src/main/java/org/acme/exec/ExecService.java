@@ -0,0 +1,308 @@
+package org.acme.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.acme.LabScheduler;
+import org.acme.SshTargetRegistry;
+import org.acme.SshTargetRegistry.Target;
+import org.acme.terminal.SshConnector;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.session.ClientSession;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Runs one-shot commands on lab nodes over SSH exec channels. Each node keeps one
+ * authenticated session that later commands reuse; it is closed after
+ * {@code lab.exec.session-idle-seconds} without use. A command's budget covers the wait
+ * for a slot, connecting that session when there is none, and the command itself.
+ */
+@ApplicationScoped
+public class ExecService {
+
+    public enum ExecStatus {
+        /** The command ran to completion; see the exit status. */
+        COMPLETED,
+        /** The node's time budget ran out before the command finished. */
+        TIMEOUT,
+        /** The command could not be run (unknown node, SSH failure, too busy). */
+        FAILED
+    }
+
+    public record ExecResult(String node, ExecStatus status, Integer exitStatus, String stdout, String stderr,
+            boolean truncated, long elapsedMillis, String error) {
+
+        static ExecResult failed(String node, String error, long startedAt) {
+            return new ExecResult(node, ExecStatus.FAILED, null, "", "", false, ExecService.elapsedMillis(startedAt), error);
+        }
+    }
+
+    private final Map<String, NodeSessions> nodes = new ConcurrentHashMap<>();
+
+    private ExecutorService workers;
+
+    @Inject
+    SshTargetRegistry registry;
+
+    @Inject
+    SshConnector connector;
+
+    @Inject
+    LabScheduler scheduler;
+
+    @Inject
+    ExecSettings settings;
+
+    @PostConstruct
+    void start() {
+        workers = Executors.newFixedThreadPool(settings.parallelism(), r -> {
+            Thread t = new Thread(r, "lab-exec");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::closeIdleSessions, settings.sessionIdle(), Duration.ofSeconds(30));
+    }
+
+    @PreDestroy
+    void stop() {
+        workers.shutdownNow();
+        nodes.values().forEach(NodeSessions::close);
+        nodes.clear();
+    }
+
+    /**
+     * Run {@code command} on every node in parallel and report each result as soon as
+     * that node finishes. The returned future completes once all nodes have reported.
+     */
+    public CompletableFuture<Void> runAll(List<String> nodeIds, String command, Duration timeout,
+            Consumer<ExecResult> onResult) {
+        List<CompletableFuture<Void>> runs = new ArrayList<>(nodeIds.size());
+        for (String nodeId : nodeIds) {
+            runs.add(CompletableFuture.supplyAsync(() -> run(nodeId, command, timeout), workers)
+                    .thenAccept(onResult));
+        }
+        return CompletableFuture.allOf(runs.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Run {@code command} on one node, waiting at most {@code timeout} for a free slot,
+     * the SSH session and the command itself.
+     */
+    public ExecResult run(String nodeId, String command, Duration timeout) {
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + timeout.toNanos();
+        Target target = registry.find(nodeId).orElse(null);
+        if (target == null) {
+            return ExecResult.failed(nodeId, "Unknown node", startedAt);
+        }
+        NodeSessions node = nodes.computeIfAbsent(nodeId, id -> new NodeSessions(settings.perNodeConcurrency()));
+        try {
+            if (!node.permits.tryAcquire(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                return ExecResult.failed(nodeId, "Too many concurrent commands on node", startedAt);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ExecResult.failed(nodeId, "Interrupted", startedAt);
+        }
+        ClientSession session = null;
+        try {
+            session = node.session(target, deadline);
+            return exec(nodeId, session, command, deadline, startedAt);
+        } catch (IOException | RuntimeException e) {
+            Log.debugf(e, "Exec on %s failed", nodeId);
+            if (session != null) {
+                node.invalidate(session);
+            }
+            return ExecResult.failed(nodeId, e.getMessage() != null ? e.getMessage() : e.toString(), startedAt);
+        } finally {
+            node.permits.release();
+        }
+    }
+
+    private ExecResult exec(String nodeId, ClientSession session, String command, long deadline, long startedAt)
+            throws IOException {
+        BoundedOutput stdout = new BoundedOutput(settings.maxOutputBytes());
+        BoundedOutput stderr = new BoundedOutput(settings.maxOutputBytes());
+        ChannelExec channel = session.createExecChannel(command);
+        try {
+            channel.setOut(stdout);
+            channel.setErr(stderr);
+            channel.open().verify(Duration.ofNanos(remaining(deadline)));
+            Set<ClientChannelEvent> events = channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED),
+                    Duration.ofNanos(remaining(deadline)));
+            ExecStatus status = events.contains(ClientChannelEvent.CLOSED) ? ExecStatus.COMPLETED : ExecStatus.TIMEOUT;
+            return new ExecResult(nodeId, status, channel.getExitStatus(), stdout.text(), stderr.text(),
+                    stdout.truncated || stderr.truncated, elapsedMillis(startedAt), null);
+        } finally {
+            channel.close(true);
+        }
+    }
+
+    private void closeIdleSessions() {
+        long idleBefore = System.nanoTime() - settings.sessionIdle().toNanos();
+        nodes.values().forEach(node -> node.closeIfIdle(idleBefore));
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(1L, deadline - System.nanoTime());
+    }
+
+    private static long elapsedMillis(long startedAt) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * One reusable authenticated session per node; exec channels are multiplexed over it
+     * up to the node's concurrency limit. The first caller to find no session connects
+     * outside the monitor within its own budget; the others wait for that connect until
+     * their own deadline.
+     */
+    private final class NodeSessions {
+        private final Semaphore permits;
+        private ClientSession session;
+        private CompletableFuture<ClientSession> connecting;
+        private long lastUsed;
+
+        NodeSessions(int concurrency) {
+            this.permits = new Semaphore(concurrency);
+        }
+
+        ClientSession session(Target target, long deadline) throws IOException {
+            CompletableFuture<ClientSession> pending;
+            boolean connectHere = false;
+            synchronized (this) {
+                if (session != null && session.isOpen() && !session.isClosing()) {
+                    lastUsed = System.nanoTime();
+                    return session;
+                }
+                if (connecting == null) {
+                    connecting = new CompletableFuture<>();
+                    connectHere = true;
+                }
+                pending = connecting;
+            }
+            if (connectHere) {
+                return connect(target, deadline, pending);
+            }
+            try {
+                ClientSession shared = pending.get(remaining(deadline), TimeUnit.NANOSECONDS);
+                synchronized (this) {
+                    lastUsed = System.nanoTime();
+                }
+                return shared;
+            } catch (TimeoutException e) {
+                throw new IOException("Timed out waiting for the SSH session");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+                throw new IOException(e.getCause());
+            }
+        }
+
+        private ClientSession connect(Target target, long deadline, CompletableFuture<ClientSession> pending)
+                throws IOException {
+            try {
+                ClientSession opened = connector.connect(target, Duration.ofNanos(remaining(deadline)));
+                synchronized (this) {
+                    session = opened;
+                    connecting = null;
+                    lastUsed = System.nanoTime();
+                }
+                pending.complete(opened);
+                return opened;
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    connecting = null;
+                }
+                pending.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        synchronized void invalidate(ClientSession failed) {
+            if (session == failed) {
+                close();
+            }
+        }
+
+        synchronized void closeIfIdle(long idleBefore) {
+            if (session != null && lastUsed - idleBefore < 0
+                    && permits.availablePermits() == settings.perNodeConcurrency()) {
+                close();
+            }
+        }
+
+        synchronized void close() {
+            if (session != null) {
+                try {
+                    session.close(true);
+                } catch (Exception ignored) {
+                }
+                session = null;
+            }
+        }
+    }
+
+    /**
+     * Keeps the first {@code limit} bytes of a stream and discards the rest.
+     */
+    private static final class BoundedOutput extends ByteArrayOutputStream {
+        private final int limit;
+        private volatile boolean truncated;
+
+        BoundedOutput(int limit) {
+            super(Math.min(limit, 1024));
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (count < limit) {
+                super.write(b);
+            } else {
+                truncated = true;
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int accepted = Math.min(len, limit - count);
+            if (accepted > 0) {
+                super.write(b, off, accepted);
+            }
+            if (accepted < len) {
+                truncated = true;
+            }
+        }
+
+        synchronized String text() {
+            return toString(StandardCharsets.UTF_8);
+        }
+    }
+}
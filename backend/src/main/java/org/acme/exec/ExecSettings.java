@@ -0,0 +1,60 @@
+package org.acme.exec;
+
+import java.time.Duration;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class ExecSettings {
+
+    private final Duration timeout;
+    private final Duration maxTimeout;
+    private final int perNodeConcurrency;
+    private final int parallelism;
+    private final int maxOutputBytes;
+    private final Duration sessionIdle;
+
+    public ExecSettings(
+            @ConfigProperty(name = "lab.exec.timeout-seconds", defaultValue = "15") long timeoutSeconds,
+            @ConfigProperty(name = "lab.exec.max-timeout-seconds", defaultValue = "120") long maxTimeoutSeconds,
+            @ConfigProperty(name = "lab.exec.per-node-concurrency", defaultValue = "4") int perNodeConcurrency,
+            @ConfigProperty(name = "lab.exec.parallelism", defaultValue = "32") int parallelism,
+            @ConfigProperty(name = "lab.exec.max-output-bytes", defaultValue = "65536") int maxOutputBytes,
+            @ConfigProperty(name = "lab.exec.session-idle-seconds", defaultValue = "120") long sessionIdleSeconds) {
+
+        this.timeout = Duration.ofSeconds(Math.max(1L, timeoutSeconds));
+        this.maxTimeout = Duration.ofSeconds(Math.max(this.timeout.getSeconds(), maxTimeoutSeconds));
+        this.perNodeConcurrency = Math.max(1, perNodeConcurrency);
+        this.parallelism = Math.max(1, parallelism);
+        this.maxOutputBytes = Math.max(1024, maxOutputBytes);
+        this.sessionIdle = Duration.ofSeconds(Math.max(1L, sessionIdleSeconds));
+    }
+
+    /**
+     * Per-node time budget: {@code requestedSeconds} when positive, capped at the maximum.
+     */
+    public Duration timeout(Integer requestedSeconds) {
+        if (requestedSeconds == null || requestedSeconds <= 0) {
+            return timeout;
+        }
+        return Duration.ofSeconds(Math.min(requestedSeconds, maxTimeout.getSeconds()));
+    }
+
+    public int perNodeConcurrency() {
+        return perNodeConcurrency;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public int maxOutputBytes() {
+        return maxOutputBytes;
+    }
+
+    public Duration sessionIdle() {
+        return sessionIdle;
+    }
+}
@@ -0,0 +1,68 @@
+package org.acme.guac;
+
+import java.util.List;
+
+import org.apache.guacamole.protocol.GuacamoleClientInformation;
+import org.apache.guacamole.protocol.GuacamoleConfiguration;
+
+import jakarta.websocket.Session;
+
+/**
+ * Display parameters for the guacd handshake, taken from the tunnel's connect request:
+ * {@code ?width=&height=&dpi=} for the client's viewport and {@code ?link=good|fair|poor}
+ * as an initial link hint. Missing or out-of-range values fall back to 1280x720 at 96 DPI
+ * on a good link.
+ */
+public final class GuacDisplay {
+
+    static final int DEFAULT_WIDTH = 1280;
+    static final int DEFAULT_HEIGHT = 720;
+    static final int DEFAULT_DPI = 96;
+
+    private GuacDisplay() {
+    }
+
+    public static LinkQuality linkHint(Session ws) {
+        return LinkQuality.parse(param(ws, "link"), LinkQuality.GOOD);
+    }
+
+    public static GuacamoleClientInformation clientInformation(Session ws, LinkQuality link) {
+        GuacamoleClientInformation info = new GuacamoleClientInformation();
+        info.setOptimalScreenWidth(intParam(ws, "width", DEFAULT_WIDTH, 320, 7680));
+        info.setOptimalScreenHeight(intParam(ws, "height", DEFAULT_HEIGHT, 240, 4320));
+        info.setOptimalResolution(intParam(ws, "dpi", DEFAULT_DPI, 48, 384));
+        info.getImageMimetypes().add("image/png");
+        info.getImageMimetypes().addAll(link.lossyMimetypes());
+        return info;
+    }
+
+    /**
+     * Colour depth and lossless mode for the link class. Protocols that don't take a
+     * parameter (e.g. {@code color-depth} for SSH) never ask guacd for it, so it is ignored.
+     */
+    public static void configure(GuacamoleConfiguration cfg, LinkQuality link) {
+        cfg.setParameter("color-depth", Integer.toString(link.colorDepth()));
+        cfg.setParameter("force-lossless", Boolean.toString(link.lossless()));
+    }
+
+    private static int intParam(Session ws, String name, int fallback, int min, int max) {
+        String raw = param(ws, name);
+        if (raw == null) {
+            return fallback;
+        }
+        try {
+            int value = Integer.parseInt(raw.trim());
+            return value < min || value > max ? fallback : value;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String param(Session ws, String name) {
+        if (ws == null || ws.getRequestParameterMap() == null) {
+            return null;
+        }
+        List<String> values = ws.getRequestParameterMap().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
@@ -0,0 +1,202 @@
+package org.acme.guac;
+
+import java.nio.CharBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.acme.LabScheduler;
+import org.acme.metrics.LabMetrics;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Measures one Guacamole session's link from the protocol's own {@code sync}
+ * instructions: guacd ends every frame with {@code sync,<timestamp>} and the browser
+ * echoes it once the frame is drawn. The time between the two is the frame round trip;
+ * the bytes sent between two syncs give the display throughput. The smoothed round trip
+ * picks the session's {@link LinkQuality}, which decides how browser resizes are
+ * coalesced before they reach guacd.
+ */
+public final class LinkMonitor {
+
+    private static final String SYNC = "4.sync,";
+    private static final String SIZE = "4.size,";
+    private static final double ALPHA = 0.2;
+    private static final int MAX_PENDING_SYNCS = 32;
+    private static final int SAMPLES_TO_SWITCH = 3;
+
+    private final LabMetrics.GuacLinkMeters meters;
+    private final LabScheduler scheduler;
+    private final Map<String, Long> pendingSyncs = new ConcurrentHashMap<>();
+
+    // Only touched by the pump thread.
+    private long bytesSinceSync;
+    private long lastSyncAt;
+
+    private volatile LinkQuality quality;
+    private volatile double rttMillis = -1;
+    private volatile double bytesPerSecond = -1;
+
+    // Guarded by this.
+    private LinkQuality candidate;
+    private int candidateSamples;
+    private String pendingResize;
+    private boolean resizeScheduled;
+
+    public LinkMonitor(LinkQuality initial, LabMetrics.GuacLinkMeters meters, LabScheduler scheduler) {
+        this.quality = initial;
+        this.meters = meters;
+        this.scheduler = scheduler;
+    }
+
+    public LinkQuality quality() {
+        return quality;
+    }
+
+    /** Smoothed sync round trip in milliseconds, or -1 before the first acknowledgement. */
+    public double rttMillis() {
+        return rttMillis;
+    }
+
+    /** Smoothed display throughput in bytes per second, or -1 before the second sync. */
+    public double bytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Called by the pump for every chunk read from guacd, before it is sent to the browser.
+     */
+    public void outbound(char[] chunk) {
+        bytesSinceSync += chunk.length;
+        CharBuffer text = CharBuffer.wrap(chunk);
+        for (int at = indexOf(text, SYNC, 0); at >= 0; at = indexOf(text, SYNC, at + SYNC.length())) {
+            long now = System.nanoTime();
+            String timestamp = element(text, at + SYNC.length());
+            if (timestamp != null) {
+                if (pendingSyncs.size() >= MAX_PENDING_SYNCS) {
+                    // The browser stopped acknowledging; start over rather than grow.
+                    pendingSyncs.clear();
+                }
+                pendingSyncs.put(timestamp, now);
+            }
+            if (lastSyncAt != 0 && now > lastSyncAt) {
+                double rate = bytesSinceSync * 1e9 / (now - lastSyncAt);
+                bytesPerSecond = bytesPerSecond < 0 ? rate : bytesPerSecond + ALPHA * (rate - bytesPerSecond);
+                meters.throughput(rate);
+            }
+            bytesSinceSync = 0;
+            lastSyncAt = now;
+        }
+    }
+
+    /**
+     * Called for every message from the browser. Sync acknowledgements update the round
+     * trip; the message itself is forwarded unchanged by the caller.
+     */
+    public void inbound(String message) {
+        int at = message.indexOf(SYNC);
+        if (at < 0) {
+            return;
+        }
+        String timestamp = element(message, at + SYNC.length());
+        Long sentAt = timestamp != null ? pendingSyncs.remove(timestamp) : null;
+        if (sentAt == null) {
+            return;
+        }
+        long rtt = System.nanoTime() - sentAt;
+        meters.syncRtt(rtt);
+        double millis = rtt / 1e6;
+        rttMillis = rttMillis < 0 ? millis : rttMillis + ALPHA * (millis - rttMillis);
+        reclassify();
+    }
+
+    /**
+     * Hold back a browser {@code size} instruction while the link is slow, so that a window
+     * being dragged makes guacd redraw once for the final size instead of for every step.
+     * The latest held instruction is handed to {@code forward} on the shared scheduler
+     * after the link's resize delay.
+     *
+     * @return true if the message was held back and must not be forwarded by the caller.
+     */
+    public boolean deferResize(String message, Consumer<String> forward) {
+        long delay = quality.resizeDelay().toMillis();
+        if (delay == 0 || !message.startsWith(SIZE) || message.indexOf(';') != message.length() - 1) {
+            return false;
+        }
+        synchronized (this) {
+            pendingResize = message;
+            if (resizeScheduled) {
+                return true;
+            }
+            resizeScheduled = true;
+        }
+        scheduler.schedule(() -> {
+            String latest;
+            synchronized (this) {
+                latest = pendingResize;
+                pendingResize = null;
+                resizeScheduled = false;
+            }
+            if (latest != null) {
+                forward.accept(latest);
+            }
+        }, quality.resizeDelay());
+        return true;
+    }
+
+    private synchronized void reclassify() {
+        LinkQuality measured = LinkQuality.classify(rttMillis);
+        if (measured == quality) {
+            candidate = null;
+            candidateSamples = 0;
+            return;
+        }
+        if (measured != candidate) {
+            candidate = measured;
+            candidateSamples = 0;
+        }
+        if (++candidateSamples >= SAMPLES_TO_SWITCH) {
+            Log.debugf("Guacamole link %s -> %s (rtt %.0f ms)", quality, measured, rttMillis);
+            quality = measured;
+            candidate = null;
+            candidateSamples = 0;
+            meters.qualityChanged();
+        }
+    }
+
+    private static int indexOf(CharSequence text, String needle, int from) {
+        int last = text.length() - needle.length();
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < needle.length(); j++) {
+                if (text.charAt(i + j) != needle.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Value of the {@code <length>.<value>} element starting at {@code start}, or null if it
+     * is malformed or cut off by the end of the chunk.
+     */
+    static String element(CharSequence text, int start) {
+        int length = 0;
+        int i = start;
+        for (; i < text.length() && text.charAt(i) != '.'; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9' || i - start > 6) {
+                return null;
+            }
+            length = length * 10 + (c - '0');
+        }
+        int end = i + 1 + length;
+        if (i == start || end > text.length()) {
+            return null;
+        }
+        return text.subSequence(i + 1, end).toString();
+    }
+}
@@ -0,0 +1,74 @@
+package org.acme.guac;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Coarse link class of a Guacamole session, from a client hint at connect time or from
+ * measured {@code sync} round trips afterwards. Each class carries the display settings
+ * used for it.
+ */
+public enum LinkQuality {
+
+    /** Full colour, lossless PNG only, resizes forwarded immediately. */
+    GOOD(24, true, List.of(), Duration.ZERO),
+    /** 16-bit colour, lossy JPEG/WebP allowed for large updates, resizes coalesced. */
+    FAIR(16, false, List.of("image/jpeg", "image/webp"), Duration.ofMillis(300)),
+    /** 8-bit colour, lossy images, resizes coalesced over a second. */
+    POOR(8, false, List.of("image/jpeg", "image/webp"), Duration.ofSeconds(1));
+
+    static final double FAIR_RTT_MILLIS = 80;
+    static final double POOR_RTT_MILLIS = 250;
+
+    private final int colorDepth;
+    private final boolean lossless;
+    private final List<String> lossyMimetypes;
+    private final Duration resizeDelay;
+
+    LinkQuality(int colorDepth, boolean lossless, List<String> lossyMimetypes, Duration resizeDelay) {
+        this.colorDepth = colorDepth;
+        this.lossless = lossless;
+        this.lossyMimetypes = lossyMimetypes;
+        this.resizeDelay = resizeDelay;
+    }
+
+    public int colorDepth() {
+        return colorDepth;
+    }
+
+    public boolean lossless() {
+        return lossless;
+    }
+
+    /** Image formats offered to guacd besides PNG. */
+    public List<String> lossyMimetypes() {
+        return lossyMimetypes;
+    }
+
+    public Duration resizeDelay() {
+        return resizeDelay;
+    }
+
+    static LinkQuality classify(double rttMillis) {
+        if (rttMillis >= POOR_RTT_MILLIS) {
+            return POOR;
+        }
+        return rttMillis >= FAIR_RTT_MILLIS ? FAIR : GOOD;
+    }
+
+    /**
+     * Parse a client hint ({@code good|fair|poor}, or {@code fast|slow}); unknown values give {@code fallback}.
+     */
+    static LinkQuality parse(String hint, LinkQuality fallback) {
+        if (hint == null) {
+            return fallback;
+        }
+        return switch (hint.trim().toLowerCase(Locale.ROOT)) {
+            case "good", "fast" -> GOOD;
+            case "fair" -> FAIR;
+            case "poor", "slow" -> POOR;
+            default -> fallback;
+        };
+    }
+}
@@ -0,0 +1,89 @@
+package org.acme.health;
+
+/**
+ * Consecutive-failure circuit breaker. After {@code failureThreshold} failures the
+ * circuit opens and callers are turned away; once {@code openNanos} have passed a
+ * single trial call is let through, and its outcome closes or re-opens the circuit.
+ * A successful background probe closes it straight away.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean trialInFlight;
+    private String lastError;
+
+    public CircuitBreaker(int failureThreshold, long openNanos) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = Math.max(0L, openNanos);
+    }
+
+    /**
+     * @return {@code true} if a call may go ahead now.
+     */
+    public synchronized boolean tryAcquire(long nowNanos) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nowNanos - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * Whether a call would currently be rejected, without claiming the half-open trial.
+     */
+    public synchronized boolean isRejecting(long nowNanos) {
+        return switch (state) {
+            case CLOSED -> false;
+            case OPEN -> nowNanos - openedAt < openNanos;
+            case HALF_OPEN -> trialInFlight;
+        };
+    }
+
+    public synchronized void onSuccess() {
+        failures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure(long nowNanos, String error) {
+        lastError = error;
+        trialInFlight = false;
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = nowNanos;
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized int failures() {
+        return failures;
+    }
+
+    public synchronized String lastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,213 @@
+package org.acme.health;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.acme.LabScheduler;
+import org.acme.SshTargetRegistry;
+import org.acme.metrics.LabMetrics;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Tracks reachability of the SSH nodes and guacd. Every target has a circuit breaker fed
+ * both by real connection attempts and by a background probe (TCP connect, plus the SSH
+ * banner for nodes) so that connections to a dead target fail fast instead of waiting for
+ * the full connect timeout. Probing starts at boot rather than with the first connect,
+ * so a node that is already down is known before anyone tries it.
+ */
+@ApplicationScoped
+public class HealthMonitor {
+
+    public enum Kind {
+        SSH, GUACD
+    }
+
+    public record TargetStatus(Kind kind, String host, int port, CircuitBreaker.State state, int failures,
+            String lastError, Instant lastProbeAt, Long lastProbeMillis) {
+    }
+
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    private ExecutorService probes;
+
+    @Inject
+    HealthSettings settings;
+
+    @Inject
+    SshTargetRegistry registry;
+
+    @Inject
+    LabScheduler scheduler;
+
+    @Inject
+    LabMetrics metrics;
+
+    @ConfigProperty(name = "app.guacd.host", defaultValue = "guacd")
+    String guacdHost;
+
+    @ConfigProperty(name = "app.guacd.port", defaultValue = "4822")
+    int guacdPort;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!settings.enabled()) {
+            return;
+        }
+        registry.targets().values().forEach(t -> target(Kind.SSH, t.host(), t.port()));
+        target(Kind.GUACD, guacdHost, guacdPort);
+        metrics.gauge("lab.health.open-circuits", "Targets whose circuit breaker is not closed", targets,
+                m -> m.values().stream().filter(t -> t.breaker.state() != CircuitBreaker.State.CLOSED).count());
+        probes = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "lab-health");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::probeAll, Duration.ofSeconds(1), settings.interval());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (probes != null) {
+            probes.shutdownNow();
+        }
+    }
+
+    /**
+     * Claim permission to connect to a target.
+     *
+     * @throws TargetUnavailableException while the target's circuit is open.
+     */
+    public void checkAvailable(Kind kind, String host, int port) throws TargetUnavailableException {
+        if (settings.enabled() && !target(kind, host, port).breaker.tryAcquire(System.nanoTime())) {
+            throw unavailable(kind);
+        }
+    }
+
+    /**
+     * Like {@link #checkAvailable} but does not use up the half-open trial; for rejecting
+     * work early before anything has been reserved.
+     */
+    public boolean isAvailable(Kind kind, String host, int port) {
+        return !settings.enabled() || !target(kind, host, port).breaker.isRejecting(System.nanoTime());
+    }
+
+    public void recordSuccess(Kind kind, String host, int port) {
+        if (settings.enabled()) {
+            target(kind, host, port).breaker.onSuccess();
+        }
+    }
+
+    public void recordFailure(Kind kind, String host, int port, Throwable error) {
+        if (settings.enabled()) {
+            target(kind, host, port).breaker.onFailure(System.nanoTime(), describe(error));
+        }
+    }
+
+    public List<TargetStatus> statuses() {
+        return targets.values().stream()
+                .map(Target::status)
+                .sorted(Comparator.comparing(TargetStatus::kind).thenComparing(TargetStatus::host))
+                .toList();
+    }
+
+    public static TargetUnavailableException unavailable(Kind kind) {
+        return new TargetUnavailableException(kind == Kind.GUACD
+                ? "Remote desktop gateway unavailable, try again later"
+                : "Node unavailable, try again later");
+    }
+
+    private Target target(Kind kind, String host, int port) {
+        return targets.computeIfAbsent(kind + "/" + host + ":" + port, key -> new Target(kind, host, port,
+                new CircuitBreaker(settings.failureThreshold(), settings.openDuration().toNanos())));
+    }
+
+    private void probeAll() {
+        for (Target target : targets.values()) {
+            if (!target.probing) {
+                target.probing = true;
+                probes.execute(target::probe);
+            }
+        }
+    }
+
+    private static String describe(Throwable error) {
+        String message = error.getMessage();
+        return error.getClass().getSimpleName() + (message != null ? ": " + message : "");
+    }
+
+    private final class Target {
+        private final Kind kind;
+        private final String host;
+        private final int port;
+        private final CircuitBreaker breaker;
+        private volatile boolean probing;
+        private volatile Instant lastProbeAt;
+        private volatile Long lastProbeMillis;
+
+        Target(Kind kind, String host, int port, CircuitBreaker breaker) {
+            this.kind = kind;
+            this.host = host;
+            this.port = port;
+            this.breaker = breaker;
+        }
+
+        void probe() {
+            long started = System.nanoTime();
+            int timeout = (int) settings.probeTimeout().toMillis();
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), timeout);
+                if (kind == Kind.SSH) {
+                    socket.setSoTimeout(timeout);
+                    readBanner(socket.getInputStream());
+                }
+                lastProbeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                breaker.onSuccess();
+            } catch (IOException | RuntimeException e) {
+                lastProbeMillis = null;
+                breaker.onFailure(System.nanoTime(), describe(e));
+                Log.debugf("Health probe %s %s:%d failed: %s", kind, host, port, e.getMessage());
+            } finally {
+                lastProbeAt = Instant.now();
+                probing = false;
+            }
+        }
+
+        private void readBanner(InputStream in) throws IOException {
+            byte[] prefix = new byte[4];
+            int read = 0;
+            while (read < prefix.length) {
+                int n = in.read(prefix, read, prefix.length - read);
+                if (n < 0) {
+                    throw new IOException("Connection closed before SSH banner");
+                }
+                read += n;
+            }
+            if (!"SSH-".equals(new String(prefix, StandardCharsets.US_ASCII))) {
+                throw new IOException("Unexpected SSH banner");
+            }
+        }
+
+        TargetStatus status() {
+            return new TargetStatus(kind, host, port, breaker.state(), breaker.failures(), breaker.lastError(),
+                    lastProbeAt, lastProbeMillis);
+        }
+    }
+}
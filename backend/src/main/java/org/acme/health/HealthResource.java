@@ -0,0 +1,24 @@
+package org.acme.health;
+
+import java.util.List;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+@Path("/api/admin/health")
+@RolesAllowed({ "${lab.admin-role}", "${lab.observer-role}" })
+@Produces(MediaType.APPLICATION_JSON)
+public class HealthResource {
+
+    @Inject
+    HealthMonitor monitor;
+
+    @GET
+    public List<HealthMonitor.TargetStatus> targets() {
+        return monitor.statuses();
+    }
+}
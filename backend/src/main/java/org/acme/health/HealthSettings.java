@@ -0,0 +1,51 @@
+package org.acme.health;
+
+import java.time.Duration;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class HealthSettings {
+
+    private final boolean enabled;
+    private final Duration interval;
+    private final Duration probeTimeout;
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    public HealthSettings(
+            @ConfigProperty(name = "lab.health.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "lab.health.interval-seconds", defaultValue = "10") long intervalSeconds,
+            @ConfigProperty(name = "lab.health.probe-timeout-millis", defaultValue = "1000") long probeTimeoutMillis,
+            @ConfigProperty(name = "lab.health.failure-threshold", defaultValue = "3") int failureThreshold,
+            @ConfigProperty(name = "lab.health.open-seconds", defaultValue = "30") long openSeconds) {
+
+        this.enabled = enabled;
+        this.interval = Duration.ofSeconds(Math.max(1L, intervalSeconds));
+        this.probeTimeout = Duration.ofMillis(Math.max(100L, probeTimeoutMillis));
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDuration = Duration.ofSeconds(Math.max(1L, openSeconds));
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public Duration interval() {
+        return interval;
+    }
+
+    public Duration probeTimeout() {
+        return probeTimeout;
+    }
+
+    public int failureThreshold() {
+        return failureThreshold;
+    }
+
+    public Duration openDuration() {
+        return openDuration;
+    }
+}
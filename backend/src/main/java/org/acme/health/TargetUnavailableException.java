@@ -0,0 +1,14 @@
+package org.acme.health;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of connecting when a target's circuit breaker is open. The message is
+ * short enough to be used as a WebSocket close reason.
+ */
+public class TargetUnavailableException extends IOException {
+
+    public TargetUnavailableException(String message) {
+        super(message);
+    }
+}
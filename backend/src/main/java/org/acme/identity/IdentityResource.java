@@ -8,6 +8,7 @@ import org.jboss.logging.Logger;
 
 import io.quarkus.security.Authenticated;
 import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.common.annotation.NonBlocking;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
@@ -16,6 +17,7 @@ import jakarta.ws.rs.core.MediaType;
 
 @Path("/api/me")
 @Authenticated
+@NonBlocking
 @Produces(MediaType.APPLICATION_JSON)
 public class IdentityResource {
 
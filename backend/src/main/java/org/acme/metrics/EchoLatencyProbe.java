@@ -0,0 +1,118 @@
+package org.acme.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Optional keystroke-to-echo latency probe. Each terminal connection gets a
+ * {@link Tracker} that stamps the first unanswered inbound data frame and closes
+ * the sample on the next outbound output chunk; samples land in a per-node
+ * HdrHistogram {@link Recorder}, which is lock-free on the recording side.
+ */
+@ApplicationScoped
+public class EchoLatencyProbe {
+
+    private static final long MAX_TRACKED_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<String, NodeHistogram> nodes = new ConcurrentHashMap<>();
+
+    @ConfigProperty(name = "lab.latency-probe.enabled", defaultValue = "false")
+    boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return a tracker bound to the node's histogram, or {@code null} when the probe is off.
+     */
+    public Tracker track(String node) {
+        if (!enabled || node == null) {
+            return null;
+        }
+        return new Tracker(nodes.computeIfAbsent(node, key -> new NodeHistogram()).recorder);
+    }
+
+    /**
+     * Cumulative percentiles per node since start-up (or the last reset), in milliseconds.
+     */
+    public Map<String, LatencySummary> summaries() {
+        Map<String, LatencySummary> result = new TreeMap<>();
+        nodes.forEach((node, histogram) -> result.put(node, histogram.summary()));
+        return result;
+    }
+
+    public void reset() {
+        nodes.values().forEach(NodeHistogram::reset);
+    }
+
+    public record LatencySummary(long samples, double meanMillis, double p50Millis, double p90Millis,
+            double p99Millis, double p999Millis, double maxMillis) {
+    }
+
+    public static final class Tracker {
+        private final Recorder recorder;
+        private final AtomicLong pendingSince = new AtomicLong();
+
+        private Tracker(Recorder recorder) {
+            this.recorder = recorder;
+        }
+
+        /**
+         * Called for inbound data frames; only the oldest unanswered keystroke is timed.
+         */
+        public void input() {
+            if (pendingSince.get() == 0L) {
+                pendingSince.compareAndSet(0L, Math.max(1L, System.nanoTime()));
+            }
+        }
+
+        /**
+         * Called after an output chunk has been handed to the WebSocket.
+         */
+        public void output() {
+            if (pendingSince.get() == 0L) {
+                return;
+            }
+            long since = pendingSince.getAndSet(0L);
+            if (since == 0L) {
+                return;
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - since);
+            recorder.recordValue(Math.min(Math.max(micros, 0L), MAX_TRACKED_MICROS));
+        }
+    }
+
+    private static final class NodeHistogram {
+        private final Recorder recorder = new Recorder(3);
+        private Histogram total = new Histogram(3);
+        private Histogram interval;
+
+        synchronized LatencySummary summary() {
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            return new LatencySummary(
+                    total.getTotalCount(),
+                    total.getMean() / 1000.0,
+                    total.getValueAtPercentile(50.0) / 1000.0,
+                    total.getValueAtPercentile(90.0) / 1000.0,
+                    total.getValueAtPercentile(99.0) / 1000.0,
+                    total.getValueAtPercentile(99.9) / 1000.0,
+                    total.getMaxValue() / 1000.0);
+        }
+
+        synchronized void reset() {
+            interval = recorder.getIntervalHistogram(interval);
+            total = new Histogram(3);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.acme.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Central place for the backend's Micrometer meters (scraped at {@code /q/metrics}).
+ * All meters used on relay and quota paths are registered up front and held in
+ * arrays indexed by enum ordinal, so recording is a plain field access plus an
+ * increment and never allocates.
+ */
+@ApplicationScoped
+public class LabMetrics {
+
+    public enum Endpoint {
+        SSHTERM("sshterm"),
+        TUNNEL("tunnel"),
+        CONT("cont"),
+        SSHMUX("sshmux");
+
+        private final String tag;
+
+        Endpoint(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    public enum SshPhase {
+        CONNECT,
+        AUTH,
+        SHELL
+    }
+
+    public enum QuotaOp {
+        PREPARE,
+        START,
+        FINISH,
+        SNAPSHOT
+    }
+
+    private final MeterRegistry registry;
+    private final Timer[] sshPhases = new Timer[SshPhase.values().length];
+    private final Timer[] quotaOps = new Timer[QuotaOp.values().length];
+    private final RelayMeters[] relays = new RelayMeters[Endpoint.values().length];
+    private final CompressionMeters[] compression = new CompressionMeters[Endpoint.values().length];
+    private final GuacLinkMeters[] guacLinks = new GuacLinkMeters[Endpoint.values().length];
+    private final Timer guacdHandshake;
+    private final Counter inputOverflows;
+    private final Counter observerDrops;
+
+    @Inject
+    public LabMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (SshPhase phase : SshPhase.values()) {
+            sshPhases[phase.ordinal()] = Timer.builder("lab.ssh.handshake")
+                    .description("Duration of each SSH setup phase towards lab nodes")
+                    .tag("phase", phase.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        for (QuotaOp op : QuotaOp.values()) {
+            quotaOps[op.ordinal()] = Timer.builder("lab.usage.operation")
+                    .description("Duration of LabUsageService operations")
+                    .tag("op", op.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        for (Endpoint endpoint : Endpoint.values()) {
+            relays[endpoint.ordinal()] = new RelayMeters(registry, endpoint);
+            compression[endpoint.ordinal()] = new CompressionMeters(registry, endpoint);
+            guacLinks[endpoint.ordinal()] = new GuacLinkMeters(registry, endpoint);
+        }
+        guacdHandshake = Timer.builder("lab.guacd.handshake")
+                .description("Time to connect and configure a guacd socket")
+                .publishPercentileHistogram()
+                .register(registry);
+        inputOverflows = Counter.builder("lab.terminal.input.overflow")
+                .description("Terminal input frames rejected by a full per-session input queue")
+                .register(registry);
+        observerDrops = Counter.builder("lab.terminal.observers.dropped")
+                .description("Read-only terminal viewers disconnected for falling behind")
+                .register(registry);
+    }
+
+    public void recordSshPhase(SshPhase phase, long nanos) {
+        sshPhases[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordQuota(QuotaOp op, long nanos) {
+        quotaOps[op.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordGuacdHandshake(long nanos) {
+        guacdHandshake.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordInputOverflow() {
+        inputOverflows.increment();
+    }
+
+    public void recordObserverDrop() {
+        observerDrops.increment();
+    }
+
+    public RelayMeters relay(Endpoint endpoint) {
+        return relays[endpoint.ordinal()];
+    }
+
+    public CompressionMeters compression(Endpoint endpoint) {
+        return compression[endpoint.ordinal()];
+    }
+
+    public GuacLinkMeters guacLink(Endpoint endpoint) {
+        return guacLinks[endpoint.ordinal()];
+    }
+
+    /**
+     * Register a gauge sampled from {@code target} at scrape time (typically a map size).
+     */
+    public <T> void gauge(String name, String description, T target, ToDoubleFunction<T> value, String... tags) {
+        Gauge.builder(name, target, value)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * Register a monotonic counter whose value is owned by {@code target}.
+     */
+    public <T> void counter(String name, String description, T target, ToDoubleFunction<T> value, String... tags) {
+        FunctionCounter.builder(name, target, value)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * Byte and frame counters for one relay endpoint. Guacamole relays are text based,
+     * so their "bytes" are protocol characters.
+     */
+    public static final class RelayMeters {
+        private final Counter bytesIn;
+        private final Counter bytesOut;
+        private final Counter framesIn;
+        private final Counter framesOut;
+        private final Counter throttled;
+
+        private RelayMeters(MeterRegistry registry, Endpoint endpoint) {
+            bytesIn = Counter.builder("lab.relay.bytes").baseUnit("bytes")
+                    .tags("endpoint", endpoint.tag(), "direction", "in").register(registry);
+            bytesOut = Counter.builder("lab.relay.bytes").baseUnit("bytes")
+                    .tags("endpoint", endpoint.tag(), "direction", "out").register(registry);
+            framesIn = Counter.builder("lab.relay.frames")
+                    .tags("endpoint", endpoint.tag(), "direction", "in").register(registry);
+            framesOut = Counter.builder("lab.relay.frames")
+                    .tags("endpoint", endpoint.tag(), "direction", "out").register(registry);
+            throttled = Counter.builder("lab.relay.throttled")
+                    .description("Inbound frames dropped by the per-user message rate limit")
+                    .tags("endpoint", endpoint.tag()).register(registry);
+        }
+
+        public void inbound(long bytes) {
+            framesIn.increment();
+            bytesIn.increment(bytes);
+        }
+
+        public void outbound(int bytes) {
+            framesOut.increment();
+            bytesOut.increment(bytes);
+        }
+
+        public void throttled() {
+            throttled.increment();
+        }
+    }
+
+    /**
+     * Outbound frame compression for one endpoint: raw vs. wire bytes (their ratio is the
+     * compression ratio), frames compressed or sent as-is, and time spent deflating.
+     */
+    public static final class CompressionMeters {
+        private final Counter rawBytes;
+        private final Counter wireBytes;
+        private final Counter compressedFrames;
+        private final Counter skippedFrames;
+        private final Timer time;
+
+        private CompressionMeters(MeterRegistry registry, Endpoint endpoint) {
+            rawBytes = Counter.builder("lab.ws.compression.bytes").baseUnit("bytes")
+                    .description("Bytes of compressed WebSocket frames before and after deflate")
+                    .tags("endpoint", endpoint.tag(), "stage", "raw").register(registry);
+            wireBytes = Counter.builder("lab.ws.compression.bytes").baseUnit("bytes")
+                    .description("Bytes of compressed WebSocket frames before and after deflate")
+                    .tags("endpoint", endpoint.tag(), "stage", "wire").register(registry);
+            compressedFrames = Counter.builder("lab.ws.compression.frames")
+                    .tags("endpoint", endpoint.tag(), "result", "compressed").register(registry);
+            skippedFrames = Counter.builder("lab.ws.compression.frames")
+                    .tags("endpoint", endpoint.tag(), "result", "below-threshold").register(registry);
+            time = Timer.builder("lab.ws.compression.time")
+                    .description("CPU time spent deflating outbound WebSocket frames")
+                    .tags("endpoint", endpoint.tag())
+                    .register(registry);
+        }
+
+        public void compressed(int raw, int wire, long nanos) {
+            compressedFrames.increment();
+            rawBytes.increment(raw);
+            wireBytes.increment(wire);
+            time.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void skipped() {
+            skippedFrames.increment();
+        }
+    }
+
+    /**
+     * Link measurements for Guacamole tunnels: round trip from a {@code sync} sent to the
+     * browser until the browser acknowledges it (network plus render time), display
+     * throughput between syncs, and link class changes.
+     */
+    public static final class GuacLinkMeters {
+        private final Timer syncRtt;
+        private final DistributionSummary throughput;
+        private final Counter qualityChanges;
+
+        private GuacLinkMeters(MeterRegistry registry, Endpoint endpoint) {
+            syncRtt = Timer.builder("lab.guac.sync.rtt")
+                    .description("Time from a Guacamole sync sent to the browser until it is acknowledged")
+                    .tags("endpoint", endpoint.tag())
+                    .publishPercentileHistogram()
+                    .register(registry);
+            throughput = DistributionSummary.builder("lab.guac.throughput").baseUnit("bytes")
+                    .description("Display bytes per second sent to the browser between syncs")
+                    .tags("endpoint", endpoint.tag())
+                    .register(registry);
+            qualityChanges = Counter.builder("lab.guac.link.changes")
+                    .description("Guacamole sessions reclassified to a different link quality")
+                    .tags("endpoint", endpoint.tag())
+                    .register(registry);
+        }
+
+        public void syncRtt(long nanos) {
+            syncRtt.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void throughput(double bytesPerSecond) {
+            throughput.record(bytesPerSecond);
+        }
+
+        public void qualityChanged() {
+            qualityChanges.increment();
+        }
+    }
+}
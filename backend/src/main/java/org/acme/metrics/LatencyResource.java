@@ -0,0 +1,34 @@
+package org.acme.metrics;
+
+import java.util.Map;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+@Path("/api/admin/latency")
+@RolesAllowed("${lab.admin-role}")
+@Produces(MediaType.APPLICATION_JSON)
+public class LatencyResource {
+
+    @Inject
+    EchoLatencyProbe probe;
+
+    @GET
+    public LatencyResponse current() {
+        return new LatencyResponse(probe.isEnabled(), probe.summaries());
+    }
+
+    @DELETE
+    public LatencyResponse reset() {
+        probe.reset();
+        return current();
+    }
+
+    public record LatencyResponse(boolean enabled, Map<String, EchoLatencyProbe.LatencySummary> nodes) {
+    }
+}
@@ -0,0 +1,117 @@
+package org.acme.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.UsagePlan;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Paces relay output (terminal and Guacamole pumps) so that one session flooding output
+ * cannot saturate the relays. Each session draws bytes from its own bucket and from a
+ * bucket shared by everyone on the same plan; when either is empty the pump thread sleeps,
+ * which backs up into SSH / guacd flow control instead of dropping anything.
+ */
+@ApplicationScoped
+public class OutputShaper {
+
+    private final TokenBucket[] planBuckets = new TokenBucket[UsagePlan.values().length];
+    final LongAdder[] bytes = new LongAdder[UsagePlan.values().length];
+    final LongAdder[] interactiveFrames = new LongAdder[UsagePlan.values().length];
+    final LongAdder[] delayedFrames = new LongAdder[UsagePlan.values().length];
+    final LongAdder[] delayNanos = new LongAdder[UsagePlan.values().length];
+
+    @Inject
+    ShapingSettings settings;
+
+    @Inject
+    LabMetrics metrics;
+
+    @PostConstruct
+    void init() {
+        for (UsagePlan plan : UsagePlan.values()) {
+            int i = plan.ordinal();
+            RateLimitSettings.Limit limit = settings.plan(plan);
+            planBuckets[i] = limit.isUnlimited() ? null : new TokenBucket(limit.perSecond(), limit.burst());
+            bytes[i] = new LongAdder();
+            interactiveFrames[i] = new LongAdder();
+            delayedFrames[i] = new LongAdder();
+            delayNanos[i] = new LongAdder();
+            metrics.counter("lab.shaping.bytes", "Relay output bytes passed through shaping", bytes[i],
+                    LongAdder::sum, "plan", plan.id());
+            metrics.counter("lab.shaping.frames", "Relay output frames by shaping decision", interactiveFrames[i],
+                    LongAdder::sum, "plan", plan.id(), "decision", "interactive");
+            metrics.counter("lab.shaping.frames", "Relay output frames by shaping decision", delayedFrames[i],
+                    LongAdder::sum, "plan", plan.id(), "decision", "delayed");
+            metrics.counter("lab.shaping.delay.seconds", "Time relay pumps spent waiting for bandwidth",
+                    delayNanos[i], adder -> adder.sum() / 1e9, "plan", plan.id());
+        }
+    }
+
+    /**
+     * Shaping state for one session; every pump of the session shares it.
+     *
+     * @return the flow, or {@code null} when shaping is disabled.
+     */
+    public Flow open(UsagePlan plan) {
+        if (!settings.enabled()) {
+            return null;
+        }
+        UsagePlan effective = plan != null ? plan : UsagePlan.FREE;
+        RateLimitSettings.Limit limit = settings.session(effective);
+        TokenBucket session = limit.isUnlimited() ? null : new TokenBucket(limit.perSecond(), limit.burst());
+        return new Flow(effective.ordinal(), session);
+    }
+
+    public final class Flow {
+        private final int plan;
+        private final TokenBucket session;
+
+        private Flow(int plan, TokenBucket session) {
+            this.plan = plan;
+            this.session = session;
+        }
+
+        /**
+         * Account for {@code length} bytes about to be sent, sleeping first if the session
+         * or its plan is over budget. Small interactive frames are charged to the plan but
+         * only wait on their own session.
+         */
+        public void pace(int length) throws InterruptedException {
+            long wait = charge(length);
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+
+        /**
+         * The accounting half of {@link #pace}: charge the buckets and counters.
+         *
+         * @return how long to wait before sending, in nanoseconds.
+         */
+        long charge(int length) {
+            bytes[plan].add(length);
+            boolean interactive = length <= settings.interactiveBytes();
+            if (interactive) {
+                interactiveFrames[plan].increment();
+            }
+            long wait = session != null ? session.reserve(length) : 0L;
+            TokenBucket shared = planBuckets[plan];
+            if (shared != null) {
+                long planWait = shared.reserve(length);
+                if (!interactive) {
+                    wait = Math.max(wait, planWait);
+                }
+            }
+            if (wait > 0) {
+                delayedFrames[plan].increment();
+                delayNanos[plan].add(wait);
+            }
+            return wait;
+        }
+    }
+}
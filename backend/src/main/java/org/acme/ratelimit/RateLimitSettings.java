@@ -0,0 +1,65 @@
+package org.acme.ratelimit;
+
+import org.acme.usage.UsagePlan;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class RateLimitSettings {
+
+    /**
+     * Sustained rate and burst size of a bucket. A non-positive rate disables the limit.
+     */
+    public record Limit(double perSecond, int burst) {
+
+        public boolean isUnlimited() {
+            return perSecond <= 0;
+        }
+    }
+
+    private final boolean enabled;
+    private final Limit freeTickets;
+    private final Limit freeConnects;
+    private final Limit freeMessages;
+    private final Limit premiumTickets;
+    private final Limit premiumConnects;
+    private final Limit premiumMessages;
+
+    public RateLimitSettings(
+            @ConfigProperty(name = "lab.ratelimit.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "lab.ratelimit.free.tickets-per-minute", defaultValue = "12") double freeTicketsPerMinute,
+            @ConfigProperty(name = "lab.ratelimit.free.ticket-burst", defaultValue = "6") int freeTicketBurst,
+            @ConfigProperty(name = "lab.ratelimit.free.connects-per-minute", defaultValue = "6") double freeConnectsPerMinute,
+            @ConfigProperty(name = "lab.ratelimit.free.connect-burst", defaultValue = "3") int freeConnectBurst,
+            @ConfigProperty(name = "lab.ratelimit.free.messages-per-second", defaultValue = "50") double freeMessagesPerSecond,
+            @ConfigProperty(name = "lab.ratelimit.free.message-burst", defaultValue = "400") int freeMessageBurst,
+            @ConfigProperty(name = "lab.ratelimit.premium.tickets-per-minute", defaultValue = "30") double premiumTicketsPerMinute,
+            @ConfigProperty(name = "lab.ratelimit.premium.ticket-burst", defaultValue = "10") int premiumTicketBurst,
+            @ConfigProperty(name = "lab.ratelimit.premium.connects-per-minute", defaultValue = "20") double premiumConnectsPerMinute,
+            @ConfigProperty(name = "lab.ratelimit.premium.connect-burst", defaultValue = "6") int premiumConnectBurst,
+            @ConfigProperty(name = "lab.ratelimit.premium.messages-per-second", defaultValue = "200") double premiumMessagesPerSecond,
+            @ConfigProperty(name = "lab.ratelimit.premium.message-burst", defaultValue = "2000") int premiumMessageBurst) {
+
+        this.enabled = enabled;
+        this.freeTickets = new Limit(freeTicketsPerMinute / 60.0, freeTicketBurst);
+        this.freeConnects = new Limit(freeConnectsPerMinute / 60.0, freeConnectBurst);
+        this.freeMessages = new Limit(freeMessagesPerSecond, freeMessageBurst);
+        this.premiumTickets = new Limit(premiumTicketsPerMinute / 60.0, premiumTicketBurst);
+        this.premiumConnects = new Limit(premiumConnectsPerMinute / 60.0, premiumConnectBurst);
+        this.premiumMessages = new Limit(premiumMessagesPerSecond, premiumMessageBurst);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public Limit limit(RateLimiter.Scope scope, UsagePlan plan) {
+        boolean premium = plan == UsagePlan.PREMIUM;
+        return switch (scope) {
+            case TICKET -> premium ? premiumTickets : freeTickets;
+            case CONNECT -> premium ? premiumConnects : freeConnects;
+            case MESSAGE -> premium ? premiumMessages : freeMessages;
+        };
+    }
+}
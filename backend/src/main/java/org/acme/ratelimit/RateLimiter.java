@@ -0,0 +1,167 @@
+package org.acme.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.UsagePlan;
+import org.jboss.logging.Logger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Per-principal (and per-node) token buckets guarding ticket issuance, WebSocket
+ * connects and terminal input. Buckets are created lazily and dropped again once
+ * they have refilled and no open connection holds them, so idle users cost nothing.
+ */
+@ApplicationScoped
+public class RateLimiter {
+
+    private static final Logger LOG = Logger.getLogger(RateLimiter.class);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public enum Scope {
+        TICKET,
+        CONNECT,
+        MESSAGE
+    }
+
+    final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder[] rejections = new LongAdder[Scope.values().length * UsagePlan.values().length];
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    @Inject
+    RateLimitSettings settings;
+
+    @Inject
+    LabMetrics metrics;
+
+    public RateLimiter() {
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    @PostConstruct
+    void initMetrics() {
+        metrics.gauge("lab.ratelimit.buckets", "Live rate-limit buckets", buckets, Map::size);
+        for (Scope scope : Scope.values()) {
+            for (UsagePlan plan : UsagePlan.values()) {
+                metrics.counter("lab.ratelimit.rejections", "Requests rejected by rate limiting",
+                        rejections[index(scope, plan)], LongAdder::sum,
+                        "scope", scope.name().toLowerCase(), "plan", plan.id());
+            }
+        }
+    }
+
+    /**
+     * Take one permit for a principal-wide scope (e.g. ticket issuance).
+     */
+    public boolean tryAcquire(Scope scope, UsagePlan plan, String principal) {
+        return tryAcquire(scope, plan, principal, null);
+    }
+
+    /**
+     * Take one permit for the given principal on the given node.
+     */
+    public boolean tryAcquire(Scope scope, UsagePlan plan, String principal, String node) {
+        TokenBucket bucket = lookup(scope, plan, principal, node);
+        if (bucket == null || bucket.tryAcquire()) {
+            return true;
+        }
+        reject(scope, plan);
+        LOG.debugf("Rate limit hit scope=%s plan=%s principal=%s node=%s", scope, plan, principal, node);
+        return false;
+    }
+
+    /**
+     * Resolve the bucket for a key so hot paths can hold on to it instead of looking it up
+     * per call. The bucket is kept until {@link #release} even when it has refilled, so a
+     * connection's limit is shared with every other connection on the same key.
+     *
+     * @return the bucket, or {@code null} when the scope is not limited.
+     */
+    public TokenBucket hold(Scope scope, UsagePlan plan, String principal, String node) {
+        if (!settings.enabled()) {
+            return null;
+        }
+        RateLimitSettings.Limit limit = settings.limit(scope, plan);
+        if (limit.isUnlimited()) {
+            return null;
+        }
+        sweepIfDue();
+        return buckets.compute(key(scope, plan, principal, node), (k, bucket) -> {
+            TokenBucket held = bucket != null ? bucket : new TokenBucket(limit.perSecond(), limit.burst());
+            held.retain();
+            return held;
+        });
+    }
+
+    /**
+     * Give back a bucket from {@link #hold}; {@code null} is ignored.
+     */
+    public void release(TokenBucket bucket) {
+        if (bucket != null) {
+            bucket.release();
+        }
+    }
+
+    /**
+     * Record a rejection decided by a caller holding a bucket directly.
+     */
+    public void reject(Scope scope, UsagePlan plan) {
+        rejections[index(scope, plan)].increment();
+    }
+
+    public long rejections(Scope scope, UsagePlan plan) {
+        return rejections[index(scope, plan)].sum();
+    }
+
+    private TokenBucket lookup(Scope scope, UsagePlan plan, String principal, String node) {
+        if (!settings.enabled()) {
+            return null;
+        }
+        RateLimitSettings.Limit limit = settings.limit(scope, plan);
+        if (limit.isUnlimited()) {
+            return null;
+        }
+        sweepIfDue();
+        String key = key(scope, plan, principal, node);
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(limit.perSecond(), limit.burst()));
+    }
+
+    private void sweepIfDue() {
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        sweep(now);
+    }
+
+    void sweep(long now) {
+        // per key, so a bucket cannot be dropped between a concurrent hold() and its retain()
+        for (String key : buckets.keySet()) {
+            buckets.computeIfPresent(key, (k, bucket) -> bucket.isIdle(now) && !bucket.isHeld() ? null : bucket);
+        }
+    }
+
+    private static int index(Scope scope, UsagePlan plan) {
+        UsagePlan effective = plan != null ? plan : UsagePlan.FREE;
+        return scope.ordinal() * UsagePlan.values().length + effective.ordinal();
+    }
+
+    private static String key(Scope scope, UsagePlan plan, String principal, String node) {
+        String user = principal == null ? "" : principal.trim().toLowerCase();
+        String planId = plan == null ? UsagePlan.FREE.id() : plan.id();
+        if (node == null) {
+            return scope.name() + '|' + planId + '|' + user;
+        }
+        return scope.name() + '|' + planId + '|' + user + '|' + node;
+    }
+}
@@ -0,0 +1,62 @@
+package org.acme.ratelimit;
+
+import org.acme.usage.UsagePlan;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Output bandwidth shaping: a byte budget per session and a shared one per plan. Frames of
+ * at most {@code interactive-bytes} (keystroke echo, prompts) only wait on their own
+ * session's budget.
+ */
+@ApplicationScoped
+public class ShapingSettings {
+
+    private final boolean enabled;
+    private final int interactiveBytes;
+    private final RateLimitSettings.Limit freeSession;
+    private final RateLimitSettings.Limit freePlan;
+    private final RateLimitSettings.Limit premiumSession;
+    private final RateLimitSettings.Limit premiumPlan;
+
+    public ShapingSettings(
+            @ConfigProperty(name = "lab.shaping.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "lab.shaping.interactive-bytes", defaultValue = "256") int interactiveBytes,
+            @ConfigProperty(name = "lab.shaping.free.session-kib-per-second", defaultValue = "256") double freeSessionRate,
+            @ConfigProperty(name = "lab.shaping.free.session-burst-kib", defaultValue = "128") int freeSessionBurst,
+            @ConfigProperty(name = "lab.shaping.free.plan-kib-per-second", defaultValue = "4096") double freePlanRate,
+            @ConfigProperty(name = "lab.shaping.free.plan-burst-kib", defaultValue = "1024") int freePlanBurst,
+            @ConfigProperty(name = "lab.shaping.premium.session-kib-per-second", defaultValue = "1024") double premiumSessionRate,
+            @ConfigProperty(name = "lab.shaping.premium.session-burst-kib", defaultValue = "512") int premiumSessionBurst,
+            @ConfigProperty(name = "lab.shaping.premium.plan-kib-per-second", defaultValue = "16384") double premiumPlanRate,
+            @ConfigProperty(name = "lab.shaping.premium.plan-burst-kib", defaultValue = "4096") int premiumPlanBurst) {
+
+        this.enabled = enabled;
+        this.interactiveBytes = Math.max(0, interactiveBytes);
+        this.freeSession = bytes(freeSessionRate, freeSessionBurst);
+        this.freePlan = bytes(freePlanRate, freePlanBurst);
+        this.premiumSession = bytes(premiumSessionRate, premiumSessionBurst);
+        this.premiumPlan = bytes(premiumPlanRate, premiumPlanBurst);
+    }
+
+    private static RateLimitSettings.Limit bytes(double kibPerSecond, int burstKib) {
+        return new RateLimitSettings.Limit(kibPerSecond * 1024, Math.max(1, burstKib) * 1024);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public int interactiveBytes() {
+        return interactiveBytes;
+    }
+
+    public RateLimitSettings.Limit session(UsagePlan plan) {
+        return plan == UsagePlan.PREMIUM ? premiumSession : freeSession;
+    }
+
+    public RateLimitSettings.Limit plan(UsagePlan plan) {
+        return plan == UsagePlan.PREMIUM ? premiumPlan : freePlan;
+    }
+}
@@ -0,0 +1,81 @@
+package org.acme.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented as a generic cell rate algorithm: the whole
+ * bucket state is a single "theoretical arrival time" updated with CAS, so
+ * acquiring a permit never blocks and never allocates.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival;
+    // connections holding this bucket for their lifetime; a held bucket is never swept
+    private final AtomicInteger holders = new AtomicInteger();
+
+    TokenBucket(double permitsPerSecond, int burst) {
+        this.intervalNanos = Math.max(1L, (long) (1_000_000_000L / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * Math.max(1, burst);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    public boolean tryAcquire(int permits) {
+        long now = System.nanoTime();
+        long increment = intervalNanos * Math.max(1, permits);
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long base = tat - now > 0 ? tat : now;
+            long next = base + increment;
+            if (next - now > toleranceNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take {@code permits} unconditionally and return how long the caller should wait
+     * before using them: zero while within the burst, otherwise the time until the bucket
+     * has earned them. For shaping, where excess traffic is delayed rather than refused.
+     */
+    public long reserve(int permits) {
+        long now = System.nanoTime();
+        long increment = intervalNanos * Math.max(1, permits);
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long base = tat - now > 0 ? tat : now;
+            long next = base + increment;
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return Math.max(0L, next - now - toleranceNanos);
+            }
+        }
+    }
+
+    /**
+     * A bucket is idle once it has fully refilled; dropping it is indistinguishable from keeping it.
+     */
+    boolean isIdle(long nowNanos) {
+        return theoreticalArrival.get() - nowNanos <= 0;
+    }
+
+    void retain() {
+        holders.incrementAndGet();
+    }
+
+    void release() {
+        holders.updateAndGet(held -> Math.max(0, held - 1));
+    }
+
+    boolean isHeld() {
+        return holders.get() > 0;
+    }
+}
@@ -0,0 +1,95 @@
+package org.acme.terminal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.acme.diagnostics.BlockedWriteEvent;
+
+/**
+ * Ordered, byte-bounded input queue in front of a (possibly blocking) SSH stdin.
+ * Producers only enqueue; a single drain task at a time runs on the given executor
+ * and writes the frames in order, split into chunks so a large paste is sent as a
+ * series of channel packets instead of one write that waits for the whole window.
+ */
+public final class InputQueue {
+
+    private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedBytes = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Executor executor;
+    private final OutputStream target;
+    private final int capacityBytes;
+    private final int chunkBytes;
+    private final Consumer<IOException> onFailure;
+    private volatile boolean closed;
+
+    public InputQueue(Executor executor, OutputStream target, int capacityBytes, int chunkBytes,
+            Consumer<IOException> onFailure) {
+        this.executor = executor;
+        this.target = target;
+        this.capacityBytes = capacityBytes;
+        this.chunkBytes = chunkBytes;
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * Enqueue a frame without blocking.
+     *
+     * @return {@code false} when the queue is closed or the frame would exceed its capacity.
+     */
+    public boolean offer(byte[] data) {
+        if (closed) {
+            return false;
+        }
+        if (data.length == 0) {
+            return true;
+        }
+        if (queuedBytes.addAndGet(data.length) > capacityBytes) {
+            queuedBytes.addAndGet(-data.length);
+            return false;
+        }
+        pending.offer(data);
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+        return true;
+    }
+
+    public int queuedBytes() {
+        return queuedBytes.get();
+    }
+
+    public void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    private void drain() {
+        try {
+            do {
+                byte[] next;
+                while (!closed && (next = pending.poll()) != null) {
+                    for (int offset = 0; offset < next.length; offset += chunkBytes) {
+                        int length = Math.min(chunkBytes, next.length - offset);
+                        BlockedWriteEvent event = BlockedWriteEvent.begin(BlockedWriteEvent.SSH_STDIN, length);
+                        target.write(next, offset, length);
+                        target.flush();
+                        event.commit();
+                    }
+                    queuedBytes.addAndGet(-next.length);
+                }
+                draining.set(false);
+            } while (!closed && !pending.isEmpty() && draining.compareAndSet(false, true));
+        } catch (IOException e) {
+            draining.set(false);
+            close();
+            onFailure.accept(e);
+        }
+    }
+}
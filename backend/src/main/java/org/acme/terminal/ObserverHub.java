@@ -0,0 +1,127 @@
+package org.acme.terminal;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.quarkus.logging.Log;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.Session;
+
+/**
+ * Read-only viewers of one terminal. Every viewer is handed the same frame string as the
+ * owner, so fanning out costs no copies. Each viewer has its own budget of unsent bytes;
+ * a viewer that falls further behind is disconnected instead of slowing down the pump.
+ */
+public final class ObserverHub {
+
+    private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+    private final int maxViewers;
+    private final long maxPendingBytes;
+    private final Executor closer;
+    private final Runnable onDrop;
+
+    public ObserverHub(int maxViewers, long maxPendingBytes, Executor closer, Runnable onDrop) {
+        this.maxViewers = maxViewers;
+        this.maxPendingBytes = maxPendingBytes;
+        this.closer = closer;
+        this.onDrop = onDrop;
+    }
+
+    public boolean isEmpty() {
+        return viewers.isEmpty();
+    }
+
+    public int size() {
+        return viewers.size();
+    }
+
+    /**
+     * Add a viewer, first sending it {@code replay} (may be {@code null}). Callers hold the
+     * terminal's output lock so nothing is published in between.
+     *
+     * @param replayBytes UTF-8 size of the replay, counted like {@link #publish} output
+     * @return {@code false} when the terminal already has its maximum number of viewers.
+     */
+    public synchronized boolean add(Session ws, String replay, long replayBytes) {
+        if (viewers.size() >= maxViewers) {
+            return false;
+        }
+        Viewer viewer = new Viewer(ws);
+        viewers.add(viewer);
+        if (replay != null && !viewer.send(replay, replayBytes)) {
+            drop(viewer);
+        }
+        return true;
+    }
+
+    public void remove(Session ws) {
+        viewers.removeIf(viewer -> viewer.ws == ws);
+    }
+
+    /**
+     * Queue {@code frame} to every viewer without waiting for any of them.
+     *
+     * @param bytes output bytes the frame carries, charged against each viewer's budget
+     */
+    public void publish(String frame, int bytes) {
+        for (Viewer viewer : viewers) {
+            if (!viewer.ws.isOpen()) {
+                viewers.remove(viewer);
+            } else if (!viewer.send(frame, bytes)) {
+                drop(viewer);
+            }
+        }
+    }
+
+    public void closeAll(String reason) {
+        for (Viewer viewer : viewers) {
+            if (viewers.remove(viewer)) {
+                close(viewer.ws, CloseReason.CloseCodes.NORMAL_CLOSURE, reason);
+            }
+        }
+    }
+
+    private void drop(Viewer viewer) {
+        if (viewers.remove(viewer)) {
+            onDrop.run();
+            Log.debugf("Dropping slow terminal viewer %s", viewer.ws.getId());
+            close(viewer.ws, CloseReason.CloseCodes.TRY_AGAIN_LATER, "Viewer too slow");
+        }
+    }
+
+    private void close(Session ws, CloseReason.CloseCode code, String reason) {
+        closer.execute(() -> {
+            try {
+                if (ws.isOpen()) {
+                    ws.close(new CloseReason(code, reason));
+                }
+            } catch (IOException ignored) {
+            }
+        });
+    }
+
+    private final class Viewer {
+        private final Session ws;
+        private final AtomicLong pendingBytes = new AtomicLong();
+
+        Viewer(Session ws) {
+            this.ws = ws;
+        }
+
+        boolean send(String frame, long bytes) {
+            if (pendingBytes.addAndGet(bytes) > maxPendingBytes) {
+                return false;
+            }
+            ws.getAsyncRemote().sendText(frame, result -> {
+                pendingBytes.addAndGet(-bytes);
+                if (!result.isOK()) {
+                    drop(this);
+                }
+            });
+            return true;
+        }
+    }
+}
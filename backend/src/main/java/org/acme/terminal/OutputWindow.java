@@ -0,0 +1,68 @@
+package org.acme.terminal;
+
+/**
+ * Output credit of one {@code /ws/sshmux} channel. The pump reserves credit before it
+ * reads from the SSH stream and refunds what the read did not use; once the client has
+ * not granted more, the pump waits, so a channel nobody reads stops pulling from SSH
+ * without stalling the other channels on the socket.
+ */
+public final class OutputWindow {
+
+    private long credit;
+    private boolean closed;
+
+    public OutputWindow(int initialBytes) {
+        this.credit = initialBytes;
+    }
+
+    /**
+     * Add credit sent by the client; non-positive grants are ignored.
+     */
+    public synchronized void grant(long bytes) {
+        if (bytes <= 0) return;
+        // clamp before adding, so a huge grant cannot overflow a positive credit
+        credit = Math.min(Integer.MAX_VALUE, credit + Math.min(bytes, Integer.MAX_VALUE));
+        notifyAll();
+    }
+
+    /**
+     * Take up to {@code max} bytes of credit, waiting while none is left.
+     *
+     * @return the reserved amount, or {@code -1} once the window is closed.
+     */
+    public synchronized int reserve(int max) throws InterruptedException {
+        while (credit <= 0 && !closed) {
+            wait();
+        }
+        if (closed) return -1;
+        int granted = (int) Math.min(max, credit);
+        credit -= granted;
+        return granted;
+    }
+
+    /**
+     * Return reserved credit that was not used.
+     */
+    public synchronized void refund(int bytes) {
+        if (bytes > 0) {
+            credit += bytes;
+            notifyAll();
+        }
+    }
+
+    public synchronized long credit() {
+        return credit;
+    }
+
+    /**
+     * Wake a waiting pump and make further reservations fail.
+     *
+     * @return {@code true} on the first call.
+     */
+    public synchronized boolean close() {
+        boolean first = !closed;
+        closed = true;
+        notifyAll();
+        return first;
+    }
+}
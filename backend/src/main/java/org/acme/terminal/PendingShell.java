@@ -0,0 +1,111 @@
+package org.acme.terminal;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.acme.admission.AdmissionController;
+
+/**
+ * An SSH shell being opened ahead of the WebSocket that will use it (see
+ * {@link SshPreconnector}). Exactly one of {@link #take} and {@link #discard} wins; a
+ * discarded shell is closed as soon as its connect finishes. The shell holds a session
+ * slot from the moment it is started, which the connection takes over with
+ * {@link #takeLease} and which is given back if the shell is never used.
+ */
+public final class PendingShell {
+
+    /** What became of a speculative connect; each pending shell reports exactly one. */
+    enum Outcome {
+        USED, WASTED, FAILED
+    }
+
+    private final String nodeId;
+    private final CompletableFuture<SshConnector.Shell> future;
+    private final AtomicReference<AdmissionController.Lease> lease;
+    private final AtomicBoolean settled = new AtomicBoolean();
+    private final Consumer<Outcome> onSettled;
+
+    PendingShell(String nodeId, CompletableFuture<SshConnector.Shell> future, AdmissionController.Lease lease,
+            Consumer<Outcome> onSettled) {
+        this.nodeId = nodeId;
+        this.future = future;
+        this.lease = new AtomicReference<>(lease);
+        this.onSettled = onSettled;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Hand the session slot held for this shell to the connection that uses the ticket.
+     *
+     * @return the lease, or {@code null} if it was already taken or given back.
+     */
+    public AdmissionController.Lease takeLease() {
+        return lease.getAndSet(null);
+    }
+
+    /**
+     * Claim the shell for {@code node}, waiting for the connect if it is still in flight.
+     *
+     * @return the open shell, or {@code null} if it is for another node, was already
+     *         claimed or discarded, or failed to connect (the caller then connects itself).
+     */
+    public SshConnector.Shell take(String node, Duration timeout) {
+        if (!nodeId.equals(node)) {
+            discard();
+            return null;
+        }
+        if (!settled.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            SshConnector.Shell shell = future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (shell.channel().isOpen()) {
+                onSettled.accept(Outcome.USED);
+                return shell;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // fall through: connect failed or is too slow
+        }
+        settleUnused();
+        return null;
+    }
+
+    public void discard() {
+        if (settled.compareAndSet(false, true)) {
+            settleUnused();
+        }
+    }
+
+    /**
+     * Give the slot back and, once the connect finishes, close the shell and report it as
+     * wasted, or as failed if it never opened.
+     */
+    private void settleUnused() {
+        releaseLease();
+        future.whenComplete((shell, error) -> {
+            if (shell == null) {
+                onSettled.accept(Outcome.FAILED);
+                return;
+            }
+            boolean open = shell.channel().isOpen();
+            SshPreconnector.close(shell);
+            onSettled.accept(open ? Outcome.WASTED : Outcome.FAILED);
+        });
+    }
+
+    private void releaseLease() {
+        AdmissionController.Lease held = lease.getAndSet(null);
+        if (held != null) {
+            held.release();
+        }
+    }
+}
@@ -0,0 +1,662 @@
+package org.acme.terminal;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Headless VT100/xterm screen fed with the same output bytes as the client. Covers what
+ * router CLIs and pagers use (cursor movement, erase, insert/delete, scroll regions, SGR
+ * colours, the alternate screen) so that a subscriber joining late can be sent one
+ * {@link #snapshot()} of the visible screen instead of the whole output history.
+ * <p>
+ * Cells live in flat {@code char}/{@code int} arrays; rows touched since the last
+ * snapshot are tracked in a bit set so only those are re-rendered.
+ */
+public final class ScreenModel {
+
+    private static final char ESC = 0x1b;
+    private static final int MAX_SEQUENCE = 256;
+
+    // packed cell attributes: 9 bits fg, 9 bits bg (0 = default, otherwise colour + 1), then flags
+    private static final int FG_MASK = 0x1ff;
+    private static final int BG_SHIFT = 9;
+    private static final int BG_MASK = 0x1ff << BG_SHIFT;
+    private static final int BOLD = 1 << 18;
+    private static final int DIM = 1 << 19;
+    private static final int ITALIC = 1 << 20;
+    private static final int UNDERLINE = 1 << 21;
+    private static final int INVERSE = 1 << 22;
+
+    private enum State {
+        GROUND, ESCAPE, CSI, OSC, OSC_ESC, CHARSET
+    }
+
+    private int cols;
+    private int rows;
+    private char[] cells;
+    private int[] attrs;
+    private char[] savedCells;
+    private int[] savedAttrs;
+    private boolean alternate;
+
+    private int row;
+    private int col;
+    private int savedRow;
+    private int savedCol;
+    private int attr;
+    private int scrollTop;
+    private int scrollBottom;
+    private boolean wrapPending;
+    private boolean cursorVisible = true;
+
+    private State state = State.GROUND;
+    private final StringBuilder sequence = new StringBuilder();
+
+    private BitSet dirty;
+    private String[] rendered;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer undecoded = ByteBuffer.allocate(8192);
+    private final CharBuffer decoded = CharBuffer.allocate(8192);
+
+    public ScreenModel(int cols, int rows) {
+        allocate(Math.max(1, cols), Math.max(1, rows));
+    }
+
+    public synchronized int columns() {
+        return cols;
+    }
+
+    public synchronized int rows() {
+        return rows;
+    }
+
+    /**
+     * Apply terminal output. UTF-8 sequences split across calls are decoded correctly.
+     */
+    public synchronized void feed(byte[] data, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int n = Math.min(undecoded.remaining(), end - position);
+            undecoded.put(data, position, n);
+            position += n;
+            undecoded.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(undecoded, decoded, false);
+                decoded.flip();
+                while (decoded.hasRemaining()) {
+                    process(decoded.get());
+                }
+                decoded.clear();
+            } while (result.isOverflow());
+            undecoded.compact();
+        }
+    }
+
+    /**
+     * Follow a window size change. Content is kept top-left aligned; if the cursor would
+     * fall off the bottom, the top rows are dropped the way xterm does. On the alternate
+     * screen the saved primary screen is resized the same way (around the cursor saved on
+     * entering it), so it is still there when the application exits.
+     */
+    public synchronized void resize(int newCols, int newRows) {
+        newCols = Math.max(1, newCols);
+        newRows = Math.max(1, newRows);
+        if (newCols == cols && newRows == rows) {
+            return;
+        }
+        char[] oldCells = cells;
+        int[] oldAttrs = attrs;
+        int oldCols = cols;
+        int oldRows = rows;
+        int shift = Math.max(0, row - newRows + 1);
+        int savedShift = alternate ? Math.max(0, savedRow - newRows + 1) : 0;
+        allocate(newCols, newRows);
+        copyRows(oldCells, oldAttrs, oldCols, oldRows, cells, attrs, newCols, newRows, shift);
+        if (savedCells != null) {
+            char[] resizedCells = blankCells(newCols * newRows);
+            int[] resizedAttrs = new int[newCols * newRows];
+            if (alternate) {
+                copyRows(savedCells, savedAttrs, oldCols, oldRows, resizedCells, resizedAttrs, newCols, newRows,
+                        savedShift);
+            }
+            savedCells = resizedCells;
+            savedAttrs = resizedAttrs;
+        }
+        row = Math.min(row - shift, newRows - 1);
+        col = Math.min(col, newCols - 1);
+        savedRow = Math.min(savedRow - savedShift, newRows - 1);
+        savedCol = Math.min(savedCol, newCols - 1);
+        wrapPending = false;
+    }
+
+    private static void copyRows(char[] fromCells, int[] fromAttrs, int fromCols, int fromRows, char[] toCells,
+            int[] toAttrs, int toCols, int toRows, int shift) {
+        int copyCols = Math.min(fromCols, toCols);
+        for (int r = 0; r < toRows && r + shift < fromRows; r++) {
+            System.arraycopy(fromCells, (r + shift) * fromCols, toCells, r * toCols, copyCols);
+            System.arraycopy(fromAttrs, (r + shift) * fromCols, toAttrs, r * toCols, copyCols);
+        }
+    }
+
+    /**
+     * Escape sequences that redraw the current screen, cursor and attributes on a
+     * terminal of the same size, followed by any escape sequence whose bytes have
+     * arrived only in part (its remainder follows in the live stream).
+     */
+    public synchronized String snapshot() {
+        StringBuilder out = new StringBuilder(rows * (cols + 16));
+        if (alternate) {
+            out.append(ESC).append("[?1049h");
+        }
+        out.append(ESC).append("[r").append(ESC).append("[0m").append(ESC).append("[H").append(ESC).append("[2J");
+        for (int r = 0; r < rows; r++) {
+            String line = renderRow(r);
+            if (!line.isEmpty()) {
+                out.append(ESC).append('[').append(r + 1).append(";1H").append(line);
+            }
+        }
+        dirty.clear();
+        if (scrollTop != 0 || scrollBottom != rows - 1) {
+            out.append(ESC).append('[').append(scrollTop + 1).append(';').append(scrollBottom + 1).append('r');
+        }
+        appendSgr(out, attr);
+        out.append(ESC).append('[').append(row + 1).append(';').append(col + 1).append('H');
+        if (!cursorVisible) {
+            out.append(ESC).append("[?25l");
+        }
+        if (state != State.GROUND) {
+            out.append(sequence);
+        }
+        return out.toString();
+    }
+
+    /** Text of one row without attributes or trailing blanks (for tests and debugging). */
+    synchronized String line(int r) {
+        int end = r * cols + cols;
+        int last = end;
+        while (last > r * cols && cells[last - 1] == ' ') {
+            last--;
+        }
+        return new String(cells, r * cols, last - r * cols);
+    }
+
+    synchronized int cursorRow() {
+        return row;
+    }
+
+    synchronized int cursorColumn() {
+        return col;
+    }
+
+    private void allocate(int newCols, int newRows) {
+        cols = newCols;
+        rows = newRows;
+        cells = blankCells(cols * rows);
+        attrs = new int[cols * rows];
+        scrollTop = 0;
+        scrollBottom = rows - 1;
+        dirty = new BitSet(rows);
+        dirty.set(0, rows);
+        rendered = new String[rows];
+    }
+
+    private static char[] blankCells(int size) {
+        char[] blank = new char[size];
+        Arrays.fill(blank, ' ');
+        return blank;
+    }
+
+    private void process(char c) {
+        switch (state) {
+            case GROUND -> ground(c);
+            case ESCAPE -> escape(c);
+            case CSI -> {
+                sequence.append(c);
+                if (c >= 0x40 && c <= 0x7e) {
+                    state = State.GROUND;
+                    csi(c);
+                } else if (sequence.length() > MAX_SEQUENCE) {
+                    state = State.GROUND;
+                }
+            }
+            case OSC -> {
+                sequence.append(c);
+                if (c == 0x07 || sequence.length() > MAX_SEQUENCE) {
+                    state = State.GROUND;
+                } else if (c == ESC) {
+                    state = State.OSC_ESC;
+                }
+            }
+            case OSC_ESC, CHARSET -> state = State.GROUND;
+        }
+    }
+
+    private void ground(char c) {
+        switch (c) {
+            case ESC -> {
+                state = State.ESCAPE;
+                sequence.setLength(0);
+                sequence.append(c);
+            }
+            case '\r' -> {
+                col = 0;
+                wrapPending = false;
+            }
+            case '\n', 0x0b, 0x0c -> lineFeed();
+            case '\b' -> {
+                if (col > 0) {
+                    col--;
+                }
+                wrapPending = false;
+            }
+            case '\t' -> {
+                col = Math.min(cols - 1, (col / 8 + 1) * 8);
+                wrapPending = false;
+            }
+            default -> {
+                if (c >= 0x20 && c != 0x7f) {
+                    put(c);
+                }
+            }
+        }
+    }
+
+    private void escape(char c) {
+        sequence.append(c);
+        state = State.GROUND;
+        switch (c) {
+            case '[' -> state = State.CSI;
+            case ']' -> state = State.OSC;
+            case '(', ')', '*', '+' -> state = State.CHARSET;
+            case '7' -> saveCursor();
+            case '8' -> restoreCursor();
+            case 'D' -> lineFeed();
+            case 'E' -> {
+                col = 0;
+                lineFeed();
+            }
+            case 'M' -> reverseIndex();
+            case 'c' -> reset();
+            default -> {
+            }
+        }
+    }
+
+    private void put(char c) {
+        if (wrapPending) {
+            col = 0;
+            lineFeed();
+        }
+        int index = row * cols + col;
+        cells[index] = c;
+        attrs[index] = attr;
+        dirty.set(row);
+        if (col == cols - 1) {
+            wrapPending = true;
+        } else {
+            col++;
+        }
+    }
+
+    private void lineFeed() {
+        wrapPending = false;
+        if (row == scrollBottom) {
+            scrollUp(scrollTop, 1);
+        } else if (row < rows - 1) {
+            row++;
+        }
+    }
+
+    private void reverseIndex() {
+        wrapPending = false;
+        if (row == scrollTop) {
+            scrollDown(scrollTop, 1);
+        } else if (row > 0) {
+            row--;
+        }
+    }
+
+    /** Move rows {@code top..scrollBottom} up by {@code n}, blanking the bottom. */
+    private void scrollUp(int top, int n) {
+        n = Math.min(n, scrollBottom - top + 1);
+        int moved = scrollBottom - top + 1 - n;
+        System.arraycopy(cells, (top + n) * cols, cells, top * cols, moved * cols);
+        System.arraycopy(attrs, (top + n) * cols, attrs, top * cols, moved * cols);
+        clear((top + moved) * cols, (scrollBottom + 1) * cols);
+        dirty.set(top, scrollBottom + 1);
+    }
+
+    /** Move rows {@code top..scrollBottom} down by {@code n}, blanking the top. */
+    private void scrollDown(int top, int n) {
+        n = Math.min(n, scrollBottom - top + 1);
+        int moved = scrollBottom - top + 1 - n;
+        System.arraycopy(cells, top * cols, cells, (top + n) * cols, moved * cols);
+        System.arraycopy(attrs, top * cols, attrs, (top + n) * cols, moved * cols);
+        clear(top * cols, (top + n) * cols);
+        dirty.set(top, scrollBottom + 1);
+    }
+
+    /** Blank cells {@code [from, to)} with the current background (xterm BCE). */
+    private void clear(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        Arrays.fill(cells, from, to, ' ');
+        Arrays.fill(attrs, from, to, attr & BG_MASK);
+        dirty.set(from / cols, (to - 1) / cols + 1);
+    }
+
+    private void csi(char command) {
+        // sequence is ESC [ <params> <command>
+        String params = sequence.substring(2, sequence.length() - 1);
+        if (!params.isEmpty() && params.charAt(0) == '?') {
+            privateMode(params.substring(1), command);
+            return;
+        }
+        if (!params.isEmpty() && (params.charAt(0) == '>' || params.charAt(0) == '=' || params.charAt(0) == '<')) {
+            return;
+        }
+        int[] p = parseParams(params);
+        int n = Math.max(1, param(p, 0, 1));
+        switch (command) {
+            case 'A' -> moveTo(Math.max(row - n, row >= scrollTop ? scrollTop : 0), col);
+            case 'B', 'e' -> moveTo(Math.min(row + n, row <= scrollBottom ? scrollBottom : rows - 1), col);
+            case 'C', 'a' -> moveTo(row, col + n);
+            case 'D' -> moveTo(row, col - n);
+            case 'E' -> moveTo(row + n, 0);
+            case 'F' -> moveTo(row - n, 0);
+            case 'G', '`' -> moveTo(row, n - 1);
+            case 'H', 'f' -> moveTo(Math.max(1, param(p, 0, 1)) - 1, Math.max(1, param(p, 1, 1)) - 1);
+            case 'd' -> moveTo(n - 1, col);
+            case 'J' -> eraseDisplay(param(p, 0, 0));
+            case 'K' -> eraseLine(param(p, 0, 0));
+            case 'L' -> insertLines(n);
+            case 'M' -> deleteLines(n);
+            case '@' -> insertChars(n);
+            case 'P' -> deleteChars(n);
+            case 'X' -> clear(row * cols + col, row * cols + Math.min(cols, col + n));
+            case 'S' -> scrollUp(scrollTop, n);
+            case 'T' -> scrollDown(scrollTop, n);
+            case 'm' -> sgr(p);
+            case 'r' -> setScrollRegion(param(p, 0, 1) - 1, param(p, 1, rows) - 1);
+            case 's' -> saveCursor();
+            case 'u' -> restoreCursor();
+            default -> {
+            }
+        }
+    }
+
+    private void privateMode(String params, char command) {
+        if (command != 'h' && command != 'l') {
+            return;
+        }
+        boolean set = command == 'h';
+        for (int mode : parseParams(params)) {
+            switch (mode) {
+                case 25 -> cursorVisible = set;
+                case 47, 1047, 1049 -> {
+                    if (mode == 1049 && set) {
+                        saveCursor();
+                    }
+                    switchScreen(set);
+                    if (mode == 1049 && !set) {
+                        restoreCursor();
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void switchScreen(boolean toAlternate) {
+        if (toAlternate == alternate) {
+            return;
+        }
+        if (savedCells == null) {
+            savedCells = blankCells(cells.length);
+            savedAttrs = new int[attrs.length];
+        }
+        char[] swapCells = cells;
+        int[] swapAttrs = attrs;
+        cells = savedCells;
+        attrs = savedAttrs;
+        savedCells = swapCells;
+        savedAttrs = swapAttrs;
+        alternate = toAlternate;
+        if (toAlternate) {
+            Arrays.fill(cells, ' ');
+            Arrays.fill(attrs, 0);
+        }
+        dirty.set(0, rows);
+    }
+
+    private void moveTo(int r, int c) {
+        row = Math.max(0, Math.min(rows - 1, r));
+        col = Math.max(0, Math.min(cols - 1, c));
+        wrapPending = false;
+    }
+
+    private void eraseDisplay(int mode) {
+        int cursor = row * cols + col;
+        switch (mode) {
+            case 0 -> clear(cursor, cells.length);
+            case 1 -> clear(0, cursor + 1);
+            case 2, 3 -> clear(0, cells.length);
+            default -> {
+            }
+        }
+    }
+
+    private void eraseLine(int mode) {
+        int start = row * cols;
+        switch (mode) {
+            case 0 -> clear(start + col, start + cols);
+            case 1 -> clear(start, start + col + 1);
+            case 2 -> clear(start, start + cols);
+            default -> {
+            }
+        }
+    }
+
+    private void insertLines(int n) {
+        if (row >= scrollTop && row <= scrollBottom) {
+            scrollDown(row, n);
+        }
+    }
+
+    private void deleteLines(int n) {
+        if (row >= scrollTop && row <= scrollBottom) {
+            scrollUp(row, n);
+        }
+    }
+
+    private void insertChars(int n) {
+        int start = row * cols + col;
+        int end = row * cols + cols;
+        n = Math.min(n, end - start);
+        System.arraycopy(cells, start, cells, start + n, end - start - n);
+        System.arraycopy(attrs, start, attrs, start + n, end - start - n);
+        clear(start, start + n);
+    }
+
+    private void deleteChars(int n) {
+        int start = row * cols + col;
+        int end = row * cols + cols;
+        n = Math.min(n, end - start);
+        System.arraycopy(cells, start + n, cells, start, end - start - n);
+        System.arraycopy(attrs, start + n, attrs, start, end - start - n);
+        clear(end - n, end);
+    }
+
+    private void setScrollRegion(int top, int bottom) {
+        if (bottom <= 0 || bottom >= rows) {
+            bottom = rows - 1;
+        }
+        top = Math.max(0, top);
+        if (top >= bottom) {
+            return;
+        }
+        scrollTop = top;
+        scrollBottom = bottom;
+        moveTo(0, 0);
+    }
+
+    private void saveCursor() {
+        savedRow = row;
+        savedCol = col;
+    }
+
+    private void restoreCursor() {
+        moveTo(savedRow, savedCol);
+    }
+
+    private void reset() {
+        boolean wasAlternate = alternate;
+        if (wasAlternate) {
+            switchScreen(false);
+        }
+        attr = 0;
+        cursorVisible = true;
+        scrollTop = 0;
+        scrollBottom = rows - 1;
+        clear(0, cells.length);
+        moveTo(0, 0);
+    }
+
+    private void sgr(int[] p) {
+        if (p.length == 0) {
+            attr = 0;
+            return;
+        }
+        for (int i = 0; i < p.length; i++) {
+            int code = Math.max(0, p[i]);
+            if (code == 0) {
+                attr = 0;
+            } else if (code == 1) {
+                attr |= BOLD;
+            } else if (code == 2) {
+                attr |= DIM;
+            } else if (code == 3) {
+                attr |= ITALIC;
+            } else if (code == 4) {
+                attr |= UNDERLINE;
+            } else if (code == 7) {
+                attr |= INVERSE;
+            } else if (code == 22) {
+                attr &= ~(BOLD | DIM);
+            } else if (code == 23) {
+                attr &= ~ITALIC;
+            } else if (code == 24) {
+                attr &= ~UNDERLINE;
+            } else if (code == 27) {
+                attr &= ~INVERSE;
+            } else if (code >= 30 && code <= 37) {
+                attr = (attr & ~FG_MASK) | (code - 30 + 1);
+            } else if (code >= 90 && code <= 97) {
+                attr = (attr & ~FG_MASK) | (code - 90 + 8 + 1);
+            } else if (code == 39) {
+                attr &= ~FG_MASK;
+            } else if (code >= 40 && code <= 47) {
+                attr = (attr & ~BG_MASK) | ((code - 40 + 1) << BG_SHIFT);
+            } else if (code >= 100 && code <= 107) {
+                attr = (attr & ~BG_MASK) | ((code - 100 + 8 + 1) << BG_SHIFT);
+            } else if (code == 49) {
+                attr &= ~BG_MASK;
+            } else if (code == 38 || code == 48) {
+                // 256-colour palette is kept; direct RGB colours fall back to the default
+                int colour = 0;
+                if (i + 2 < p.length && p[i + 1] == 5) {
+                    colour = Math.min(255, Math.max(0, p[i + 2])) + 1;
+                    i += 2;
+                } else if (i + 4 < p.length && p[i + 1] == 2) {
+                    i += 4;
+                }
+                attr = code == 38
+                        ? (attr & ~FG_MASK) | colour
+                        : (attr & ~BG_MASK) | (colour << BG_SHIFT);
+            }
+        }
+    }
+
+    private String renderRow(int r) {
+        if (!dirty.get(r) && rendered[r] != null) {
+            return rendered[r];
+        }
+        int start = r * cols;
+        int end = start + cols;
+        while (end > start && cells[end - 1] == ' ' && (attrs[end - 1] & BG_MASK) == 0) {
+            end--;
+        }
+        StringBuilder line = new StringBuilder(end - start + 8);
+        int current = 0;
+        for (int i = start; i < end; i++) {
+            if (attrs[i] != current) {
+                current = attrs[i];
+                appendSgr(line, current);
+            }
+            line.append(cells[i]);
+        }
+        if (current != 0) {
+            line.append(ESC).append("[0m");
+        }
+        rendered[r] = line.toString();
+        return rendered[r];
+    }
+
+    private static void appendSgr(StringBuilder out, int a) {
+        out.append(ESC).append("[0");
+        if ((a & BOLD) != 0) out.append(";1");
+        if ((a & DIM) != 0) out.append(";2");
+        if ((a & ITALIC) != 0) out.append(";3");
+        if ((a & UNDERLINE) != 0) out.append(";4");
+        if ((a & INVERSE) != 0) out.append(";7");
+        int fg = a & FG_MASK;
+        if (fg != 0) out.append(";38;5;").append(fg - 1);
+        int bg = (a & BG_MASK) >>> BG_SHIFT;
+        if (bg != 0) out.append(";48;5;").append(bg - 1);
+        out.append('m');
+    }
+
+    private static int[] parseParams(String params) {
+        if (params.isEmpty()) {
+            return new int[0];
+        }
+        int count = 1;
+        for (int i = 0; i < params.length(); i++) {
+            char c = params.charAt(i);
+            if (c == ';' || c == ':') count++;
+        }
+        int[] values = new int[count];
+        int index = 0;
+        int value = -1;
+        for (int i = 0; i < params.length(); i++) {
+            char c = params.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value) * 10 + (c - '0');
+                if (value > 65535) value = 65535;
+            } else if (c == ';' || c == ':') {
+                values[index++] = value;
+                value = -1;
+            }
+        }
+        values[index] = value;
+        return values;
+    }
+
+    /** Parameter {@code i}, or {@code fallback} when missing or empty. */
+    private static int param(int[] p, int i, int fallback) {
+        return i < p.length && p[i] >= 0 ? p[i] : fallback;
+    }
+}
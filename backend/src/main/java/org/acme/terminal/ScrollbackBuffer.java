@@ -0,0 +1,65 @@
+package org.acme.terminal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size ring of the most recent terminal output, kept off-heap. Positions are
+ * absolute byte offsets into the session's output stream, so a client that knows how
+ * much it has received can ask for exactly the bytes it missed.
+ */
+public final class ScrollbackBuffer {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ByteBuffer ring;
+    private final int capacity;
+    private long position;
+
+    public ScrollbackBuffer(int capacity) {
+        this.capacity = capacity;
+        this.ring = ByteBuffer.allocateDirect(capacity);
+    }
+
+    public synchronized void append(byte[] src, int offset, int length) {
+        if (length >= capacity) {
+            int skipped = length - capacity;
+            offset += skipped;
+            position += skipped;
+            length = capacity;
+        }
+        int start = (int) (position % capacity);
+        int first = Math.min(length, capacity - start);
+        ring.put(start, src, offset, first);
+        if (first < length) {
+            ring.put(0, src, offset + first, length - first);
+        }
+        position += length;
+    }
+
+    /**
+     * Total number of bytes ever appended.
+     */
+    public synchronized long position() {
+        return position;
+    }
+
+    /**
+     * Bytes from {@code from} up to the current position; older bytes that have been
+     * overwritten are silently skipped.
+     */
+    public synchronized byte[] readFrom(long from) {
+        long start = Math.max(from, Math.max(0L, position - capacity));
+        if (start >= position) {
+            return EMPTY;
+        }
+        int length = (int) (position - start);
+        byte[] out = new byte[length];
+        int index = (int) (start % capacity);
+        int first = Math.min(length, capacity - index);
+        ring.get(index, out, 0, first);
+        if (first < length) {
+            ring.get(0, out, first, length - first);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,154 @@
+package org.acme.terminal;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.acme.SshTargetRegistry.Target;
+import org.acme.diagnostics.SshPhaseEvent;
+import org.acme.health.HealthMonitor;
+import org.acme.metrics.LabMetrics;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelShell;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Owns the shared Apache MINA {@link SshClient} and performs the connect, auth and
+ * shell-open phases towards lab nodes for every terminal endpoint. Connects go through
+ * the node's circuit breaker in {@link HealthMonitor}.
+ */
+@ApplicationScoped
+public class SshConnector {
+
+    public static final Duration SSH_TIMEOUT = Duration.ofSeconds(10);
+
+    private SshClient sshClient;
+
+    @Inject
+    LabMetrics metrics;
+
+    @Inject
+    HealthMonitor health;
+
+    @PostConstruct
+    void startClient() {
+        sshClient = SshClient.setUpDefaultClient();
+        sshClient.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+        sshClient.start();
+    }
+
+    /**
+     * Make sure the client is running; called at startup so the first connect does not
+     * create it (see {@link org.acme.LabStartup}).
+     */
+    public void start() {
+        if (!sshClient.isStarted()) {
+            sshClient.start();
+        }
+    }
+
+    @PreDestroy
+    void stopClient() {
+        if (sshClient != null && !sshClient.isClosed()) {
+            try {
+                sshClient.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Connect and authenticate against the target, allowing {@link #SSH_TIMEOUT} for each phase.
+     *
+     * @throws org.acme.health.TargetUnavailableException without connecting while the node is marked down.
+     */
+    public ClientSession connect(Target target) throws IOException {
+        return connect(target, SSH_TIMEOUT.multipliedBy(2));
+    }
+
+    /**
+     * Connect and authenticate within {@code timeout} for both phases together (each phase
+     * still gets at most {@link #SSH_TIMEOUT}).
+     *
+     * @throws org.acme.health.TargetUnavailableException without connecting while the node is marked down.
+     */
+    public ClientSession connect(Target target, Duration timeout) throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        health.checkAvailable(HealthMonitor.Kind.SSH, target.host(), target.port());
+        long phaseStart = System.nanoTime();
+        SshPhaseEvent event = beginPhase(LabMetrics.SshPhase.CONNECT, target);
+        ClientSession session;
+        try {
+            session = sshClient.connect(target.user(), target.host(), target.port())
+                    .verify(phaseTimeout(deadline))
+                    .getSession();
+        } catch (IOException | RuntimeException e) {
+            health.recordFailure(HealthMonitor.Kind.SSH, target.host(), target.port(), e);
+            throw e;
+        }
+        health.recordSuccess(HealthMonitor.Kind.SSH, target.host(), target.port());
+        phaseStart = recordPhase(LabMetrics.SshPhase.CONNECT, phaseStart, event);
+        event = beginPhase(LabMetrics.SshPhase.AUTH, target);
+        try {
+            session.addPasswordIdentity(target.password());
+            session.auth().verify(phaseTimeout(deadline));
+            recordPhase(LabMetrics.SshPhase.AUTH, phaseStart, event);
+            return session;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(session);
+            throw e;
+        }
+    }
+
+    /**
+     * Connect, authenticate and open an interactive xterm shell of the given size.
+     */
+    public Shell openShell(Target target, int columns, int lines) throws IOException {
+        ClientSession session = connect(target);
+        try {
+            long phaseStart = System.nanoTime();
+            SshPhaseEvent event = beginPhase(LabMetrics.SshPhase.SHELL, target);
+            ChannelShell shell = session.createShellChannel();
+            shell.setEnv("TERM", "xterm-256color");
+            shell.setPtyType("xterm");
+            shell.setPtyColumns(columns);
+            shell.setPtyLines(lines);
+            shell.open().verify(SSH_TIMEOUT);
+            recordPhase(LabMetrics.SshPhase.SHELL, phaseStart, event);
+            return new Shell(session, shell);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(session);
+            throw e;
+        }
+    }
+
+    private static Duration phaseTimeout(long deadline) {
+        return Duration.ofNanos(Math.max(1L, Math.min(SSH_TIMEOUT.toNanos(), deadline - System.nanoTime())));
+    }
+
+    private long recordPhase(LabMetrics.SshPhase phase, long startedAt, SshPhaseEvent event) {
+        long now = System.nanoTime();
+        metrics.recordSshPhase(phase, now - startedAt);
+        event.commit();
+        return now;
+    }
+
+    private static SshPhaseEvent beginPhase(LabMetrics.SshPhase phase, Target target) {
+        return SshPhaseEvent.begin(phase.name(), target.host(), target.port());
+    }
+
+    private static void closeQuietly(ClientSession session) {
+        try {
+            session.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    public record Shell(ClientSession session, ChannelShell channel) {
+    }
+}
@@ -0,0 +1,150 @@
+package org.acme.terminal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.acme.SshTargetRegistry.Target;
+import org.acme.admission.AdmissionController;
+import org.acme.admission.AdmissionSettings;
+import org.acme.health.HealthMonitor;
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.UsagePlan;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Starts the SSH connect, auth and shell-open for a console while the browser is still
+ * busy receiving its ticket and opening the WebSocket, hiding the handshake behind those
+ * round trips. The result travels with the ticket as a {@link PendingShell}.
+ * <p>
+ * Speculation never waits and never displaces anyone: a preconnect needs a free session
+ * slot and a free handshake slot right away, and a free worker from a pool no larger than
+ * the handshake limit. Otherwise it is skipped and the WebSocket connects as usual.
+ */
+@ApplicationScoped
+public class SshPreconnector {
+
+    // Same initial size as the terminal endpoint; the browser resizes right after attaching.
+    private static final int COLUMNS = 120;
+    private static final int ROWS = 32;
+
+    private final LongAdder used = new LongAdder();
+    private final LongAdder wasted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    private ThreadPoolExecutor workers;
+
+    @Inject
+    SshConnector connector;
+
+    @Inject
+    AdmissionController admission;
+
+    @Inject
+    AdmissionSettings admissionSettings;
+
+    @Inject
+    HealthMonitor health;
+
+    @Inject
+    LabMetrics metrics;
+
+    @PostConstruct
+    void start() {
+        // no queue: a preconnect that cannot start right away is skipped, not delayed
+        workers = new ThreadPoolExecutor(0, admissionSettings.maxHandshakes(), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, "ssh-preconnect");
+                    t.setDaemon(true);
+                    return t;
+                });
+        metrics.counter("lab.ssh.preconnect", "Speculative SSH connects by outcome", used, LongAdder::sum,
+                "result", "used");
+        metrics.counter("lab.ssh.preconnect", "Speculative SSH connects by outcome", wasted, LongAdder::sum,
+                "result", "wasted");
+        metrics.counter("lab.ssh.preconnect", "Speculative SSH connects by outcome", failed, LongAdder::sum,
+                "result", "failed");
+        metrics.counter("lab.ssh.preconnect", "Speculative SSH connects by outcome", skipped, LongAdder::sum,
+                "result", "skipped");
+    }
+
+    @PreDestroy
+    void stop() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Begin opening a shell on node {@code nodeId} for a ticket holder.
+     *
+     * @return the pending shell, or {@code null} when the node is known to be down or there
+     *         is no free session slot, handshake slot or worker for it.
+     */
+    public PendingShell start(String nodeId, Target target, UsagePlan plan) {
+        if (!health.isAvailable(HealthMonitor.Kind.SSH, target.host(), target.port())) {
+            return null;
+        }
+        AdmissionController.Lease lease = admission.tryAdmit(plan).orElse(null);
+        if (lease == null) {
+            skipped.increment();
+            return null;
+        }
+        if (!admission.tryAcquireHandshake(plan)) {
+            lease.release();
+            skipped.increment();
+            return null;
+        }
+        CompletableFuture<SshConnector.Shell> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> open(target), workers);
+        } catch (RejectedExecutionException e) {
+            admission.releaseHandshake();
+            lease.release();
+            skipped.increment();
+            return null;
+        }
+        PendingShell pending = new PendingShell(nodeId, future, lease, outcome -> (switch (outcome) {
+            case USED -> used;
+            case WASTED -> wasted;
+            case FAILED -> failed;
+        }).increment());
+        lease.onPreempt(pending::discard);
+        return pending;
+    }
+
+    /**
+     * Runs on a worker holding a handshake slot, which is released when the shell is open.
+     */
+    private SshConnector.Shell open(Target target) {
+        try {
+            return connector.openShell(target, COLUMNS, ROWS);
+        } catch (Exception e) {
+            Log.debugf("Speculative connect to %s:%d failed: %s", target.host(), target.port(), e.getMessage());
+            throw new IllegalStateException(e);
+        } finally {
+            admission.releaseHandshake();
+        }
+    }
+
+    /**
+     * Close a shell that will not be used, ignoring errors.
+     */
+    public static void close(SshConnector.Shell shell) {
+        try {
+            shell.channel().close(true);
+        } catch (Exception ignored) {
+        }
+        try {
+            shell.session().close(true);
+        } catch (Exception ignored) {
+        }
+    }
+}
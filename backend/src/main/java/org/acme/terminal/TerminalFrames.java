@@ -0,0 +1,103 @@
+package org.acme.terminal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text framing shared by the terminal WebSockets: {@code <type><payload>} on
+ * {@code /ws/sshterm} and {@code <type><channel>:<payload>} on {@code /ws/sshmux}.
+ * Shell output is decoded as UTF-8 into the frame; input payloads are encoded back
+ * to UTF-8 bytes for the SSH channel's stdin.
+ */
+public final class TerminalFrames {
+
+    /** Returned by {@link #channel(String)} for a frame without a valid channel id. */
+    public static final int NO_CHANNEL = -1;
+
+    private TerminalFrames() {
+    }
+
+    /** Builds an output frame of the given type from {@code length} bytes of shell output. */
+    public static String output(char type, byte[] buffer, int length) {
+        return type + text(buffer, length);
+    }
+
+    /** Decodes {@code length} bytes of shell output, e.g. as the payload of a mux data frame. */
+    public static String text(byte[] buffer, int length) {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Length of the longest prefix of {@code buffer} that does not end inside a UTF-8
+     * character. Pumps hold the rest back for the next read, so a character split across
+     * two reads is decoded whole and the output's UTF-8 length stays equal to the bytes
+     * read from SSH.
+     */
+    public static int completeLength(byte[] buffer, int length) {
+        for (int i = length - 1; i >= Math.max(0, length - 3); i--) {
+            int b = buffer[i] & 0xFF;
+            if (b < 0x80) {
+                return length;
+            }
+            if (b >= 0xC0) {
+                int size = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+                return length - i >= size ? length : i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Number of bytes {@code text} takes in UTF-8, i.e. on the wire; unpaired surrogates
+     * count as the 3-byte replacement character the encoder substitutes.
+     */
+    public static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /** Payload of a {@code /ws/sshterm} frame, i.e. everything after the type character. */
+    public static String payload(String frame) {
+        return frame.substring(1);
+    }
+
+    /** UTF-8 bytes of an input payload, as written to stdin. */
+    public static byte[] input(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Builds a {@code /ws/sshmux} frame. */
+    public static String mux(char type, int channel, String payload) {
+        return type + Integer.toString(channel) + ':' + payload;
+    }
+
+    /** Channel id of a {@code /ws/sshmux} frame, or {@link #NO_CHANNEL} when it is malformed. */
+    public static int channel(String frame) {
+        int colon = frame.indexOf(':');
+        if (colon <= 1) return NO_CHANNEL;
+        try {
+            int id = Integer.parseInt(frame, 1, colon, 10);
+            return id >= 0 ? id : NO_CHANNEL;
+        } catch (NumberFormatException e) {
+            return NO_CHANNEL;
+        }
+    }
+
+    /** Payload of a {@code /ws/sshmux} frame whose {@link #channel(String)} is valid. */
+    public static String muxPayload(String frame) {
+        return frame.substring(frame.indexOf(':') + 1);
+    }
+}
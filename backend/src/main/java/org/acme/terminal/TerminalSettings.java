@@ -0,0 +1,105 @@
+package org.acme.terminal;
+
+import java.time.Duration;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class TerminalSettings {
+
+    /**
+     * What to do with terminal input that does not fit into a session's input queue.
+     */
+    public enum OverflowPolicy {
+        /** Discard the frame that overflowed and keep the session. */
+        DROP,
+        /** Close the WebSocket; the client has to reconnect. */
+        CLOSE
+    }
+
+    private final int inputQueueBytes;
+    private final int inputChunkBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean resumeEnabled;
+    private final Duration resumeGrace;
+    private final int scrollbackBytes;
+    private final boolean screenModelEnabled;
+    private final int muxMaxChannels;
+    private final int muxWindowBytes;
+    private final int observersPerTerminal;
+    private final int observerPendingBytes;
+
+    public TerminalSettings(
+            @ConfigProperty(name = "lab.terminal.input-queue.capacity-bytes", defaultValue = "262144") int inputQueueBytes,
+            @ConfigProperty(name = "lab.terminal.input-queue.chunk-bytes", defaultValue = "4096") int inputChunkBytes,
+            @ConfigProperty(name = "lab.terminal.input-queue.overflow", defaultValue = "drop") String overflowPolicy,
+            @ConfigProperty(name = "lab.terminal.resume.enabled", defaultValue = "false") boolean resumeEnabled,
+            @ConfigProperty(name = "lab.terminal.resume.grace-seconds", defaultValue = "60") long resumeGraceSeconds,
+            @ConfigProperty(name = "lab.terminal.scrollback-bytes", defaultValue = "65536") int scrollbackBytes,
+            @ConfigProperty(name = "lab.terminal.screen-model.enabled", defaultValue = "false") boolean screenModelEnabled,
+            @ConfigProperty(name = "lab.terminal.mux.max-channels", defaultValue = "8") int muxMaxChannels,
+            @ConfigProperty(name = "lab.terminal.mux.window-bytes", defaultValue = "65536") int muxWindowBytes,
+            @ConfigProperty(name = "lab.terminal.observers.max-per-terminal", defaultValue = "8") int observersPerTerminal,
+            @ConfigProperty(name = "lab.terminal.observers.max-pending-bytes", defaultValue = "262144") int observerPendingBytes) {
+
+        this.inputQueueBytes = Math.max(1024, inputQueueBytes);
+        this.inputChunkBytes = Math.max(64, inputChunkBytes);
+        this.overflowPolicy = "close".equalsIgnoreCase(overflowPolicy == null ? "" : overflowPolicy.trim())
+                ? OverflowPolicy.CLOSE
+                : OverflowPolicy.DROP;
+        this.resumeEnabled = resumeEnabled;
+        this.resumeGrace = Duration.ofSeconds(Math.max(1L, resumeGraceSeconds));
+        this.scrollbackBytes = Math.max(4096, scrollbackBytes);
+        this.screenModelEnabled = screenModelEnabled;
+        this.muxMaxChannels = Math.max(1, muxMaxChannels);
+        this.muxWindowBytes = Math.max(1024, muxWindowBytes);
+        this.observersPerTerminal = Math.max(0, observersPerTerminal);
+        this.observerPendingBytes = Math.max(8192, observerPendingBytes);
+    }
+
+    public int inputQueueBytes() {
+        return inputQueueBytes;
+    }
+
+    public int inputChunkBytes() {
+        return inputChunkBytes;
+    }
+
+    public OverflowPolicy overflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public boolean resumeEnabled() {
+        return resumeEnabled;
+    }
+
+    public Duration resumeGrace() {
+        return resumeGrace;
+    }
+
+    public int scrollbackBytes() {
+        return scrollbackBytes;
+    }
+
+    public boolean screenModelEnabled() {
+        return screenModelEnabled;
+    }
+
+    public int muxMaxChannels() {
+        return muxMaxChannels;
+    }
+
+    public int muxWindowBytes() {
+        return muxWindowBytes;
+    }
+
+    public int observersPerTerminal() {
+        return observersPerTerminal;
+    }
+
+    public int observerPendingBytes() {
+        return observerPendingBytes;
+    }
+}
@@ -2,14 +2,22 @@ package org.acme.usage;
 
 import io.quarkus.security.Authenticated;
 import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.common.annotation.NonBlocking;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 
+/**
+ * The frontend polls this on every console, so it is served on the I/O thread: a usage
+ * snapshot is a few array reads in {@link UsageAccountStore}, or a short add for a new
+ * user, and would spend longer waiting for a worker thread than running. Should accounts ever be persisted, load them
+ * with a {@code Uni} off the event loop rather than dropping {@code @NonBlocking}.
+ */
 @Path("/api/usage")
 @Authenticated
+@NonBlocking
 @Produces(MediaType.APPLICATION_JSON)
 public class LabUsageResource {
 
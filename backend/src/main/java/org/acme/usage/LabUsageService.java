@@ -1,14 +1,22 @@
 package org.acme.usage;
 
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
-import org.jboss.logging.Logger;
+import org.acme.LabScheduler;
+import org.acme.diagnostics.EventLog;
+import org.acme.diagnostics.UsageOperationEvent;
+import org.acme.metrics.LabMetrics;
 
 import jakarta.annotation.PostConstruct;
 import io.quarkus.security.identity.SecurityIdentity;
@@ -18,23 +26,50 @@ import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
 
 /**
- * Tracks per-user lab time consumption and enforces plan allowances.
+ * Tracks per-user lab time consumption and enforces plan allowances. Accounts live in a
+ * compact {@link UsageAccountStore}; those whose period has ended are evicted every
+ * {@code lab.usage.accounts.sweep-minutes} and recreated fresh on next use. Started
+ * sessions are charged every {@code lab.usage.metering-seconds} rather than only when
+ * they finish, so snapshots show live consumption.
  */
 @ApplicationScoped
 public class LabUsageService {
 
-    private static final Logger LOG = Logger.getLogger(LabUsageService.class);
-
-    private final Map<String, UsageAccount> accounts = new ConcurrentHashMap<>();
+    private final UsageAccountStore accounts = new UsageAccountStore(1024);
     private final Map<String, ActiveSession> sessions = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> endListeners = new CopyOnWriteArrayList<>();
     private volatile boolean premiumOverride;
 
+    // Batch buffers for metering and settleAll, guarded by this.
+    private String[] batchPrincipals = new String[64];
+    private UsagePlan[] batchPlans = new UsagePlan[64];
+    private long[] batchSeconds = new long[64];
+
+    // replaced by tests that need to control time
+    Clock clock = Clock.systemUTC();
+
     @Inject
     LabUsageSettings settings;
 
+    @Inject
+    LabMetrics metrics;
+
+    @Inject
+    LabScheduler scheduler;
+
+    @Inject
+    EventLog events;
+
     @PostConstruct
     void initOverride() {
         premiumOverride = settings.premiumOverride();
+        metrics.gauge("lab.usage.accounts", "Usage accounts held in memory", accounts, UsageAccountStore::size);
+        metrics.counter("lab.usage.accounts.evicted", "Usage accounts dropped after their period ended", accounts,
+                UsageAccountStore::evicted);
+        metrics.gauge("lab.usage.sessions", "Reserved or active lab sessions", sessions, Map::size);
+        scheduler.scheduleAtFixedRate(this::evictExpiredAccounts, settings.accountSweep(), settings.accountSweep());
+        scheduler.scheduleAtFixedRate(this::meterActiveSessions, settings.meteringInterval(),
+                settings.meteringInterval());
     }
 
     /**
@@ -86,13 +121,23 @@ public class LabUsageService {
      * @throws WebApplicationException when the user has exhausted their allowance.
      */
     public UsageReservation prepareSession(String principal, UsagePlan plan) {
-        Instant now = Instant.now();
+        long started = System.nanoTime();
+        UsageOperationEvent event = UsageOperationEvent.begin(LabMetrics.QuotaOp.PREPARE.name(), principal);
+        try {
+            return doPrepareSession(principal, plan);
+        } finally {
+            metrics.recordQuota(LabMetrics.QuotaOp.PREPARE, System.nanoTime() - started);
+            event.commit();
+        }
+    }
+
+    private UsageReservation doPrepareSession(String principal, UsagePlan plan) {
+        Instant now = clock.instant();
         principal = normalizePrincipal(principal);
-        UsageAccount account = ensureAccount(principal, plan, now);
         long allowance = allowanceFor(plan);
-        long remaining = account.remainingSeconds(allowance);
+        long remaining = accounts.remaining(principal, plan, allowance, now.getEpochSecond(), periodSeconds());
         if (remaining <= 0) {
-            LOG.debugf("Quota exceeded for %s (plan=%s)", principal, plan);
+            events.debug(EventLog.Category.QUOTA, "quota.exceeded", "principal", principal, "plan", plan);
             throw new WebApplicationException("No lab hours remaining", Response.Status.FORBIDDEN);
         }
 
@@ -100,79 +145,244 @@ public class LabUsageService {
         ActiveSession session = new ActiveSession(sessionId, principal, plan, now);
         sessions.put(sessionId, session);
 
-        UsageSnapshot snapshot = account.snapshot(principal, plan, allowance, settings.periodLength(), now);
+        UsageSnapshot snapshot = accounts.snapshot(principal, plan, allowance, now.getEpochSecond(), periodSeconds());
         return new UsageReservation(sessionId, snapshot);
     }
 
     /**
-     * Mark the reserved session as started when the lab WebSocket connects.
+     * Mark the reserved session as started when a lab WebSocket connects. A session
+     * shared by a lab ticket is attached once per console and charged from the first.
      */
     public Optional<SessionContext> startSession(String sessionId) {
+        long started = System.nanoTime();
+        UsageOperationEvent event = UsageOperationEvent.begin(LabMetrics.QuotaOp.START.name(), sessionId);
+        try {
+            return doStartSession(sessionId);
+        } finally {
+            metrics.recordQuota(LabMetrics.QuotaOp.START, System.nanoTime() - started);
+            event.commit();
+        }
+    }
+
+    private Optional<SessionContext> doStartSession(String sessionId) {
         ActiveSession session = sessions.get(sessionId);
         if (session == null) {
             return Optional.empty();
         }
 
-        Instant now = Instant.now();
-        UsageAccount account = ensureAccount(session.principal(), session.plan(), now);
+        Instant now = clock.instant();
         long allowance = allowanceFor(session.plan());
-        long remaining = account.remainingSeconds(allowance);
+        long remaining = accounts.remaining(session.principal(), session.plan(), allowance, now.getEpochSecond(),
+                periodSeconds());
         if (remaining <= 0) {
-            sessions.remove(sessionId);
-            LOG.debugf("Quota exhausted before starting session %s for %s", sessionId, session.principal());
+            cancelSession(sessionId);
+            events.debug(EventLog.Category.QUOTA, "quota.exhausted", "session", sessionId, "principal",
+                    session.principal());
             return Optional.empty();
         }
 
-        session.markStarted(now);
-        UsageSnapshot snapshot = account.snapshot(session.principal(), session.plan(), allowance, settings.periodLength(), now);
-        return Optional.of(new SessionContext(sessionId, session.principal(), session.plan(), now, snapshot));
+        Instant startedAt = session.attach(now);
+        if (startedAt == null) {
+            return Optional.empty();
+        }
+        UsageSnapshot snapshot = accounts.snapshot(session.principal(), session.plan(), allowance,
+                now.getEpochSecond(), periodSeconds());
+        return Optional.of(new SessionContext(sessionId, session.principal(), session.plan(), startedAt, snapshot));
     }
 
     /**
-     * Consume lab time when a session closes.
+     * Release one connection from a session; when the last one closes, the time not yet
+     * charged by the metering tick is consumed.
      */
     public Optional<UsageSnapshot> finishSession(String sessionId) {
-        ActiveSession session = sessions.remove(sessionId);
+        long started = System.nanoTime();
+        UsageOperationEvent event = UsageOperationEvent.begin(LabMetrics.QuotaOp.FINISH.name(), sessionId);
+        try {
+            return doFinishSession(sessionId);
+        } finally {
+            metrics.recordQuota(LabMetrics.QuotaOp.FINISH, System.nanoTime() - started);
+            event.commit();
+        }
+    }
+
+    private Optional<UsageSnapshot> doFinishSession(String sessionId) {
+        ActiveSession session = sessions.get(sessionId);
         if (session == null) {
             return Optional.empty();
         }
 
-        Instant now = Instant.now();
-        UsageAccount account = ensureAccount(session.principal(), session.plan(), now);
-        Instant startedAt = session.startedAt() != null ? session.startedAt() : session.reservedAt();
-        long seconds = Math.max(0L, Duration.between(startedAt, now).getSeconds());
+        Instant now = clock.instant();
         long allowance = allowanceFor(session.plan());
-        account.consume(seconds, allowance);
-        UsageSnapshot snapshot = account.snapshot(session.principal(), session.plan(), allowance, settings.periodLength(), now);
-        LOG.debugf("Session %s for %s consumed %d seconds (%s)", sessionId, session.principal(), seconds, session.plan());
+        if (!session.release(now) || !sessions.remove(sessionId, session)) {
+            return Optional.of(accounts.snapshot(session.principal(), session.plan(), allowance, now.getEpochSecond(),
+                    periodSeconds()));
+        }
+
+        ended(sessionId);
+        long seconds = session.charge(now);
+        accounts.consume(session.principal(), session.plan(), seconds, allowance, now.getEpochSecond(),
+                periodSeconds());
+        UsageSnapshot snapshot = accounts.snapshot(session.principal(), session.plan(), allowance,
+                now.getEpochSecond(), periodSeconds());
+        Instant startedAt = session.startedAt() != null ? session.startedAt() : session.reservedAt();
+        events.debug(EventLog.Category.QUOTA, "session.finished", "session", sessionId, "principal",
+                session.principal(), "plan", session.plan(), "seconds",
+                now.getEpochSecond() - startedAt.getEpochSecond(), "remaining", snapshot.remainingSeconds());
         return Optional.of(snapshot);
     }
 
     /**
-     * Cancel a pending session without charging time (e.g. failed handshake).
+     * Stop charging a session while one of its connections is detached and waiting to be
+     * resumed; the clock only stops once no attached connection is left.
+     */
+    public void suspendSession(String sessionId) {
+        ActiveSession session = sessions.get(sessionId);
+        if (session != null) {
+            session.detach(clock.instant());
+        }
+    }
+
+    /**
+     * Reattach a connection suspended with {@link #suspendSession}; the time it spent
+     * detached is not charged.
+     */
+    public void resumeSession(String sessionId) {
+        ActiveSession session = sessions.get(sessionId);
+        if (session != null) {
+            session.reattach(clock.instant());
+        }
+    }
+
+    /**
+     * Cancel a pending session without charging time (e.g. failed handshake). A
+     * session that other connections are still attached to is left alone.
      */
     public void cancelSession(String sessionId) {
-        sessions.remove(sessionId);
+        boolean[] cancelled = new boolean[1];
+        sessions.computeIfPresent(sessionId, (key, session) -> {
+            cancelled[0] = session.cancel();
+            return cancelled[0] ? null : session;
+        });
+        if (cancelled[0]) {
+            ended(sessionId);
+        }
+    }
+
+    /**
+     * Whether {@code sessionId} is still reserved or running.
+     */
+    public boolean hasSession(String sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+
+    /**
+     * Call {@code listener} with the id of every session that is finished, settled or
+     * cancelled, e.g. to drop tickets that would otherwise join it.
+     */
+    public void onSessionEnded(Consumer<String> listener) {
+        endListeners.add(listener);
+    }
+
+    private void ended(String sessionId) {
+        endListeners.forEach(listener -> listener.accept(sessionId));
     }
 
     /**
      * Current usage snapshot for the given user.
      */
     public UsageSnapshot snapshot(String principal, UsagePlan plan) {
-        Instant now = Instant.now();
-        principal = normalizePrincipal(principal);
-        UsageAccount account = ensureAccount(principal, plan, now);
-        long allowance = allowanceFor(plan);
-        return account.snapshot(principal, plan, allowance, settings.periodLength(), now);
+        long started = System.nanoTime();
+        UsageOperationEvent event = UsageOperationEvent.begin(LabMetrics.QuotaOp.SNAPSHOT.name(), principal);
+        try {
+            Instant now = clock.instant();
+            principal = normalizePrincipal(principal);
+            return accounts.snapshot(principal, plan, allowanceFor(plan), now.getEpochSecond(), periodSeconds());
+        } finally {
+            metrics.recordQuota(LabMetrics.QuotaOp.SNAPSHOT, System.nanoTime() - started);
+            event.commit();
+        }
     }
 
-    private UsageAccount ensureAccount(String principal, UsagePlan plan, Instant now) {
-        if (principal == null) {
-            throw new WebApplicationException("Missing user principal", Response.Status.BAD_REQUEST);
+    /**
+     * Seconds of lab time the user has left in the current period; allocation-free for
+     * already-normalized principals.
+     */
+    public long remainingSeconds(String principal, UsagePlan plan) {
+        return accounts.remaining(normalizePrincipal(principal), plan, allowanceFor(plan),
+                clock.millis() / 1000, periodSeconds());
+    }
+
+    /**
+     * Charge every started session for the whole seconds since it was last charged, in
+     * one batch against the account store.
+     */
+    synchronized void meterActiveSessions() {
+        Instant now = clock.instant();
+        int count = 0;
+        for (ActiveSession session : sessions.values()) {
+            long seconds = session.meter(now);
+            if (seconds > 0) {
+                count = addToBatch(count, session, seconds);
+            }
+        }
+        consumeBatch(count, now);
+    }
+
+    /**
+     * Finish every reserved or started session at once, charging started ones for their
+     * uncharged time in a single batch; used when the backend drains for shutdown. Later
+     * {@link #finishSession} calls for these sessions find nothing left to settle.
+     *
+     * @return the number of started sessions charged.
+     */
+    public synchronized int settleAll() {
+        Instant now = clock.instant();
+        int count = 0;
+        for (Map.Entry<String, ActiveSession> entry : sessions.entrySet()) {
+            ActiveSession session = entry.getValue();
+            if (!session.settle() || !sessions.remove(entry.getKey(), session)) {
+                continue;
+            }
+            ended(entry.getKey());
+            if (session.startedAt() == null) {
+                continue;
+            }
+            count = addToBatch(count, session, session.charge(now));
+        }
+        consumeBatch(count, now);
+        events.info(EventLog.Category.QUOTA, "sessions.settled", "count", count);
+        return count;
+    }
+
+    private int addToBatch(int count, ActiveSession session, long seconds) {
+        if (count == batchSeconds.length) {
+            batchPrincipals = Arrays.copyOf(batchPrincipals, count * 2);
+            batchPlans = Arrays.copyOf(batchPlans, count * 2);
+            batchSeconds = Arrays.copyOf(batchSeconds, count * 2);
+        }
+        batchPrincipals[count] = session.principal();
+        batchPlans[count] = session.plan();
+        batchSeconds[count] = seconds;
+        return count + 1;
+    }
+
+    private void consumeBatch(int count, Instant now) {
+        if (count > 0) {
+            accounts.consumeAll(batchPrincipals, batchPlans, batchSeconds, count, settings.freeSeconds(),
+                    settings.premiumSeconds(), now.getEpochSecond(), periodSeconds());
+            Arrays.fill(batchPrincipals, 0, count, null);
         }
-        UsageAccount account = accounts.computeIfAbsent(principal, key -> new UsageAccount(plan, now));
-        account.refresh(plan, now, settings.periodLength());
-        return account;
+    }
+
+    private void evictExpiredAccounts() {
+        int evicted = accounts.evictExpired(clock.millis() / 1000, periodSeconds());
+        if (evicted > 0) {
+            events.debug(EventLog.Category.QUOTA, "accounts.evicted", "count", evicted);
+        }
+    }
+
+    private long periodSeconds() {
+        return settings.periodLength().getSeconds();
     }
 
     private String normalizePrincipal(String principal) {
@@ -213,7 +423,12 @@ public class LabUsageService {
         private final String principal;
         private final UsagePlan plan;
         private final Instant reservedAt;
-        private volatile Instant startedAt;
+        private Instant startedAt;
+        private Instant chargedUntil;
+        private int holders;
+        private int detached;
+        private Instant pausedAt;
+        private boolean finished;
 
         private ActiveSession(String id, String principal, UsagePlan plan, Instant reservedAt) {
             this.id = id;
@@ -238,69 +453,122 @@ public class LabUsageService {
             return reservedAt;
         }
 
-        Instant startedAt() {
+        synchronized Instant startedAt() {
             return startedAt;
         }
 
-        void markStarted(Instant startedAt) {
-            this.startedAt = startedAt;
+        /**
+         * Add a connection; returns the charging start, or {@code null} once the
+         * session has been settled or cancelled.
+         */
+        synchronized Instant attach(Instant now) {
+            if (finished) {
+                return null;
+            }
+            if (startedAt == null) {
+                startedAt = now;
+            }
+            holders++;
+            return startedAt;
         }
-    }
 
-    private static final class UsageAccount {
-        private UsagePlan plan;
-        private Instant periodStart;
-        private long secondsUsed;
-
-        private UsageAccount(UsagePlan plan, Instant now) {
-            this.plan = plan;
-            this.periodStart = now;
-            this.secondsUsed = 0L;
+        /**
+         * Drop a connection; {@code true} when it was the last one and the session
+         * should be settled.
+         */
+        synchronized boolean release(Instant now) {
+            if (finished) {
+                return false;
+            }
+            if (holders > 1) {
+                holders--;
+                pauseIfDetached(now);
+                return false;
+            }
+            holders = 0;
+            finished = true;
+            return true;
         }
 
-        synchronized void refresh(UsagePlan targetPlan, Instant now, Duration periodLength) {
-            if (periodStart == null) {
-                periodStart = now;
+        /**
+         * A connection went away but may come back; once every connection is detached,
+         * charging stops at {@code now}.
+         */
+        synchronized void detach(Instant now) {
+            if (finished || detached >= holders) {
+                return;
             }
-            if (plan != targetPlan) {
-                plan = targetPlan;
-                periodStart = now;
-                secondsUsed = 0L;
+            detached++;
+            pauseIfDetached(now);
+        }
+
+        /**
+         * Resume charging from {@code now}, skipping the time every connection was detached.
+         */
+        synchronized void reattach(Instant now) {
+            if (finished || detached == 0) {
                 return;
             }
-            Instant resetAt = periodStart.plus(periodLength);
-            if (!resetAt.isAfter(now)) {
-                periodStart = now;
-                secondsUsed = 0L;
+            detached--;
+            if (pausedAt != null) {
+                Instant charged = chargedUntil != null ? chargedUntil : startedAt;
+                chargedUntil = charged.plus(Duration.between(pausedAt, now));
+                pausedAt = null;
             }
         }
 
-        synchronized long remainingSeconds(long allowance) {
-            return Math.max(allowance - secondsUsed, 0L);
+        private void pauseIfDetached(Instant now) {
+            if (pausedAt == null && startedAt != null && detached > 0 && detached >= holders) {
+                pausedAt = now;
+            }
         }
 
-        synchronized void consume(long seconds, long allowance) {
-            if (seconds <= 0) {
-                return;
+        /**
+         * Whole seconds of a started, unfinished session not yet charged, marking them
+         * charged; 0 for sessions the metering tick should leave alone.
+         */
+        synchronized long meter(Instant now) {
+            if (finished || startedAt == null) {
+                return 0L;
             }
-            long updated = secondsUsed + seconds;
-            if (updated >= allowance) {
-                secondsUsed = allowance;
-            } else {
-                secondsUsed = updated;
+            return advance(startedAt, now);
+        }
+
+        /**
+         * Settle a finished session: the uncharged seconds since the last tick, or since
+         * the reservation if it never started.
+         */
+        synchronized long charge(Instant now) {
+            return advance(startedAt != null ? startedAt : reservedAt, now);
+        }
+
+        private long advance(Instant from, Instant now) {
+            Instant charged = chargedUntil != null ? chargedUntil : from;
+            Instant until = pausedAt != null ? pausedAt : now;
+            long seconds = Math.max(0L, Duration.between(charged, until).getSeconds());
+            chargedUntil = charged.plusSeconds(seconds);
+            return seconds;
+        }
+
+        /**
+         * Mark the session finished regardless of attached connections; {@code false} if
+         * it already was.
+         */
+        synchronized boolean settle() {
+            if (finished) {
+                return false;
             }
+            holders = 0;
+            finished = true;
+            return true;
         }
 
-        synchronized UsageSnapshot snapshot(String principal, UsagePlan plan, long allowance, Duration periodLength,
-                Instant now) {
-            Instant resetAt = periodStart.plus(periodLength);
-            if (!resetAt.isAfter(now)) {
-                periodStart = now;
-                secondsUsed = 0L;
-                resetAt = periodStart.plus(periodLength);
+        synchronized boolean cancel() {
+            if (holders > 0) {
+                return false;
             }
-            long remaining = Math.max(allowance - secondsUsed, 0L);
-            return new UsageSnapshot(principal, plan, allowance, secondsUsed, remaining, periodStart, resetAt);
+            finished = true;
+            return true;
         }
     }
 }
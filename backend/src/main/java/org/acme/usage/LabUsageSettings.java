@@ -14,13 +14,17 @@ public class LabUsageSettings {
     private final Duration periodLength;
     private final String premiumRole;
     private final boolean premiumOverride;
+    private final Duration accountSweep;
+    private final Duration meteringInterval;
 
     public LabUsageSettings(
             @ConfigProperty(name = "lab.usage.free.hours", defaultValue = "2") long freeHours,
             @ConfigProperty(name = "lab.usage.premium.hours", defaultValue = "10") long premiumHours,
             @ConfigProperty(name = "lab.usage.period-days", defaultValue = "30") long periodDays,
             @ConfigProperty(name = "lab.usage.premium-role", defaultValue = "premium") String premiumRole,
-            @ConfigProperty(name = "lab.usage.override-premium", defaultValue = "false") boolean premiumOverride) {
+            @ConfigProperty(name = "lab.usage.override-premium", defaultValue = "false") boolean premiumOverride,
+            @ConfigProperty(name = "lab.usage.accounts.sweep-minutes", defaultValue = "15") long sweepMinutes,
+            @ConfigProperty(name = "lab.usage.metering-seconds", defaultValue = "15") long meteringSeconds) {
 
         this.freeSeconds = Math.max(0L, freeHours) * 3600L;
         this.premiumSeconds = Math.max(0L, premiumHours) * 3600L;
@@ -28,6 +32,8 @@ public class LabUsageSettings {
         this.periodLength = Duration.ofDays(days);
         this.premiumRole = premiumRole == null ? "premium" : premiumRole.trim().toLowerCase();
         this.premiumOverride = premiumOverride;
+        this.accountSweep = Duration.ofMinutes(Math.max(1L, sweepMinutes));
+        this.meteringInterval = Duration.ofSeconds(Math.max(1L, meteringSeconds));
     }
 
     public long freeSeconds() {
@@ -49,4 +55,14 @@ public class LabUsageSettings {
     public boolean premiumOverride() {
         return premiumOverride;
     }
+
+    /** How often accounts whose period has ended are dropped from memory. */
+    public Duration accountSweep() {
+        return accountSweep;
+    }
+
+    /** How often started sessions are charged for the time used so far. */
+    public Duration meteringInterval() {
+        return meteringInterval;
+    }
 }
@@ -0,0 +1,361 @@
+package org.acme.usage;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Usage accounts held in parallel primitive arrays instead of one object graph per user.
+ * Principals are interned to int slots through an open-addressing index, so a quota check
+ * is a hash probe plus a few array reads and allocates nothing. Times are epoch seconds.
+ *
+ * <p>Index lookups, account reads/updates and adding an account run under the read lock:
+ * updates of one account are serialized by a lock stripe, and adds by a separate monitor,
+ * publishing the new index entry with a release store that lookups read with acquire. The
+ * write lock is only taken to grow the arrays (amortized, when they are full) and to remove
+ * evicted accounts. Eviction scans for expired accounts under the read lock and unlinks them
+ * from the index one by one, so no caller ever waits for a full scan or index rebuild and
+ * every operation is short enough for the I/O thread.
+ */
+final class UsageAccountStore {
+
+    private static final int STRIPES = 64;
+    private static final int NO_SLOT = -1;
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(String[].class);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object[] stripes = new Object[STRIPES];
+    private final Object insertLock = new Object();
+
+    // principal -> slot; linear probing, capacity a power of two at most half full
+    private String[] keys;
+    private int[] keySlots;
+
+    // account fields by slot; principals[slot] == null marks a free slot
+    private String[] principals;
+    private byte[] plans;
+    private long[] periodStarts;
+    private long[] secondsUsed;
+    private int[] freeSlots;
+    private int freeCount;
+    private int nextSlot;
+    private volatile int size;
+    private volatile long evicted;
+
+    UsageAccountStore(int initialCapacity) {
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        keys = new String[capacity * 2];
+        keySlots = new int[capacity * 2];
+        principals = new String[capacity];
+        plans = new byte[capacity];
+        periodStarts = new long[capacity];
+        secondsUsed = new long[capacity];
+        freeSlots = new int[16];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long evicted() {
+        return evicted;
+    }
+
+    /**
+     * Seconds left in the principal's current period, creating or resetting the account first.
+     */
+    long remaining(String principal, UsagePlan plan, long allowance, long now, long periodSeconds) {
+        int slot = lockSlot(principal, plan, now);
+        try {
+            synchronized (stripe(slot)) {
+                refresh(slot, plan, now, periodSeconds);
+                return Math.max(allowance - secondsUsed[slot], 0L);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Charge {@code seconds} to the principal's current period, capped at the allowance.
+     */
+    void consume(String principal, UsagePlan plan, long seconds, long allowance, long now, long periodSeconds) {
+        int slot = lockSlot(principal, plan, now);
+        try {
+            synchronized (stripe(slot)) {
+                refresh(slot, plan, now, periodSeconds);
+                if (seconds > 0) {
+                    secondsUsed[slot] = Math.min(allowance, secondsUsed[slot] + seconds);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Charge several accounts at once under a single read lock; accounts that do not
+     * exist yet (evicted since the session began) are created through {@link #consume}.
+     */
+    void consumeAll(String[] names, UsagePlan[] sessionPlans, long[] seconds, int count, long freeAllowance,
+            long premiumAllowance, long now, long periodSeconds) {
+        int missing = 0;
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                int slot = find(names[i]);
+                if (slot == NO_SLOT) {
+                    missing++;
+                    continue;
+                }
+                long allowance = sessionPlans[i] == UsagePlan.PREMIUM ? premiumAllowance : freeAllowance;
+                synchronized (stripe(slot)) {
+                    refresh(slot, sessionPlans[i], now, periodSeconds);
+                    secondsUsed[slot] = Math.min(allowance, secondsUsed[slot] + seconds[i]);
+                }
+                seconds[i] = 0L;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int i = 0; missing > 0 && i < count; i++) {
+            if (seconds[i] > 0) {
+                long allowance = sessionPlans[i] == UsagePlan.PREMIUM ? premiumAllowance : freeAllowance;
+                consume(names[i], sessionPlans[i], seconds[i], allowance, now, periodSeconds);
+                missing--;
+            }
+        }
+    }
+
+    LabUsageService.UsageSnapshot snapshot(String principal, UsagePlan plan, long allowance, long now,
+            long periodSeconds) {
+        int slot = lockSlot(principal, plan, now);
+        try {
+            long start;
+            long used;
+            synchronized (stripe(slot)) {
+                refresh(slot, plan, now, periodSeconds);
+                start = periodStarts[slot];
+                used = secondsUsed[slot];
+            }
+            return new LabUsageService.UsageSnapshot(principals[slot], plan, allowance, used,
+                    Math.max(allowance - used, 0L), Instant.ofEpochSecond(start),
+                    Instant.ofEpochSecond(start + periodSeconds));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drop accounts whose period has ended. Their next use would reset them to a fresh
+     * period anyway, so nothing is lost by recreating them on demand.
+     *
+     * @return the number of accounts evicted.
+     */
+    int evictExpired(long now, long periodSeconds) {
+        int[] slots = new int[16];
+        String[] names = new String[16];
+        int candidates = 0;
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < nextSlot; slot++) {
+                String principal = principals[slot];
+                // unsynchronized read of the period: candidates are checked again under the write lock
+                if (principal == null || periodStarts[slot] + periodSeconds > now) {
+                    continue;
+                }
+                if (candidates == slots.length) {
+                    slots = Arrays.copyOf(slots, candidates * 2);
+                    names = Arrays.copyOf(names, candidates * 2);
+                }
+                slots[candidates] = slot;
+                names[candidates++] = principal;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (candidates == 0) {
+            return 0;
+        }
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (int i = 0; i < candidates; i++) {
+                int slot = slots[i];
+                // skip accounts used (and so moved to a new period) since the scan
+                if (principals[slot] != names[i] || periodStarts[slot] + periodSeconds > now) {
+                    continue;
+                }
+                unindex(names[i]);
+                principals[slot] = null;
+                pushFree(slot);
+                removed++;
+            }
+            size -= removed;
+            evicted += removed;
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Slot of the principal's account, created if missing; returns with the read lock held.
+     */
+    private int lockSlot(String principal, UsagePlan plan, long now) {
+        lock.readLock().lock();
+        int slot = find(principal);
+        if (slot != NO_SLOT) {
+            return slot;
+        }
+        synchronized (insertLock) {
+            slot = find(principal);
+            if (slot == NO_SLOT && hasRoom()) {
+                slot = insert(principal, plan, now);
+            }
+        }
+        if (slot != NO_SLOT) {
+            return slot;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            slot = find(principal);
+            if (slot == NO_SLOT) {
+                // inserting under the write lock may grow the arrays and the index
+                slot = insert(principal, plan, now);
+            }
+            // downgrade so the slot cannot be evicted before the caller is done with it
+            lock.readLock().lock();
+            return slot;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void refresh(int slot, UsagePlan plan, long now, long periodSeconds) {
+        if (plans[slot] != plan.ordinal() || periodStarts[slot] + periodSeconds <= now) {
+            plans[slot] = (byte) plan.ordinal();
+            periodStarts[slot] = now;
+            secondsUsed[slot] = 0L;
+        }
+    }
+
+    /**
+     * Whether an account can be added without growing the slot arrays or the index, which
+     * only happens under the write lock.
+     */
+    private boolean hasRoom() {
+        return (freeCount > 0 || nextSlot < principals.length) && (size + 1) * 2 <= keys.length;
+    }
+
+    private int find(String principal) {
+        String[] table = keys;
+        int mask = table.length - 1;
+        for (int i = hash(principal) & mask;; i = (i + 1) & mask) {
+            String key = (String) KEYS.getAcquire(table, i);
+            if (key == null) {
+                return NO_SLOT;
+            }
+            if (key.equals(principal)) {
+                return keySlots[i];
+            }
+        }
+    }
+
+    private int insert(String principal, UsagePlan plan, long now) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (nextSlot == principals.length) {
+                growSlots();
+            }
+            slot = nextSlot++;
+        }
+        principals[slot] = principal;
+        plans[slot] = (byte) plan.ordinal();
+        periodStarts[slot] = now;
+        secondsUsed[slot] = 0L;
+        size++;
+        if (size * 2 > keys.length) {
+            keys = new String[keys.length * 2];
+            keySlots = new int[keySlots.length * 2];
+            rebuildIndex();
+        } else {
+            index(principal, slot);
+        }
+        return slot;
+    }
+
+    private void growSlots() {
+        int capacity = principals.length * 2;
+        principals = Arrays.copyOf(principals, capacity);
+        plans = Arrays.copyOf(plans, capacity);
+        periodStarts = Arrays.copyOf(periodStarts, capacity);
+        secondsUsed = Arrays.copyOf(secondsUsed, capacity);
+    }
+
+    private void pushFree(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void rebuildIndex() {
+        Arrays.fill(keys, null);
+        for (int slot = 0; slot < nextSlot; slot++) {
+            if (principals[slot] != null) {
+                index(principals[slot], slot);
+            }
+        }
+    }
+
+    private void index(String principal, int slot) {
+        int mask = keys.length - 1;
+        int i = hash(principal) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keySlots[i] = slot;
+        // the account fields and slot are visible to a lookup that sees the key
+        KEYS.setRelease(keys, i, principal);
+    }
+
+    /**
+     * Remove an indexed principal, shifting the rest of its probe run back over the hole
+     * so later lookups do not stop early.
+     */
+    private void unindex(String principal) {
+        int mask = keys.length - 1;
+        int hole = hash(principal) & mask;
+        while (!principal.equals(keys[hole])) {
+            hole = (hole + 1) & mask;
+        }
+        for (int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            // the entry may move back only if the hole lies between its home and its position
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                keySlots[hole] = keySlots[i];
+                hole = i;
+            }
+        }
+        keys[hole] = null;
+    }
+
+    private Object stripe(int slot) {
+        return stripes[slot & (STRIPES - 1)];
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
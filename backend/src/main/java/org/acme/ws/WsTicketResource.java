@@ -1,22 +1,37 @@
 package org.acme.ws;
 
 import java.time.Instant;
+import java.util.Set;
 
+import org.acme.SshTargetRegistry;
+import org.acme.admission.AdmissionController;
+import org.acme.admission.DrainController;
+import org.acme.ratelimit.RateLimiter;
+import org.acme.terminal.PendingShell;
+import org.acme.terminal.SshPreconnector;
 import org.acme.usage.LabUsageService;
 import org.acme.usage.UsagePlan;
 
 import io.quarkus.security.Authenticated;
 import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.common.annotation.NonBlocking;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
+/**
+ * Runs on the I/O thread like the other per-console requests: quota, admission and rate
+ * checks are in memory (adding a usage account included, see {@code UsageAccountStore}),
+ * and the speculative SSH connect is handed to its own pool.
+ */
 @Path("/api/ws-ticket")
 @Authenticated
+@NonBlocking
 @Produces(MediaType.APPLICATION_JSON)
 public class WsTicketResource {
 
@@ -26,11 +41,33 @@ public class WsTicketResource {
     @Inject
     LabUsageService usageService;
 
+    @Inject
+    RateLimiter rateLimiter;
+
+    @Inject
+    SshTargetRegistry registry;
+
+    @Inject
+    AdmissionController admission;
+
+    @Inject
+    SshPreconnector preconnector;
+
+    @Inject
+    DrainController drain;
+
     @Inject
     SecurityIdentity identity;
 
+    /**
+     * Issue a ticket for one console, or with {@code ?lab=<id>} a ticket that opens
+     * every node of that lab (up to {@code uses} times) under a single usage session.
+     * A single-console ticket with {@code ?node=<id>} starts the SSH connect to that node
+     * right away so it overlaps the WebSocket setup.
+     */
     @POST
-    public TicketResponse createTicket() {
+    public TicketResponse createTicket(@QueryParam("lab") String labId, @QueryParam("uses") int uses,
+            @QueryParam("node") String nodeId) {
         String principal = identity.getAttribute("preferred_username");
         if (principal == null || principal.isBlank()) {
             principal = identity.getPrincipal() != null ? identity.getPrincipal().getName() : null;
@@ -39,14 +76,39 @@ public class WsTicketResource {
             throw new WebApplicationException("Unable to resolve user principal", Response.Status.UNAUTHORIZED);
         }
         principal = principal.trim();
+        if (drain.isDraining()) {
+            throw new WebApplicationException(DrainController.DRAINING_MESSAGE, Response.Status.SERVICE_UNAVAILABLE);
+        }
         UsagePlan plan = usageService.resolvePlan(identity);
+        if (!rateLimiter.tryAcquire(RateLimiter.Scope.TICKET, plan, principal)) {
+            throw new WebApplicationException("Too many ticket requests", Response.Status.TOO_MANY_REQUESTS);
+        }
+        if (!admission.canAdmit(plan)) {
+            throw new WebApplicationException(AdmissionController.CAPACITY_MESSAGE, Response.Status.SERVICE_UNAVAILABLE);
+        }
+        Set<String> labNodes = null;
+        if (labId != null && !labId.isBlank()) {
+            labId = labId.trim();
+            labNodes = registry.labNodes(labId)
+                    .orElseThrow(() -> new WebApplicationException("Unknown lab", Response.Status.NOT_FOUND));
+        }
         LabUsageService.UsageReservation reservation = usageService.prepareSession(principal, plan);
-        WsTicketService.Ticket ticket = ticketService.issue(principal, reservation.sessionId(), plan);
+        WsTicketService.Ticket ticket;
+        if (labNodes != null) {
+            ticket = ticketService.issueForLab(principal, reservation.sessionId(), plan, labId, labNodes, uses);
+        } else {
+            PendingShell pending = registry.find(nodeId)
+                    .map(target -> preconnector.start(nodeId, target, plan))
+                    .orElse(null);
+            ticket = ticketService.issue(principal, reservation.sessionId(), plan, pending);
+        }
         UsagePayload usage = UsagePayload.from(reservation.snapshot());
-        return new TicketResponse(ticket.value(), ticket.expiresAt(), plan, usage);
+        return new TicketResponse(ticket.value(), ticket.expiresAt(), plan, usage, ticket.labId(), labNodes,
+                ticket.remainingUses());
     }
 
-    public record TicketResponse(String ticket, Instant expiresAt, UsagePlan plan, UsagePayload usage) {
+    public record TicketResponse(String ticket, Instant expiresAt, UsagePlan plan, UsagePayload usage,
+            String lab, Set<String> nodes, int uses) {
     }
 
     public record UsagePayload(long allowanceSeconds, long consumedSeconds, long remainingSeconds,
@@ -4,43 +4,224 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.acme.LabScheduler;
+import org.acme.metrics.LabMetrics;
+import org.acme.terminal.PendingShell;
+import org.acme.usage.LabUsageService;
 import org.acme.usage.UsagePlan;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class WsTicketService {
 
     private static final Duration DEFAULT_TTL = Duration.ofMinutes(1);
+    private static final Duration SWEEP_INTERVAL = Duration.ofSeconds(30);
 
     private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final Map<String, ObserverTicket> observerTickets = new ConcurrentHashMap<>();
+
+    @Inject
+    LabMetrics metrics;
+
+    @Inject
+    LabScheduler scheduler;
+
+    @Inject
+    LabUsageService usageService;
+
+    @ConfigProperty(name = "lab.tickets.lab-ttl-seconds", defaultValue = "120")
+    long labTtlSeconds;
+
+    @ConfigProperty(name = "lab.tickets.lab-uses-per-node", defaultValue = "2")
+    int labUsesPerNode;
+
+    @PostConstruct
+    void initMetrics() {
+        metrics.gauge("lab.tickets.pending", "Issued WebSocket tickets not yet consumed", tickets, Map::size);
+        scheduler.scheduleAtFixedRate(() -> sweepExpired(Instant.now()), SWEEP_INTERVAL, SWEEP_INTERVAL);
+        usageService.onSessionEnded(this::revokeSession);
+    }
 
     public Ticket issue(String principalName, String sessionId, UsagePlan plan) {
         return issue(principalName, sessionId, plan, DEFAULT_TTL);
     }
 
     public Ticket issue(String principalName, String sessionId, UsagePlan plan, Duration ttl) {
-        Instant expiresAt = Instant.now().plus(ttl);
+        return store(principalName, sessionId, plan, Instant.now().plus(ttl), null, null, 1, null);
+    }
+
+    /**
+     * Issue a single-console ticket carrying a shell already being opened for it; the
+     * shell is closed if the ticket expires or is rejected instead of used.
+     */
+    public Ticket issue(String principalName, String sessionId, UsagePlan plan, PendingShell pending) {
+        return store(principalName, sessionId, plan, Instant.now().plus(DEFAULT_TTL), null, null, 1, pending);
+    }
+
+    /**
+     * Issue a ticket for a whole lab visit: it may be consumed up to {@code uses}
+     * times, but only for the lab's nodes, and every use shares one usage session.
+     * A non-positive {@code uses} means the configured uses per node.
+     */
+    public Ticket issueForLab(String principalName, String sessionId, UsagePlan plan, String labId,
+            Set<String> nodes, int uses) {
+        int maxUses = Math.max(1, nodes.size() * labUsesPerNode);
+        int granted = uses > 0 ? Math.min(uses, maxUses) : maxUses;
+        Instant expiresAt = Instant.now().plusSeconds(labTtlSeconds);
+        return store(principalName, sessionId, plan, expiresAt, labId, Set.copyOf(nodes), granted, null);
+    }
+
+    private Ticket store(String principalName, String sessionId, UsagePlan plan, Instant expiresAt,
+            String labId, Set<String> nodes, int uses, PendingShell pending) {
         String value = UUID.randomUUID().toString();
-        Ticket ticket = new Ticket(value, principalName, sessionId, plan, expiresAt);
+        Ticket ticket = new Ticket(value, principalName, sessionId, plan, expiresAt, labId, nodes, uses, pending);
         tickets.put(value, ticket);
         return ticket;
     }
 
     public Optional<Ticket> consume(String value) {
+        return consume(value, null);
+    }
+
+    /**
+     * Take one use of a ticket for {@code nodeId} ({@code null} when the node is
+     * chosen later). A ticket that does not cover the node is left untouched.
+     */
+    public Optional<Ticket> consume(String value, String nodeId) {
+        if (value == null || value.isBlank()) {
+            return Optional.empty();
+        }
+        Instant now = Instant.now();
+        Ticket[] consumed = new Ticket[1];
+        Ticket[] expired = new Ticket[1];
+        tickets.computeIfPresent(value, (key, ticket) -> {
+            if (ticket.expiresAt().isBefore(now)) {
+                expired[0] = ticket;
+                return null;
+            }
+            if (nodeId != null && !ticket.allows(nodeId)) {
+                return ticket;
+            }
+            consumed[0] = ticket;
+            return ticket.remainingUses() > 1 ? ticket.withRemainingUses(ticket.remainingUses() - 1) : null;
+        });
+        if (expired[0] != null) {
+            // same as the sweep, outside the map update: ending the session revokes its tickets
+            expired[0].discardPending();
+            usageService.cancelSession(expired[0].sessionId());
+        }
+        return Optional.ofNullable(consumed[0]);
+    }
+
+    /**
+     * Undo a use of {@code ticket} whose connection was refused before it joined the usage
+     * session. A single-console ticket owns its reservation, which is cancelled. A lab
+     * ticket's reservation is shared with the lab's other consoles, so only the use is
+     * handed back; the reservation is left to those consoles and to the expiry sweep.
+     */
+    public void release(Ticket ticket) {
+        ticket.discardPending();
+        if (ticket.labId() == null) {
+            usageService.cancelSession(ticket.sessionId());
+            return;
+        }
+        Instant now = Instant.now();
+        tickets.compute(ticket.value(), (key, current) -> {
+            if (current != null) {
+                return current.withRemainingUses(current.remainingUses() + 1);
+            }
+            // the refused use was the last one
+            return ticket.expiresAt().isAfter(now) && usageService.hasSession(ticket.sessionId())
+                    ? ticket.withRemainingUses(1)
+                    : null;
+        });
+    }
+
+    /**
+     * Drop the remaining uses of tickets whose usage session has ended, so a later
+     * console is refused as an invalid ticket rather than as out of lab hours.
+     */
+    void revokeSession(String sessionId) {
+        tickets.values().removeIf(ticket -> {
+            if (!ticket.sessionId().equals(sessionId)) {
+                return false;
+            }
+            ticket.discardPending();
+            return true;
+        });
+    }
+
+    /**
+     * Drop tickets that expired unused, closing their pending shells and releasing the
+     * usage sessions reserved for them.
+     */
+    void sweepExpired(Instant now) {
+        tickets.values().removeIf(ticket -> {
+            if (!ticket.expiresAt().isBefore(now)) {
+                return false;
+            }
+            ticket.discardPending();
+            usageService.cancelSession(ticket.sessionId());
+            return true;
+        });
+        observerTickets.values().removeIf(ticket -> ticket.expiresAt().isBefore(now));
+    }
+
+    /**
+     * Issue a single-use ticket to watch terminal {@code terminalId} read-only.
+     */
+    public ObserverTicket issueObserver(String principalName, String terminalId) {
+        String value = UUID.randomUUID().toString();
+        ObserverTicket ticket = new ObserverTicket(value, principalName, terminalId, Instant.now().plus(DEFAULT_TTL));
+        observerTickets.put(value, ticket);
+        return ticket;
+    }
+
+    public Optional<ObserverTicket> consumeObserver(String value, String terminalId) {
         if (value == null || value.isBlank()) {
             return Optional.empty();
         }
-        Ticket ticket = tickets.remove(value);
-        if (ticket == null || ticket.expiresAt().isBefore(Instant.now())) {
+        ObserverTicket ticket = observerTickets.remove(value);
+        if (ticket == null || ticket.expiresAt().isBefore(Instant.now()) || !ticket.terminalId().equals(terminalId)) {
             return Optional.empty();
         }
         return Optional.of(ticket);
     }
 
-    public record Ticket(String value, String principal, String sessionId, UsagePlan plan, Instant expiresAt) {
+    /**
+     * @param labId lab the ticket is scoped to, {@code null} for a single-console ticket
+     * @param nodes nodes the ticket may open, {@code null} for any node
+     * @param pending shell opened ahead of the connect, {@code null} when there is none
+     */
+    public record Ticket(String value, String principal, String sessionId, UsagePlan plan, Instant expiresAt,
+            String labId, Set<String> nodes, int remainingUses, PendingShell pending) {
+
+        public boolean allows(String nodeId) {
+            return nodes == null || nodes.contains(nodeId);
+        }
+
+        /**
+         * Close the pending shell, if any; for every path that consumes the ticket without using it.
+         */
+        public void discardPending() {
+            if (pending != null) {
+                pending.discard();
+            }
+        }
+
+        Ticket withRemainingUses(int uses) {
+            return new Ticket(value, principal, sessionId, plan, expiresAt, labId, nodes, uses, pending);
+        }
+    }
+
+    public record ObserverTicket(String value, String principal, String terminalId, Instant expiresAt) {
     }
 }
@@ -0,0 +1,19 @@
+package org.acme;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LabStartupTest {
+
+    @Test
+    void reportsWhichSharingArchiveWasMapped() {
+        List<String> fastStart = List.of("-Xmx512m", "-XX:SharedArchiveFile=/deployments/app-cds.jsa");
+        assertEquals("app", LabStartup.sharingMode("mixed mode, sharing", fastStart));
+        assertEquals("default", LabStartup.sharingMode("mixed mode, sharing", List.of("-Xmx512m")));
+        // a rejected archive turns sharing off rather than falling back to the JDK's
+        assertEquals("off", LabStartup.sharingMode("mixed mode", fastStart));
+    }
+}
@@ -0,0 +1,92 @@
+package org.acme.admission;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.UsagePlan;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdmissionControllerTest {
+
+    private static AdmissionController controller(int sessions, int handshakes, int premiumPercent) {
+        AdmissionController controller = new AdmissionController();
+        controller.settings = new AdmissionSettings(true, sessions, handshakes, premiumPercent, 0);
+        controller.metrics = new LabMetrics(new SimpleMeterRegistry());
+        controller.initMetrics();
+        return controller;
+    }
+
+    @Test
+    void premiumPreemptsTheLatestBorrowingFreeSession() {
+        AdmissionController controller = controller(4, 4, 50);
+        AtomicBoolean firstPreempted = new AtomicBoolean();
+        AtomicBoolean lastPreempted = new AtomicBoolean();
+        controller.admit(UsagePlan.FREE).orElseThrow().onPreempt(() -> firstPreempted.set(true));
+        controller.admit(UsagePlan.FREE).orElseThrow();
+        controller.admit(UsagePlan.FREE).orElseThrow();
+        controller.admit(UsagePlan.FREE).orElseThrow().onPreempt(() -> lastPreempted.set(true));
+
+        assertFalse(controller.canAdmit(UsagePlan.FREE));
+        assertFalse(controller.admit(UsagePlan.FREE).isPresent());
+        assertTrue(controller.canAdmit(UsagePlan.PREMIUM));
+        assertTrue(controller.admit(UsagePlan.PREMIUM).isPresent());
+        assertTrue(lastPreempted.get());
+        assertFalse(firstPreempted.get());
+
+        assertTrue(controller.admit(UsagePlan.PREMIUM).isPresent());
+        assertFalse(controller.admit(UsagePlan.PREMIUM).isPresent());
+    }
+
+    @Test
+    void releasedSlotsAreReusedOnce() {
+        AdmissionController controller = controller(1, 1, 0);
+        AdmissionController.Lease lease = controller.admit(UsagePlan.FREE).orElseThrow();
+        assertFalse(controller.admit(UsagePlan.PREMIUM).isPresent());
+        lease.release();
+        lease.release();
+        assertTrue(controller.admit(UsagePlan.FREE).isPresent());
+        assertFalse(controller.admit(UsagePlan.FREE).isPresent());
+    }
+
+    @Test
+    void freeUsersLeaveReservedHandshakesAlone() throws InterruptedException {
+        AdmissionController controller = controller(10, 2, 50);
+        assertTrue(controller.acquireHandshake(UsagePlan.FREE));
+        assertFalse(controller.acquireHandshake(UsagePlan.FREE));
+        assertTrue(controller.acquireHandshake(UsagePlan.PREMIUM));
+        assertFalse(controller.acquireHandshake(UsagePlan.PREMIUM));
+        controller.releaseHandshake();
+        assertTrue(controller.acquireHandshake(UsagePlan.PREMIUM));
+    }
+
+    @Test
+    void speculativeAdmissionNeverPreempts() {
+        AdmissionController controller = controller(2, 2, 50);
+        AtomicBoolean preempted = new AtomicBoolean();
+        controller.admit(UsagePlan.FREE).orElseThrow().onPreempt(() -> preempted.set(true));
+        AdmissionController.Lease pending = controller.tryAdmit(UsagePlan.FREE).orElseThrow();
+
+        assertFalse(controller.tryAdmit(UsagePlan.PREMIUM).isPresent());
+        assertFalse(preempted.get());
+        // the pending slot counts like any other session until it is given back
+        assertFalse(controller.canAdmit(UsagePlan.FREE));
+        pending.release();
+        assertTrue(controller.canAdmit(UsagePlan.FREE));
+    }
+
+    @Test
+    void tryAcquireHandshakeDoesNotWait() {
+        AdmissionController controller = controller(10, 2, 50);
+        assertTrue(controller.tryAcquireHandshake(UsagePlan.FREE));
+        assertFalse(controller.tryAcquireHandshake(UsagePlan.FREE));
+        assertTrue(controller.tryAcquireHandshake(UsagePlan.PREMIUM));
+        assertFalse(controller.tryAcquireHandshake(UsagePlan.PREMIUM));
+        controller.releaseHandshake();
+        assertTrue(controller.tryAcquireHandshake(UsagePlan.PREMIUM));
+    }
+}
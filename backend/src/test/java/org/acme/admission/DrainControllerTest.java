@@ -0,0 +1,97 @@
+package org.acme.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.acme.diagnostics.EventLog;
+import org.acme.diagnostics.EventLogSettings;
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.LabUsageService;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DrainControllerTest {
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+
+    private DrainController controller(long deadlineSeconds) {
+        DrainController controller = new DrainController();
+        controller.settings = new DrainSettings(true, deadlineSeconds, 60);
+        controller.metrics = new LabMetrics(new SimpleMeterRegistry());
+        controller.events = new EventLog(new EventLogSettings(64, 1, 100, 1, 100, 1, 100), controller.metrics);
+        controller.usageService = new LabUsageService() {
+            @Override
+            public int settleAll() {
+                calls.add("settle");
+                return 0;
+            }
+        };
+        controller.initMetrics();
+        return controller;
+    }
+
+    private DrainController.Participant participant(AtomicInteger connections, boolean leaveOnMigrate) {
+        return new DrainController.Participant() {
+            @Override
+            public int active() {
+                return connections.get();
+            }
+
+            @Override
+            public void migrate(Duration spread) {
+                calls.add("migrate " + spread.getSeconds());
+                if (leaveOnMigrate) {
+                    connections.set(0);
+                }
+            }
+
+            @Override
+            public void closeAll() {
+                calls.add("close");
+                connections.set(0);
+            }
+        };
+    }
+
+    @Test
+    void settlesOnceClientsHaveMovedThenClosesTheRest() {
+        DrainController controller = controller(30);
+        controller.register(participant(new AtomicInteger(3), true));
+
+        long started = System.nanoTime();
+        controller.drain();
+
+        assertTrue(controller.isDraining());
+        assertTrue(System.nanoTime() - started < Duration.ofSeconds(5).toNanos());
+        // the spread is capped at the deadline
+        assertEquals(List.of("migrate 30", "settle", "close"), calls);
+    }
+
+    @Test
+    void closesLingeringConnectionsAtTheDeadline() {
+        DrainController controller = controller(0);
+        AtomicInteger connections = new AtomicInteger(2);
+        controller.register(participant(connections, false));
+
+        controller.drain();
+
+        assertEquals(List.of("migrate 0", "settle", "close"), calls);
+        assertEquals(0, connections.get());
+    }
+
+    @Test
+    void reconnectDelaysStayWithinTheSpread() {
+        Duration spread = Duration.ofSeconds(10);
+        for (int i = 0; i < 1000; i++) {
+            Duration delay = DrainController.reconnectDelay(spread);
+            assertTrue(!delay.isNegative() && delay.compareTo(spread) < 0);
+        }
+        assertEquals(Duration.ZERO, DrainController.reconnectDelay(Duration.ZERO));
+    }
+}
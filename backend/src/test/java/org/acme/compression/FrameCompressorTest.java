@@ -0,0 +1,63 @@
+package org.acme.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+
+import org.acme.metrics.LabMetrics;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FrameCompressorTest {
+
+    private static final String ROUTES = "B>* 10.0.%d.0/24 [20/0] via 192.0.2.1, eth1, weight 1, 00:04:12\r\n";
+
+    private final FrameCompressor compressor = new FrameCompressor(6, 256,
+            new LabMetrics(new SimpleMeterRegistry()).compression(LabMetrics.Endpoint.SSHTERM));
+
+    @Test
+    void leavesSmallFramesAsText() {
+        assertNull(compressor.compress("0ls\r\n"));
+    }
+
+    @Test
+    void framesInflateInOrderFromOneStream() throws Exception {
+        Inflater inflater = new Inflater(true);
+        String first = routes(0);
+        String second = routes(1) + "r1# é";
+        ByteBuffer firstWire = compressor.compress(first);
+        ByteBuffer secondWire = compressor.compress(second);
+
+        assertEquals(first, inflate(inflater, firstWire));
+        assertEquals(second, inflate(inflater, secondWire));
+        // the second frame reuses the first as its dictionary
+        assertTrue(secondWire.remaining() < firstWire.remaining());
+    }
+
+    private static String routes(int variant) {
+        StringBuilder frame = new StringBuilder("0");
+        for (int i = 0; i < 40; i++) {
+            frame.append(String.format(ROUTES, i + variant));
+        }
+        return frame.toString();
+    }
+
+    private static String inflate(Inflater inflater, ByteBuffer wire) throws Exception {
+        int length = wire.getInt(0);
+        byte[] data = new byte[wire.remaining()];
+        wire.duplicate().get(data);
+        inflater.setInput(Arrays.copyOfRange(data, 4, data.length));
+        byte[] out = new byte[length];
+        int read = 0;
+        while (read < length) {
+            read += inflater.inflate(out, read, length - read);
+        }
+        return new String(out, StandardCharsets.UTF_8);
+    }
+}
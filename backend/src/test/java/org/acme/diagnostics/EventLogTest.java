@@ -0,0 +1,60 @@
+package org.acme.diagnostics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.acme.metrics.LabMetrics;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EventLogTest {
+
+    @Test
+    void fullRingDropsInsteadOfBlocking() {
+        EventLog log = newLog(new EventLogSettings(16, 1, 0, 1, 0, 1, 0));
+        for (int i = 0; i < 20; i++) {
+            log.info(EventLog.Category.TUNNEL, "tunnel.open", "ws", i);
+        }
+        assertEquals(16, log.drain(new StringBuilder()));
+        log.info(EventLog.Category.TUNNEL, "tunnel.closed", "ws", 1);
+        assertEquals(1, log.drain(new StringBuilder()));
+    }
+
+    @Test
+    void samplesBelowWarnAndCapsRate() {
+        EventLog log = newLog(new EventLogSettings(1024, 1, 0, 1, 5, 10, 0));
+        for (int i = 0; i < 100; i++) {
+            log.info(EventLog.Category.MESSAGE, "guac.in", "chars", i);
+        }
+        log.warn(EventLog.Category.MESSAGE, "guac.error", null);
+        assertEquals(11, log.drain(new StringBuilder()));
+
+        for (int i = 0; i < 50; i++) {
+            log.info(EventLog.Category.QUOTA, "quota.exceeded");
+        }
+        // a window boundary can fall inside the loop
+        int written = log.drain(new StringBuilder());
+        assertTrue(written >= 5 && written <= 10, "written " + written);
+    }
+
+    @Test
+    void rendersKeyValueLine() {
+        EventLog.Slot slot = new EventLog.Slot(0);
+        slot.event = "tunnel.closed";
+        slot.fields[0] = "ws";
+        slot.fields[1] = "12";
+        slot.fields[2] = "reason";
+        slot.fields[3] = "peer said \"bye\"";
+        slot.fieldCount = 4;
+        slot.sample = 1;
+        slot.timestamp = 42L;
+        StringBuilder line = new StringBuilder();
+        EventLog.render(slot, line);
+        assertEquals("event=tunnel.closed ws=12 reason=\"peer said \\\"bye\\\"\" ts=42", line.toString());
+    }
+
+    private static EventLog newLog(EventLogSettings settings) {
+        return new EventLog(settings, new LabMetrics(new SimpleMeterRegistry()));
+    }
+}
@@ -0,0 +1,60 @@
+package org.acme.diagnostics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jakarta.ws.rs.WebApplicationException;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class RecordingServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void stoppedRecordingContainsLabEvents() throws Exception {
+        RecordingService service = newService();
+        service.start("slow-console", "default", true, Duration.ofMinutes(5));
+        assertThrows(WebApplicationException.class, () -> service.start("slow-console", null, false, null));
+
+        SshPhaseEvent phase = SshPhaseEvent.begin("CONNECT", "r1", 22);
+        phase.commit();
+        RelayFrameEvent frame = RelayFrameEvent.begin("sshterm");
+        frame.read(42);
+        frame.commit();
+
+        RecordingService.RecordingInfo info = service.stop("slow-console").orElseThrow();
+        assertEquals("closed", info.state());
+        assertNotNull(info.file());
+        Set<String> types = RecordingFile.readAllEvents(Path.of(info.file())).stream()
+                .map(RecordedEvent::getEventType)
+                .map(type -> type.getName())
+                .collect(Collectors.toSet());
+        assertTrue(types.contains("org.acme.SshPhase"));
+        assertTrue(types.contains("org.acme.RelayFrame"));
+        assertTrue(service.list().isEmpty());
+    }
+
+    @Test
+    void rejectsUnsafeNames() {
+        assertThrows(WebApplicationException.class, () -> newService().start("../x", null, false, null));
+    }
+
+    private RecordingService newService() {
+        RecordingService service = new RecordingService();
+        service.directory = dir.toString();
+        service.maxMinutes = 30;
+        return service;
+    }
+}
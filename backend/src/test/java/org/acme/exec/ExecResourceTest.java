@@ -0,0 +1,219 @@
+package org.acme.exec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.acme.SshTargetRegistry;
+import org.acme.exec.ExecResource.ExecRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseBroadcaster;
+
+class ExecResourceTest {
+
+    private ExecResource resource;
+    private CompletableFuture<Void> outcome;
+
+    @BeforeEach
+    void setUp() {
+        outcome = CompletableFuture.completedFuture(null);
+        resource = new ExecResource();
+        resource.settings = new ExecSettings(15, 120, 4, 4, 65536, 120);
+        resource.registry = new SshTargetRegistry() {
+            @Override
+            public Optional<Set<String>> labNodes(String labId) {
+                return "bgp01".equals(labId) ? Optional.of(Set.of("r1")) : Optional.empty();
+            }
+        };
+        // reports one COMPLETED result per node, then finishes with whatever the test set
+        resource.execService = new ExecService() {
+            @Override
+            public CompletableFuture<Void> runAll(List<String> nodeIds, String command, Duration timeout,
+                    Consumer<ExecResult> onResult) {
+                nodeIds.forEach(node -> onResult.accept(
+                        new ExecResult(node, ExecStatus.COMPLETED, 0, command, "", false, 1, null)));
+                return outcome;
+            }
+        };
+    }
+
+    @Test
+    void aRequestWithoutCommandOrNodesIsRejected() {
+        assertEquals(400, status(() -> resource.run(null)));
+        assertEquals(400, status(() -> resource.run(new ExecRequest(null, List.of("r1"), " ", null))));
+        assertEquals(400, status(() -> resource.run(new ExecRequest(null, List.of(" "), "show version", null))));
+        assertEquals(404, status(() -> resource.run(new ExecRequest("nope", null, "show version", null))));
+    }
+
+    @Test
+    void runCollectsTheLabAndTheExtraNodes() {
+        List<ExecService.ExecResult> results = resource.run(
+                new ExecRequest("bgp01", List.of("r2", "r1"), "show version", null));
+        assertEquals(List.of("r1", "r2"), results.stream().map(ExecService.ExecResult::node).toList());
+    }
+
+    @Test
+    void streamSendsOneEventPerNode() {
+        List<OutboundSseEvent> events = stream(new ExecRequest(null, List.of("r1", "r2"), "show version", null));
+
+        assertEquals(2, events.size());
+        assertNull(events.get(0).getName());
+        assertEquals("r1", ((ExecService.ExecResult) events.get(0).getData()).node());
+    }
+
+    @Test
+    void aFailedRunEndsTheStreamWithAnErrorEvent() {
+        outcome = CompletableFuture.failedFuture(new IllegalStateException("workers gone"));
+
+        List<OutboundSseEvent> events = stream(new ExecRequest(null, List.of("r1"), "show version", null));
+
+        assertEquals(2, events.size());
+        assertEquals("error", events.get(1).getName());
+        assertEquals("workers gone", events.get(1).getData());
+    }
+
+    private List<OutboundSseEvent> stream(ExecRequest request) {
+        return resource.stream(request, new RecordingSse()).collect().asList().await().atMost(Duration.ofSeconds(5));
+    }
+
+    private static int status(Runnable call) {
+        return assertThrows(WebApplicationException.class, call::run).getResponse().getStatus();
+    }
+
+    /**
+     * Just enough of {@link Sse} to build the events the resource emits.
+     */
+    private static final class RecordingSse implements Sse {
+
+        @Override
+        public OutboundSseEvent.Builder newEventBuilder() {
+            return new EventBuilder();
+        }
+
+        @Override
+        public SseBroadcaster newBroadcaster() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class EventBuilder implements OutboundSseEvent.Builder {
+        private String name;
+        private MediaType mediaType;
+        private Class<?> type;
+        private Object data;
+
+        @Override
+        public OutboundSseEvent.Builder id(String id) {
+            return this;
+        }
+
+        @Override
+        public OutboundSseEvent.Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        @Override
+        public OutboundSseEvent.Builder reconnectDelay(long milliseconds) {
+            return this;
+        }
+
+        @Override
+        public OutboundSseEvent.Builder mediaType(MediaType mediaType) {
+            this.mediaType = mediaType;
+            return this;
+        }
+
+        @Override
+        public OutboundSseEvent.Builder comment(String comment) {
+            return this;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public OutboundSseEvent.Builder data(Class type, Object data) {
+            this.type = type;
+            this.data = data;
+            return this;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public OutboundSseEvent.Builder data(GenericType type, Object data) {
+            return data(type.getRawType(), data);
+        }
+
+        @Override
+        public OutboundSseEvent.Builder data(Object data) {
+            return data(data.getClass(), data);
+        }
+
+        @Override
+        public OutboundSseEvent build() {
+            return new Event(name, mediaType, type, data);
+        }
+    }
+
+    private record Event(String name, MediaType mediaType, Class<?> type, Object data) implements OutboundSseEvent {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        @Override
+        public Class<?> getType() {
+            return type;
+        }
+
+        @Override
+        public Type getGenericType() {
+            return type;
+        }
+
+        @Override
+        public Object getData() {
+            return data;
+        }
+
+        @Override
+        public String getId() {
+            return null;
+        }
+
+        @Override
+        public String getComment() {
+            return null;
+        }
+
+        @Override
+        public long getReconnectDelay() {
+            return RECONNECT_NOT_SET;
+        }
+
+        @Override
+        public boolean isReconnectDelaySet() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.acme.exec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.acme.LabScheduler;
+import org.acme.SshTargetRegistry;
+import org.acme.SshTargetRegistry.Target;
+import org.acme.terminal.SshConnector;
+import org.apache.sshd.client.session.ClientSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ExecServiceTest {
+
+    private static final Target R1 = new Target("r1.lab", 22, "clab", "clab");
+    private static final Target R2 = new Target("r2.lab", 22, "clab", "clab");
+
+    private final AtomicInteger connects = new AtomicInteger();
+    private final List<Duration> connectTimeouts = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch connectGate = new CountDownLatch(0);
+    private ExecService service;
+
+    @BeforeEach
+    void setUp() {
+        newService(1);
+    }
+
+    private void newService(int perNodeConcurrency) {
+        service = new ExecService();
+        service.settings = new ExecSettings(15, 120, perNodeConcurrency, 4, 65536, 120);
+        service.registry = new SshTargetRegistry() {
+            @Override
+            public Optional<Target> find(String id) {
+                return Optional.ofNullable(Map.of("r1", R1, "r2", R2).get(id));
+            }
+        };
+        // every connect is refused, after waiting for the gate when a test holds it shut
+        service.connector = new SshConnector() {
+            @Override
+            public ClientSession connect(Target target, Duration timeout) throws IOException {
+                connects.incrementAndGet();
+                connectTimeouts.add(timeout);
+                try {
+                    connectGate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Connection refused");
+            }
+        };
+        service.scheduler = new LabScheduler() {
+            @Override
+            public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period) {
+                return null;
+            }
+        };
+        service.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectGate.countDown();
+        service.stop();
+    }
+
+    @Test
+    void anUnknownNodeFailsWithoutConnecting() {
+        ExecService.ExecResult result = service.run("nope", "show version", Duration.ofSeconds(1));
+        assertEquals(ExecService.ExecStatus.FAILED, result.status());
+        assertEquals("Unknown node", result.error());
+        assertEquals(0, connects.get());
+    }
+
+    @Test
+    void aConnectFailureIsReportedAndRetriedOnTheNextCommand() {
+        ExecService.ExecResult first = service.run("r1", "show version", Duration.ofSeconds(1));
+        assertEquals(ExecService.ExecStatus.FAILED, first.status());
+        assertEquals("Connection refused", first.error());
+
+        service.run("r1", "show version", Duration.ofSeconds(1));
+        assertEquals(2, connects.get());
+    }
+
+    @Test
+    void aBusyNodeFailsOnceTheBudgetRunsOut() throws Exception {
+        connectGate = new CountDownLatch(1);
+        CompletableFuture<ExecService.ExecResult> holder = CompletableFuture.supplyAsync(
+                () -> service.run("r1", "show version", Duration.ofSeconds(5)));
+        while (connects.get() == 0) {
+            Thread.onSpinWait();
+        }
+
+        ExecService.ExecResult busy = service.run("r1", "show version", Duration.ofMillis(50));
+        assertEquals(ExecService.ExecStatus.FAILED, busy.status());
+        assertEquals("Too many concurrent commands on node", busy.error());
+        assertEquals(1, connects.get());
+
+        connectGate.countDown();
+        assertEquals("Connection refused", holder.get(5, TimeUnit.SECONDS).error());
+    }
+
+    @Test
+    void theConnectGetsWhatIsLeftOfTheBudget() {
+        service.run("r1", "show version", Duration.ofSeconds(2));
+        assertEquals(1, connectTimeouts.size());
+        assertTrue(connectTimeouts.get(0).compareTo(Duration.ofSeconds(2)) <= 0);
+    }
+
+    @Test
+    void aCallerWaitingForAnotherConnectGivesUpAtItsOwnDeadline() throws Exception {
+        service.stop();
+        newService(2);
+        connectGate = new CountDownLatch(1);
+        CompletableFuture<ExecService.ExecResult> holder = CompletableFuture.supplyAsync(
+                () -> service.run("r1", "show version", Duration.ofSeconds(5)));
+        while (connects.get() == 0) {
+            Thread.onSpinWait();
+        }
+
+        long started = System.nanoTime();
+        ExecService.ExecResult waiting = service.run("r1", "show version", Duration.ofMillis(100));
+        assertEquals("Timed out waiting for the SSH session", waiting.error());
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, connects.get());
+
+        connectGate.countDown();
+        assertEquals("Connection refused", holder.get(5, TimeUnit.SECONDS).error());
+    }
+
+    @Test
+    void runAllReportsEveryNodeBeforeCompleting() throws Exception {
+        Map<String, ExecService.ExecResult> results = new ConcurrentHashMap<>();
+        service.runAll(List.of("r1", "r2", "nope"), "show version", Duration.ofSeconds(1),
+                result -> results.put(result.node(), result)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, results.size());
+        assertEquals("Unknown node", results.get("nope").error());
+        assertTrue(results.values().stream().allMatch(r -> r.status() == ExecService.ExecStatus.FAILED));
+    }
+}
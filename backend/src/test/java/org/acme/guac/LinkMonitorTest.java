@@ -0,0 +1,85 @@
+package org.acme.guac;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import org.acme.LabScheduler;
+import org.acme.metrics.LabMetrics;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LinkMonitorTest {
+
+    private final LabMetrics.GuacLinkMeters meters = new LabMetrics(new SimpleMeterRegistry())
+            .guacLink(LabMetrics.Endpoint.CONT);
+    private final ManualScheduler scheduler = new ManualScheduler();
+
+    @Test
+    void parsesElementsAndRejectsTruncatedOnes() {
+        assertEquals("1234", LinkMonitor.element("4.1234;", 0));
+        assertEquals("42", LinkMonitor.element("4.sync,2.42;", 7));
+        assertNull(LinkMonitor.element("4.12", 0));
+        assertNull(LinkMonitor.element("x.12", 0));
+    }
+
+    @Test
+    void measuresRoundTripFromEchoedSync() {
+        LinkMonitor link = new LinkMonitor(LinkQuality.GOOD, meters, scheduler);
+        link.outbound("3.img,1.1;4.sync,5.10000;".toCharArray());
+        link.inbound("4.sync,5.99999;");
+        assertEquals(-1, link.rttMillis());
+        link.inbound("4.sync,5.10000;");
+        assertTrue(link.rttMillis() >= 0);
+        assertEquals(LinkQuality.GOOD, link.quality());
+    }
+
+    @Test
+    void coalescesResizesOnlyOnSlowLinks() {
+        List<String> forwarded = new ArrayList<>();
+        LinkMonitor fast = new LinkMonitor(LinkQuality.GOOD, meters, scheduler);
+        assertFalse(fast.deferResize("4.size,4.1024,3.768;", forwarded::add));
+
+        LinkMonitor slow = new LinkMonitor(LinkQuality.FAIR, meters, scheduler);
+        assertFalse(slow.deferResize("3.key,5.65307,1.1;", forwarded::add));
+        assertTrue(slow.deferResize("4.size,3.800,3.600;", forwarded::add));
+        assertTrue(slow.deferResize("4.size,4.1024,3.768;", forwarded::add));
+        assertEquals(List.of(LinkQuality.FAIR.resizeDelay()), scheduler.delays);
+        assertTrue(forwarded.isEmpty());
+
+        scheduler.runAll();
+        assertEquals(List.of("4.size,4.1024,3.768;"), forwarded);
+
+        assertTrue(slow.deferResize("4.size,3.640,3.480;", forwarded::add));
+        scheduler.runAll();
+        assertEquals(List.of("4.size,4.1024,3.768;", "4.size,3.640,3.480;"), forwarded);
+    }
+
+    /**
+     * Holds scheduled tasks until the test runs them, so no timer thread is started.
+     */
+    private static final class ManualScheduler extends LabScheduler {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final List<Duration> delays = new ArrayList<>();
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable task, Duration delay) {
+            tasks.add(task);
+            delays.add(delay);
+            return null;
+        }
+
+        void runAll() {
+            List<Runnable> due = new ArrayList<>(tasks);
+            tasks.clear();
+            due.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.acme.health;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_NANOS = 1_000;
+
+    private final CircuitBreaker breaker = new CircuitBreaker(3, OPEN_NANOS);
+
+    @Test
+    void opensAfterTheThresholdOfConsecutiveFailures() {
+        breaker.onFailure(0, "refused");
+        breaker.onFailure(0, "refused");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire(0));
+
+        breaker.onFailure(10, "refused");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(3, breaker.failures());
+        assertEquals("refused", breaker.lastError());
+        assertFalse(breaker.tryAcquire(10 + OPEN_NANOS - 1));
+    }
+
+    @Test
+    void aSuccessResetsTheFailureCount() {
+        breaker.onFailure(0, "refused");
+        breaker.onFailure(0, "refused");
+        breaker.onSuccess();
+        breaker.onFailure(0, "refused");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(1, breaker.failures());
+    }
+
+    @Test
+    void letsASingleTrialThroughOnceTheOpenPeriodIsOver() {
+        open(0);
+
+        assertTrue(breaker.tryAcquire(OPEN_NANOS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(OPEN_NANOS + 1));
+        assertTrue(breaker.isRejecting(OPEN_NANOS + 1));
+    }
+
+    @Test
+    void aSuccessfulTrialClosesTheCircuit() {
+        open(0);
+        assertTrue(breaker.tryAcquire(OPEN_NANOS));
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.failures());
+        assertTrue(breaker.tryAcquire(OPEN_NANOS));
+    }
+
+    @Test
+    void aFailedTrialReopensForAnotherFullPeriod() {
+        open(0);
+        assertTrue(breaker.tryAcquire(OPEN_NANOS));
+
+        breaker.onFailure(OPEN_NANOS + 5, "timeout");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(2 * OPEN_NANOS));
+        assertTrue(breaker.tryAcquire(2 * OPEN_NANOS + 5));
+    }
+
+    @Test
+    void isRejectingDoesNotUseUpTheTrial() {
+        open(0);
+
+        assertTrue(breaker.isRejecting(OPEN_NANOS - 1));
+        assertFalse(breaker.isRejecting(OPEN_NANOS));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertTrue(breaker.tryAcquire(OPEN_NANOS));
+    }
+
+    @Test
+    void aProbeSuccessClosesAnOpenCircuitStraightAway() {
+        open(0);
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire(1));
+    }
+
+    private void open(long nowNanos) {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(nowNanos, "refused");
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+}
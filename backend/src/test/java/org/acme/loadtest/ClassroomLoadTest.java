@@ -0,0 +1,234 @@
+package org.acme.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.websocket.ClientEndpointConfig;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.Session;
+import jakarta.websocket.WebSocketContainer;
+
+/**
+ * Simulates a classroom: N students, each signed in as their own user through
+ * {@link LoadTestAuthMechanism}, obtain a ticket, open a terminal on one of
+ * the lab nodes (served by {@link EmbeddedSshServer}), type a command character by
+ * character and then pull a bulk {@code show} output. Reports connect time, echo
+ * latency and throughput percentiles plus heap and thread usage of the whole JVM.
+ *
+ * <p>Run with {@code ./mvnw test -Ploadtest} and tune with {@code -Dloadtest.clients},
+ * {@code -Dloadtest.keystrokes}, {@code -Dloadtest.think-ms} and {@code -Dloadtest.bulk-kb}.
+ */
+@QuarkusTest
+@TestProfile(LoadTestProfile.class)
+@EnabledIfSystemProperty(named = "loadtest.enabled", matches = "true")
+class ClassroomLoadTest {
+
+    private static final Logger LOG = Logger.getLogger(ClassroomLoadTest.class);
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 50);
+    private static final int KEYSTROKES = Integer.getInteger("loadtest.keystrokes", 100);
+    private static final long THINK_MS = Long.getLong("loadtest.think-ms", 20L);
+    private static final int BULK_KB = Integer.getInteger("loadtest.bulk-kb", 256);
+    private static final Duration FRAME_TIMEOUT = Duration.ofSeconds(30);
+    private static final String[] NODES = { "r1", "r2", "r3" };
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final Histogram connectMicros = new ConcurrentHistogram(3);
+    private final Histogram echoMicros = new ConcurrentHistogram(3);
+    private final Histogram throughputKiBps = new ConcurrentHistogram(3);
+
+    @TestHTTPResource("/")
+    URI base;
+
+    @Test
+    void classroom() throws Exception {
+        HttpClient http = HttpClient.newHttpClient();
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        threads.resetPeakThreadCount();
+
+        AtomicLong peakHeap = new AtomicLong();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(
+                () -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 100, TimeUnit.MILLISECONDS);
+
+        ExecutorService students = Executors.newFixedThreadPool(CLIENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> runs = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            String node = NODES[i % NODES.length];
+            String student = "loadtest-" + i;
+            runs.add(students.submit(() -> {
+                start.await();
+                runStudent(http, container, student, node);
+                return null;
+            }));
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        int failures = 0;
+        for (Future<Object> run : runs) {
+            try {
+                run.get(5, TimeUnit.MINUTES);
+            } catch (ExecutionException | TimeoutException e) {
+                failures++;
+                LOG.warn("Student session failed", e);
+            }
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began);
+        students.shutdownNow();
+        sampler.shutdownNow();
+
+        LOG.infof("Load test: %d clients, %d keystrokes each, %d KiB bulk, %d ms total, %d failures",
+                CLIENTS, KEYSTROKES, BULK_KB, elapsedMillis, failures);
+        LOG.info(describe("connect (ms)", connectMicros, 1000.0));
+        LOG.info(describe("echo (ms)", echoMicros, 1000.0));
+        LOG.info(describe("bulk throughput (KiB/s)", throughputKiBps, 1.0));
+        LOG.infof("heap peak=%d MiB, threads live=%d peak=%d",
+                peakHeap.get() / (1024 * 1024), threads.getThreadCount(), threads.getPeakThreadCount());
+
+        assertEquals(0, failures, "all simulated students should complete their session");
+    }
+
+    private void runStudent(HttpClient http, WebSocketContainer container, String student, String node)
+            throws Exception {
+        long started = System.nanoTime();
+        String ticket = requestTicket(http, student);
+        URI uri = URI.create(base.toString().replaceFirst("^http", "ws"))
+                .resolve("ws/sshterm/" + node + "?ticket=" + ticket);
+        TerminalClient client = new TerminalClient();
+        Session session = container.connectToServer(client, ClientEndpointConfig.Builder.create().build(), uri);
+        try {
+            client.awaitContains("# ");
+            connectMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+
+            for (int i = 0; i < KEYSTROKES; i++) {
+                String key = String.valueOf((char) ('a' + i % 26));
+                client.mark();
+                long sent = System.nanoTime();
+                session.getBasicRemote().sendText("0" + key);
+                client.awaitContains(key);
+                echoMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+                Thread.sleep(THINK_MS);
+            }
+            client.mark();
+            session.getBasicRemote().sendText("0\r");
+            client.awaitContains("# ");
+
+            client.mark();
+            long bulkStarted = System.nanoTime();
+            session.getBasicRemote().sendText("0bulk " + BULK_KB + "\r");
+            long received = client.awaitContains(ClassroomShell.BULK_END);
+            double seconds = Math.max(1L, System.nanoTime() - bulkStarted) / 1_000_000_000.0;
+            throughputKiBps.recordValue((long) (received / 1024.0 / seconds));
+        } finally {
+            session.close();
+        }
+    }
+
+    private String requestTicket(HttpClient http, String student) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(base.resolve("api/ws-ticket"))
+                .header(LoadTestAuthMechanism.USER_HEADER, student)
+                .header(LoadTestAuthMechanism.ROLES_HEADER, "premium")
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Ticket request failed: " + response.statusCode() + " " + response.body());
+        }
+        return json.readTree(response.body()).get("ticket").asText();
+    }
+
+    private static String describe(String label, Histogram histogram, double scale) {
+        return String.format("%-24s n=%d p50=%.2f p90=%.2f p99=%.2f max=%.2f", label,
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50.0) / scale,
+                histogram.getValueAtPercentile(90.0) / scale,
+                histogram.getValueAtPercentile(99.0) / scale,
+                histogram.getMaxValue() / scale);
+    }
+
+    /**
+     * Collects terminal output since the last {@link #mark()} so a waiter can block until
+     * an expected string shows up.
+     */
+    public static final class TerminalClient extends Endpoint {
+
+        private final StringBuilder output = new StringBuilder();
+        private long receivedSinceMark;
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            session.addMessageHandler(String.class, this::onText);
+        }
+
+        private synchronized void onText(String frame) {
+            if (frame.isEmpty() || frame.charAt(0) != '0') {
+                return;
+            }
+            output.append(frame, 1, frame.length());
+            receivedSinceMark += frame.length() - 1;
+            notifyAll();
+        }
+
+        synchronized void mark() {
+            output.setLength(0);
+            receivedSinceMark = 0;
+        }
+
+        /**
+         * @return characters received since the last mark once {@code needle} has arrived.
+         */
+        synchronized long awaitContains(String needle) throws InterruptedException, TimeoutException {
+            long deadline = System.nanoTime() + FRAME_TIMEOUT.toNanos();
+            int from = 0;
+            while (true) {
+                int found = output.indexOf(needle, from);
+                if (found >= 0) {
+                    return receivedSinceMark;
+                }
+                from = Math.max(0, output.length() - needle.length());
+                long waitMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (waitMillis <= 0) {
+                    throw new TimeoutException("Timed out waiting for '" + needle + "'");
+                }
+                wait(waitMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.acme.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+
+/**
+ * Minimal router-like shell: echoes every byte like a PTY would and understands
+ * {@code bulk <kb>}, which prints roughly that much route-table output followed by
+ * {@value #BULK_END}.
+ */
+final class ClassroomShell implements Command, Runnable {
+
+    static final String BULK_END = "BULK-END";
+    private static final byte[] PROMPT = "\r\nr1# ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ROUTE = "B>* 10.0.0.0/24 [20/0] via 192.168.12.2, eth1, weight 1, 00:42:17\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private InputStream in;
+    private OutputStream out;
+    private ExitCallback exitCallback;
+    private Thread thread;
+
+    @Override
+    public void setInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public void setOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void setErrorStream(OutputStream err) {
+    }
+
+    @Override
+    public void setExitCallback(ExitCallback callback) {
+        this.exitCallback = callback;
+    }
+
+    @Override
+    public void start(ChannelSession channel, Environment env) {
+        thread = new Thread(this, "classroom-shell");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void destroy(ChannelSession channel) {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        StringBuilder line = new StringBuilder();
+        try {
+            out.write(PROMPT);
+            out.flush();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\r' || b == '\n') {
+                    execute(line.toString().trim());
+                    line.setLength(0);
+                    out.write(PROMPT);
+                } else {
+                    line.append((char) b);
+                    out.write(b);
+                }
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            if (exitCallback != null) {
+                exitCallback.onExit(0);
+            }
+        }
+    }
+
+    private void execute(String command) throws IOException {
+        if (!command.startsWith("bulk ")) {
+            return;
+        }
+        long kilobytes = Long.parseLong(command.substring(5).trim());
+        long remaining = kilobytes * 1024;
+        out.write('\r');
+        out.write('\n');
+        while (remaining > 0) {
+            out.write(ROUTE);
+            remaining -= ROUTE.length;
+        }
+        out.write(BULK_END.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,53 @@
+package org.acme.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+
+import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
+
+/**
+ * In-process Apache MINA SSH server standing in for the {@code clab-bgp01-r*}
+ * routers. Every lab node in {@code SshTargetRegistry} is re-pointed at it.
+ */
+public class EmbeddedSshServer implements QuarkusTestResourceLifecycleManager {
+
+    private SshServer server;
+
+    @Override
+    public Map<String, String> start() {
+        try {
+            server = SshServer.setUpDefaultServer();
+            server.setHost("127.0.0.1");
+            server.setPort(0);
+            server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+            server.setPasswordAuthenticator((username, password, session) -> true);
+            server.setShellFactory(channel -> new ClassroomShell());
+            server.start();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to start embedded SSH server", e);
+        }
+
+        String port = Integer.toString(server.getPort());
+        Map<String, String> config = new HashMap<>();
+        config.put("app.ssh.host", "127.0.0.1");
+        config.put("app.ssh.port", port);
+        for (String node : new String[] { "r1", "r2", "r3" }) {
+            config.put("app.nodes." + node + ".host", "127.0.0.1");
+            config.put("app.nodes." + node + ".port", port);
+        }
+        return config;
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            try {
+                server.stop(true);
+            } catch (Exception ignored) {
+            }
+        }
+    }
+}
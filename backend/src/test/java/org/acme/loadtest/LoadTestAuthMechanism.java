@@ -0,0 +1,66 @@
+package org.acme.loadtest;
+
+import java.util.Optional;
+import java.util.Set;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.security.identity.IdentityProviderManager;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.identity.request.AuthenticationRequest;
+import io.quarkus.security.runtime.QuarkusPrincipal;
+import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+import io.quarkus.vertx.http.runtime.security.ChallengeData;
+import io.quarkus.vertx.http.runtime.security.HttpAuthenticationMechanism;
+import io.smallrye.mutiny.Uni;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Lets each simulated client of the load tests act as its own user: the principal and
+ * roles are taken from the {@value #USER_HEADER} and {@value #ROLES_HEADER} request
+ * headers, so usage accounts, tickets and rate limits are keyed per student instead of
+ * all students sharing one {@code @TestSecurity} identity. Only active when
+ * {@code lab.loadtest.header-auth} is set, which {@link LoadTestProfile} does.
+ */
+@ApplicationScoped
+public class LoadTestAuthMechanism implements HttpAuthenticationMechanism {
+
+    static final String USER_HEADER = "X-Loadtest-User";
+    static final String ROLES_HEADER = "X-Loadtest-Roles";
+
+    @ConfigProperty(name = "lab.loadtest.header-auth", defaultValue = "false")
+    boolean enabled;
+
+    @Override
+    public Uni<SecurityIdentity> authenticate(RoutingContext context, IdentityProviderManager identityProviderManager) {
+        String user = enabled ? context.request().getHeader(USER_HEADER) : null;
+        if (user == null || user.isBlank()) {
+            return Uni.createFrom().optional(Optional.empty());
+        }
+        QuarkusSecurityIdentity.Builder identity = QuarkusSecurityIdentity.builder()
+                .setPrincipal(new QuarkusPrincipal(user));
+        String roles = context.request().getHeader(ROLES_HEADER);
+        if (roles != null) {
+            for (String role : roles.split(",")) {
+                if (!role.isBlank()) identity.addRole(role.trim());
+            }
+        }
+        return Uni.createFrom().item(identity.build());
+    }
+
+    @Override
+    public Uni<ChallengeData> getChallenge(RoutingContext context) {
+        return Uni.createFrom().optional(Optional.empty());
+    }
+
+    @Override
+    public Set<Class<? extends AuthenticationRequest>> getCredentialTypes() {
+        return Set.of();
+    }
+
+    @Override
+    public int getPriority() {
+        return DEFAULT_PRIORITY + 1;
+    }
+}
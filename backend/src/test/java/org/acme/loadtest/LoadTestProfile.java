@@ -0,0 +1,24 @@
+package org.acme.loadtest;
+
+import java.util.List;
+import java.util.Map;
+
+import io.quarkus.test.junit.QuarkusTestProfile;
+
+public class LoadTestProfile implements QuarkusTestProfile {
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        return Map.of(
+                "quarkus.oidc.tenant-enabled", "false",
+                "lab.ratelimit.enabled", "false",
+                "lab.loadtest.header-auth", "true",
+                "lab.latency-probe.enabled", "true",
+                "quarkus.log.category.\"org.acme\".level", "INFO");
+    }
+
+    @Override
+    public List<TestResourceEntry> testResources() {
+        return List.of(new TestResourceEntry(EmbeddedSshServer.class));
+    }
+}
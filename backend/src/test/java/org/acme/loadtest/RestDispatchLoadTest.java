@@ -0,0 +1,132 @@
+package org.acme.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+
+/**
+ * Closed-loop HTTP load on the per-console REST endpoints, served on the I/O thread,
+ * against {@link WorkerPoolResource}, which does the same work on the worker pool.
+ * Each client is its own user (see {@link LoadTestAuthMechanism}). Reports requests per
+ * second and latency percentiles for both.
+ *
+ * <p>Run with {@code ./mvnw test -Ploadtest -Dtest=RestDispatchLoadTest} and tune with
+ * {@code -Dloadtest.rest.clients} and {@code -Dloadtest.rest.seconds}. The client runs in
+ * the same JVM, so compare the two rows with each other rather than with production numbers.
+ */
+@QuarkusTest
+@TestProfile(LoadTestProfile.class)
+@EnabledIfSystemProperty(named = "loadtest.enabled", matches = "true")
+class RestDispatchLoadTest {
+
+    private static final Logger LOG = Logger.getLogger(RestDispatchLoadTest.class);
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.rest.clients", 64);
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("loadtest.rest.seconds", 10L));
+    private static final Duration WARMUP = Duration.ofSeconds(3);
+
+    @TestHTTPResource("/")
+    URI base;
+
+    @Test
+    void eventLoopVersusWorkerPool() throws Exception {
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String[][] endpoints = {
+                { "usage", "api/usage", "api/loadtest/worker/usage" },
+                { "identity", "api/me", "api/loadtest/worker/me" } };
+        long failures = 0;
+        for (String[] endpoint : endpoints) {
+            run(http, endpoint[1], WARMUP);
+            run(http, endpoint[2], WARMUP);
+            Result worker = run(http, endpoint[2], DURATION);
+            Result eventLoop = run(http, endpoint[1], DURATION);
+            LOG.info(worker.describe(endpoint[0] + " worker"));
+            LOG.info(eventLoop.describe(endpoint[0] + " event loop"));
+            LOG.infof("%-20s throughput x%.2f, p99 x%.2f", endpoint[0], eventLoop.perSecond() / worker.perSecond(),
+                    worker.p99Millis() / eventLoop.p99Millis());
+            failures += worker.failures() + eventLoop.failures();
+        }
+        assertEquals(0L, failures, "every request should succeed");
+    }
+
+    private Result run(HttpClient http, String path, Duration duration) throws Exception {
+        Histogram micros = new ConcurrentHistogram(3);
+        LongAdder failures = new LongAdder();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> runs = new ArrayList<>();
+        long[] window = new long[1];
+        for (int i = 0; i < CLIENTS; i++) {
+            HttpRequest request = HttpRequest.newBuilder(base.resolve(path))
+                    .header(LoadTestAuthMechanism.USER_HEADER, "loadtest-" + i)
+                    .header(LoadTestAuthMechanism.ROLES_HEADER, "student")
+                    .GET()
+                    .build();
+            runs.add(clients.submit(() -> {
+                start.await();
+                while (System.nanoTime() - window[0] < 0) {
+                    long sent = System.nanoTime();
+                    HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200) {
+                        micros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+                    } else {
+                        failures.increment();
+                    }
+                }
+                return null;
+            }));
+        }
+        long began = System.nanoTime();
+        window[0] = began + duration.toNanos();
+        start.countDown();
+        for (Future<?> run : runs) {
+            run.get(duration.toSeconds() + 60, TimeUnit.SECONDS);
+        }
+        double seconds = (System.nanoTime() - began) / 1_000_000_000.0;
+        clients.shutdownNow();
+        return new Result(micros, failures.sum(), seconds);
+    }
+
+    private record Result(Histogram micros, long failures, double seconds) {
+
+        double perSecond() {
+            return micros.getTotalCount() / seconds;
+        }
+
+        double p99Millis() {
+            return micros.getValueAtPercentile(99.0) / 1000.0;
+        }
+
+        String describe(String label) {
+            return String.format("%-20s n=%d req/s=%.0f p50=%.2f p90=%.2f p99=%.2f max=%.2f ms failures=%d", label,
+                    micros.getTotalCount(), perSecond(),
+                    micros.getValueAtPercentile(50.0) / 1000.0,
+                    micros.getValueAtPercentile(90.0) / 1000.0,
+                    p99Millis(),
+                    micros.getMaxValue() / 1000.0,
+                    failures);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.acme.loadtest;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.acme.usage.LabUsageService;
+
+import io.quarkus.security.Authenticated;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.common.annotation.Blocking;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Worker-pool copies of {@code /api/usage} and {@code /api/me} for {@link RestDispatchLoadTest}:
+ * same work, but dispatched the way the real endpoints were before they moved to the I/O thread.
+ */
+@Path("/api/loadtest/worker")
+@Authenticated
+@Blocking
+@Produces(MediaType.APPLICATION_JSON)
+public class WorkerPoolResource {
+
+    @Inject
+    LabUsageService usageService;
+
+    @Inject
+    SecurityIdentity identity;
+
+    @GET
+    @Path("usage")
+    public LabUsageService.UsageSnapshot usage() {
+        return usageService.snapshot(identity.getPrincipal().getName(), usageService.resolvePlan(identity));
+    }
+
+    @GET
+    @Path("me")
+    public Map<String, Object> me() {
+        return Map.of("principal", identity.getPrincipal().getName(), "roles", Set.copyOf(identity.getRoles()));
+    }
+}
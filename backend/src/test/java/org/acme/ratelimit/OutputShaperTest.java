@@ -0,0 +1,74 @@
+package org.acme.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.UsagePlan;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OutputShaperTest {
+
+    private static final int FREE = UsagePlan.FREE.ordinal();
+
+    // rates are in KiB per second and bursts in KiB, so every wait below is hundreds of
+    // milliseconds: far longer than the time between two calls of a test
+    private static OutputShaper shaper(double sessionRate, int sessionBurst, double planRate, int planBurst) {
+        OutputShaper shaper = new OutputShaper();
+        shaper.settings = new ShapingSettings(true, 256, sessionRate, sessionBurst, planRate, planBurst,
+                1024, 512, 16384, 4096);
+        shaper.metrics = new LabMetrics(new SimpleMeterRegistry());
+        shaper.init();
+        return shaper;
+    }
+
+    @Test
+    void interactiveFramesOnlyWaitOnTheirOwnSession() {
+        OutputShaper shaper = shaper(1, 1, 4096, 1024);
+        OutputShaper.Flow flow = shaper.open(UsagePlan.FREE);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0L, flow.charge(256));
+        }
+        long wait = flow.charge(256);
+        assertTrue(wait > 100_000_000L && wait <= 250_000_000L, "wait " + wait);
+
+        // another session on the same plan still has its whole burst
+        assertEquals(0L, shaper.open(UsagePlan.FREE).charge(256));
+
+        assertEquals(6, shaper.interactiveFrames[FREE].sum());
+        assertEquals(1, shaper.delayedFrames[FREE].sum());
+        assertEquals(wait, shaper.delayNanos[FREE].sum());
+    }
+
+    @Test
+    void largeFramesWaitOnTheSharedPlanBucket() {
+        OutputShaper shaper = shaper(64, 8, 1, 4);
+        assertEquals(0L, shaper.open(UsagePlan.FREE).charge(4096));
+
+        // a fresh session is within its own budget, but the plan's burst is spent
+        OutputShaper.Flow flow = shaper.open(UsagePlan.FREE);
+        long wait = flow.charge(1024);
+        assertTrue(wait > 500_000_000L && wait <= 1_000_000_000L, "wait " + wait);
+        // a keystroke echo on the same session goes straight through, but is still charged to the plan
+        assertEquals(0L, flow.charge(256));
+        assertTrue(shaper.open(UsagePlan.FREE).charge(1024) > wait);
+
+        // premium sessions draw from their own plan bucket
+        assertEquals(0L, shaper.open(UsagePlan.PREMIUM).charge(4096));
+
+        assertEquals(1, shaper.interactiveFrames[FREE].sum());
+        assertEquals(2, shaper.delayedFrames[FREE].sum());
+        assertEquals(4096 + 1024 + 256 + 1024, shaper.bytes[FREE].sum());
+        assertEquals(0, shaper.delayedFrames[UsagePlan.PREMIUM.ordinal()].sum());
+    }
+
+    @Test
+    void disabledShapingOpensNoFlow() {
+        OutputShaper shaper = new OutputShaper();
+        shaper.settings = new ShapingSettings(false, 256, 1, 1, 1, 1, 1, 1, 1, 1);
+        assertNull(shaper.open(UsagePlan.FREE));
+    }
+}
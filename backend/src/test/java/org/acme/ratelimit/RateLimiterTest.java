@@ -0,0 +1,49 @@
+package org.acme.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.acme.metrics.LabMetrics;
+import org.acme.usage.UsagePlan;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RateLimiterTest {
+
+    private static RateLimiter limiter() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.settings = new RateLimitSettings(true, 12, 6, 6, 3, 50, 2, 30, 10, 20, 6, 200, 2000);
+        limiter.metrics = new LabMetrics(new SimpleMeterRegistry());
+        limiter.initMetrics();
+        return limiter;
+    }
+
+    @Test
+    void heldBucketsSurviveTheIdleSweep() {
+        RateLimiter limiter = limiter();
+        TokenBucket held = limiter.hold(RateLimiter.Scope.MESSAGE, UsagePlan.FREE, "alice", "r1");
+        assertTrue(held.tryAcquire());
+        assertTrue(held.tryAcquire());
+        assertFalse(held.tryAcquire());
+
+        limiter.sweep(System.nanoTime() + 60_000_000_000L);
+        assertSame(held, limiter.hold(RateLimiter.Scope.MESSAGE, UsagePlan.FREE, "alice", "r1"));
+
+        limiter.release(held);
+        limiter.release(held);
+        limiter.sweep(System.nanoTime() + 60_000_000_000L);
+        assertEquals(0, limiter.buckets.size());
+    }
+
+    @Test
+    void unheldBucketsAreSweptOnceRefilled() {
+        RateLimiter limiter = limiter();
+        assertTrue(limiter.tryAcquire(RateLimiter.Scope.TICKET, UsagePlan.FREE, "bob"));
+        assertEquals(1, limiter.buckets.size());
+        limiter.sweep(System.nanoTime() + 3_600_000_000_000L);
+        assertEquals(0, limiter.buckets.size());
+    }
+}
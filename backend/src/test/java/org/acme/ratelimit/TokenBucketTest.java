@@ -0,0 +1,37 @@
+package org.acme.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsBurstThenRejects() {
+        TokenBucket bucket = new TokenBucket(0.01, 3);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        assertTrue(bucket.tryAcquire());
+        Thread.sleep(5);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.isIdle(System.nanoTime() + 10_000_000L));
+    }
+
+    @Test
+    void reserveReturnsDelayBeyondBurst() {
+        TokenBucket bucket = new TokenBucket(1000, 100);
+        assertEquals(0L, bucket.reserve(100));
+        long wait = bucket.reserve(50);
+        assertTrue(wait > 40_000_000L && wait <= 50_000_000L, "wait " + wait);
+        assertFalse(bucket.tryAcquire());
+    }
+}
@@ -0,0 +1,94 @@
+package org.acme.terminal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class InputQueueTest {
+
+    /** Runs drain tasks only when asked, so a test sees what is queued in between. */
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    @Test
+    void writesFramesInOrderInChunks() {
+        List<Integer> writes = new ArrayList<>();
+        ByteArrayOutputStream written = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writes.add(len);
+                super.write(b, off, len);
+            }
+        };
+        InputQueue queue = new InputQueue(tasks::add, written, 64, 4, e -> { });
+
+        assertTrue(queue.offer(bytes("ls -la")));
+        assertTrue(queue.offer(bytes("\r")));
+        assertEquals(7, queue.queuedBytes());
+        // one drain task serves every frame offered while it is pending
+        assertEquals(1, tasks.size());
+
+        runTasks();
+        assertEquals("ls -la\r", written.toString(StandardCharsets.UTF_8));
+        assertEquals(List.of(4, 2, 1), writes);
+        assertEquals(0, queue.queuedBytes());
+    }
+
+    @Test
+    void rejectsFramesOverCapacityWithoutCountingThem() {
+        InputQueue queue = new InputQueue(tasks::add, new ByteArrayOutputStream(), 8, 4, e -> { });
+
+        assertTrue(queue.offer(bytes("12345")));
+        assertFalse(queue.offer(bytes("6789")));
+        assertEquals(5, queue.queuedBytes());
+        assertTrue(queue.offer(bytes("678")));
+        assertEquals(8, queue.queuedBytes());
+
+        runTasks();
+        assertEquals(0, queue.queuedBytes());
+        assertTrue(queue.offer(bytes("abcd")));
+    }
+
+    @Test
+    void closesAndReportsAFailedWrite() {
+        IOException failure = new IOException("broken pipe");
+        AtomicReference<IOException> reported = new AtomicReference<>();
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw failure;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw failure;
+            }
+        };
+        InputQueue queue = new InputQueue(tasks::add, broken, 64, 4, reported::set);
+
+        assertTrue(queue.offer(bytes("x")));
+        runTasks();
+        assertSame(failure, reported.get());
+        assertFalse(queue.offer(bytes("y")));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+package org.acme.terminal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+
+class ObserverHubTest {
+
+    private final AtomicInteger drops = new AtomicInteger();
+    // closes run inline so the test sees them right away
+    private final ObserverHub hub = new ObserverHub(2, 10, Runnable::run, drops::incrementAndGet);
+
+    @Test
+    void aViewerOverItsPendingBytesIsDroppedWithTryAgainLater() {
+        Viewer slow = new Viewer("slow");
+        assertTrue(hub.add(slow.session, null, 0));
+
+        hub.publish("0abcd", 5);
+        hub.publish("0efgh", 5);
+        assertEquals(1, hub.size());
+        hub.publish("0i", 1);
+
+        assertEquals(0, hub.size());
+        assertEquals(1, drops.get());
+        assertEquals(CloseReason.CloseCodes.TRY_AGAIN_LATER, slow.closed.getCloseCode());
+        // the frame over the budget was never queued
+        assertEquals(List.of("0abcd", "0efgh"), slow.sent);
+    }
+
+    @Test
+    void completedSendsGiveTheirBytesBack() {
+        Viewer viewer = new Viewer("v1");
+        hub.add(viewer.session, null, 0);
+
+        hub.publish("0abcd", 5);
+        hub.publish("0efgh", 5);
+        viewer.completeAll();
+        hub.publish("0ijkl", 5);
+        hub.publish("0mnop", 5);
+
+        assertEquals(1, hub.size());
+        assertEquals(0, drops.get());
+        assertNull(viewer.closed);
+    }
+
+    @Test
+    void aSlowViewerDoesNotHoldBackTheOthers() {
+        Viewer slow = new Viewer("slow");
+        Viewer fast = new Viewer("fast");
+        hub.add(slow.session, null, 0);
+        hub.add(fast.session, null, 0);
+
+        // publish never waits: sends to the slow viewer stay pending and it is dropped
+        for (int i = 0; i < 5; i++) {
+            hub.publish("0abcd", 5);
+            fast.completeAll();
+        }
+
+        assertEquals(5, fast.sent.size());
+        assertNull(fast.closed);
+        assertEquals(CloseReason.CloseCodes.TRY_AGAIN_LATER, slow.closed.getCloseCode());
+        assertEquals(1, hub.size());
+    }
+
+    @Test
+    void theReplayIsChargedInUtf8Bytes() {
+        Viewer viewer = new Viewer("v1");
+        String replay = "0éééééé";
+        // 7 chars fit the 10-byte budget, but the 13 bytes on the wire do not
+        assertTrue(hub.add(viewer.session, replay, TerminalFrames.utf8Length(replay)));
+
+        assertEquals(0, hub.size());
+        assertEquals(CloseReason.CloseCodes.TRY_AGAIN_LATER, viewer.closed.getCloseCode());
+    }
+
+    @Test
+    void refusesViewersOverTheLimit() {
+        assertTrue(hub.add(new Viewer("v1").session, null, 0));
+        assertTrue(hub.add(new Viewer("v2").session, null, 0));
+        assertFalse(hub.add(new Viewer("v3").session, null, 0));
+        assertEquals(2, hub.size());
+    }
+
+    /**
+     * A viewer socket whose async sends only complete when the test says so.
+     */
+    private static final class Viewer {
+        private final List<String> sent = new ArrayList<>();
+        private final List<SendHandler> pending = new ArrayList<>();
+        private final Session session;
+        private CloseReason closed;
+
+        Viewer(String id) {
+            RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(
+                    getClass().getClassLoader(), new Class<?>[] { RemoteEndpoint.Async.class },
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("sendText") && args.length == 2) {
+                            sent.add((String) args[0]);
+                            pending.add((SendHandler) args[1]);
+                        }
+                        return null;
+                    });
+            session = (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Session.class }, (proxy, method, args) -> switch (method.getName()) {
+                        case "getId" -> id;
+                        case "isOpen" -> closed == null;
+                        case "getAsyncRemote" -> remote;
+                        case "close" -> {
+                            closed = args != null && args.length == 1 ? (CloseReason) args[0] : null;
+                            yield null;
+                        }
+                        default -> null;
+                    });
+        }
+
+        void completeAll() {
+            List<SendHandler> done = new ArrayList<>(pending);
+            pending.clear();
+            done.forEach(handler -> handler.onResult(new SendResult()));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.acme.terminal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+class OutputWindowTest {
+
+    @Test
+    void reservesUpToTheCreditAndRefundsTheUnreadPart() throws Exception {
+        OutputWindow window = new OutputWindow(10_000);
+        assertEquals(8192, window.reserve(8192));
+        assertEquals(1808, window.credit());
+        // the read returned only 100 bytes
+        window.refund(8192 - 100);
+        assertEquals(9900, window.credit());
+        assertEquals(8192, window.reserve(8192));
+        assertEquals(1708, window.reserve(8192));
+        assertEquals(0, window.credit());
+    }
+
+    @Test
+    void ignoresInvalidGrantsAndCapsTheCredit() {
+        OutputWindow window = new OutputWindow(0);
+        window.grant(0);
+        window.grant(-5);
+        assertEquals(0, window.credit());
+        window.grant(Long.MAX_VALUE);
+        window.grant(Long.MAX_VALUE / 2);
+        assertEquals(Integer.MAX_VALUE, window.credit());
+
+        // a huge grant on top of a positive credit must not overflow
+        OutputWindow funded = new OutputWindow(65536);
+        funded.grant(Long.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, funded.credit());
+    }
+
+    @Test
+    void pumpWaitsForAGrant() throws Exception {
+        OutputWindow window = new OutputWindow(0);
+        CompletableFuture<Integer> reserved = CompletableFuture.supplyAsync(() -> reserve(window, 4096));
+        assertThrows(TimeoutException.class, () -> reserved.get(100, TimeUnit.MILLISECONDS));
+        window.grant(1000);
+        assertEquals(1000, (int) reserved.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void closeReleasesAWaitingPump() throws Exception {
+        OutputWindow window = new OutputWindow(0);
+        CompletableFuture<Integer> reserved = CompletableFuture.supplyAsync(() -> reserve(window, 4096));
+        assertTrue(window.close());
+        assertFalse(window.close());
+        assertEquals(-1, (int) reserved.get(5, TimeUnit.SECONDS));
+        assertEquals(-1, window.reserve(1));
+    }
+
+    private static int reserve(OutputWindow window, int max) {
+        try {
+            return window.reserve(max);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
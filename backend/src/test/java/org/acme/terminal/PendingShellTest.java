@@ -0,0 +1,39 @@
+package org.acme.terminal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+
+class PendingShellTest {
+
+    private final List<PendingShell.Outcome> outcomes = new CopyOnWriteArrayList<>();
+
+    @Test
+    void aFailedConnectIsReportedOnceWhenTaken() {
+        CompletableFuture<SshConnector.Shell> future = CompletableFuture.failedFuture(
+                new IllegalStateException("Connection refused"));
+        PendingShell pending = new PendingShell("r1", future, null, outcomes::add);
+
+        assertNull(pending.take("r1", Duration.ofSeconds(1)));
+        pending.discard();
+        assertEquals(List.of(PendingShell.Outcome.FAILED), outcomes);
+    }
+
+    @Test
+    void aConnectFailingAfterTheDiscardIsReportedOnceAsFailed() {
+        CompletableFuture<SshConnector.Shell> future = new CompletableFuture<>();
+        PendingShell pending = new PendingShell("r1", future, null, outcomes::add);
+
+        pending.discard();
+        assertTrue(outcomes.isEmpty());
+        future.completeExceptionally(new IllegalStateException("Connection refused"));
+        assertEquals(List.of(PendingShell.Outcome.FAILED), outcomes);
+    }
+}
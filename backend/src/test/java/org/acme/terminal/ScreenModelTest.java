@@ -0,0 +1,86 @@
+package org.acme.terminal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class ScreenModelTest {
+
+    @Test
+    void tracksTextCursorAndErase() {
+        ScreenModel screen = new ScreenModel(20, 5);
+        feed(screen, "hello\r\nworld\u001b[2;3Hxx\u001b[K");
+        assertEquals("hello", screen.line(0));
+        assertEquals("woxx", screen.line(1));
+        assertEquals(1, screen.cursorRow());
+        assertEquals(4, screen.cursorColumn());
+    }
+
+    @Test
+    void scrollsWhenOutputPassesTheBottom() {
+        ScreenModel screen = new ScreenModel(20, 3);
+        for (int i = 0; i < 10; i++) {
+            feed(screen, "line" + i + "\r\n");
+        }
+        assertEquals("line8", screen.line(0));
+        assertEquals("line9", screen.line(1));
+        assertEquals("", screen.line(2));
+    }
+
+    @Test
+    void decodesUtf8SplitAcrossChunks() {
+        ScreenModel screen = new ScreenModel(10, 2);
+        byte[] bytes = "été".getBytes(StandardCharsets.UTF_8);
+        screen.feed(bytes, 0, 1);
+        screen.feed(bytes, 1, bytes.length - 1);
+        assertEquals("été", screen.line(0));
+    }
+
+    @Test
+    void snapshotRedrawsScreenAndCarriesUnfinishedSequence() {
+        ScreenModel screen = new ScreenModel(20, 5);
+        feed(screen, "R1# \u001b[31mshow\u001b[0m\r\nok\u001b[3");
+        String snapshot = screen.snapshot();
+        assertTrue(snapshot.contains("\u001b[1;1HR1# \u001b[0;38;5;1mshow\u001b[0m"), snapshot);
+        assertTrue(snapshot.contains("\u001b[2;1Hok"), snapshot);
+        assertTrue(snapshot.endsWith("\u001b[2;3H\u001b[3"), snapshot);
+    }
+
+    @Test
+    void resizeOnTheAlternateScreenKeepsThePrimaryScreen() {
+        ScreenModel screen = new ScreenModel(20, 5);
+        feed(screen, "R1# show run\r\nhostname R1\r\nR1# ");
+        feed(screen, "\u001b[?1049h\u001b[Hless output");
+        screen.resize(15, 4);
+        assertEquals("less output", screen.line(0));
+
+        feed(screen, "\u001b[?1049l");
+        assertEquals("R1# show run", screen.line(0));
+        assertEquals("hostname R1", screen.line(1));
+        assertEquals("R1#", screen.line(2));
+        assertEquals(2, screen.cursorRow());
+        assertEquals(4, screen.cursorColumn());
+    }
+
+    @Test
+    void shrinkingOnTheAlternateScreenDropsThePrimaryRowsAboveTheSavedCursor() {
+        ScreenModel screen = new ScreenModel(20, 5);
+        feed(screen, "a\r\nb\r\nc\r\nd\r\ne");
+        feed(screen, "\u001b[?1049htop");
+        screen.resize(20, 3);
+
+        feed(screen, "\u001b[?1049l");
+        assertEquals("c", screen.line(0));
+        assertEquals("e", screen.line(2));
+        assertEquals(2, screen.cursorRow());
+        assertEquals(1, screen.cursorColumn());
+    }
+
+    private static void feed(ScreenModel screen, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        screen.feed(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,52 @@
+package org.acme.terminal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class ScrollbackBufferTest {
+
+    @Test
+    void replaysFromAnOffsetAcrossTheWrap() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(8);
+        append(buffer, "abcdef");
+        append(buffer, "ghij");
+        assertEquals(10, buffer.position());
+        assertEquals("hij", read(buffer, 7));
+        assertEquals("cdefghij", read(buffer, 2));
+        assertEquals("", read(buffer, 10));
+        assertEquals("", read(buffer, 42));
+    }
+
+    @Test
+    void skipsBytesThatWereOverwritten() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(8);
+        append(buffer, "0123456789");
+        append(buffer, "ab");
+        assertEquals(12, buffer.position());
+        // offsets older than the retained window start at the oldest byte still held
+        assertEquals("456789ab", read(buffer, 0));
+        assertEquals("456789ab", read(buffer, 3));
+    }
+
+    @Test
+    void keepsTheTailOfAnAppendLargerThanTheRing() {
+        ScrollbackBuffer buffer = new ScrollbackBuffer(4);
+        append(buffer, "xy");
+        append(buffer, "abcdefgh");
+        assertEquals(10, buffer.position());
+        assertEquals("efgh", read(buffer, 0));
+        assertEquals("gh", read(buffer, 8));
+    }
+
+    private static void append(ScrollbackBuffer buffer, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.append(bytes, 0, bytes.length);
+    }
+
+    private static String read(ScrollbackBuffer buffer, long from) {
+        return new String(buffer.readFrom(from), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,55 @@
+package org.acme.terminal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class TerminalFramesTest {
+
+    @Test
+    void terminalFramesRoundTripUtf8() {
+        byte[] output = "\u00f1and\u00fa $ ".getBytes(StandardCharsets.UTF_8);
+        String frame = TerminalFrames.output('0', output, output.length);
+        assertEquals("0\u00f1and\u00fa $ ", frame);
+        assertArrayEquals(output, TerminalFrames.input(TerminalFrames.payload(frame)));
+    }
+
+    @Test
+    void muxFramesCarryTheChannelBeforeTheColon() {
+        String frame = TerminalFrames.mux('0', 12, "ls -l: x\r");
+        assertEquals("012:ls -l: x\r", frame);
+        assertEquals(12, TerminalFrames.channel(frame));
+        assertEquals("ls -l: x\r", TerminalFrames.muxPayload(frame));
+        assertEquals("", TerminalFrames.muxPayload(TerminalFrames.mux('c', 3, "")));
+    }
+
+    @Test
+    void malformedMuxFramesHaveNoChannel() {
+        assertEquals(TerminalFrames.NO_CHANNEL, TerminalFrames.channel("0:data"));
+        assertEquals(TerminalFrames.NO_CHANNEL, TerminalFrames.channel("0abc:data"));
+        assertEquals(TerminalFrames.NO_CHANNEL, TerminalFrames.channel("0-1:data"));
+        assertEquals(TerminalFrames.NO_CHANNEL, TerminalFrames.channel("012data"));
+    }
+
+    @Test
+    void holdsBackACharacterSplitAcrossReads() {
+        byte[] text = "a\u00f1\u20ac\ud83d\ude00".getBytes(StandardCharsets.UTF_8);
+        assertEquals(10, text.length);
+        assertEquals(text.length, TerminalFrames.completeLength(text, text.length));
+        assertEquals(1, TerminalFrames.completeLength(text, 2));
+        assertEquals(3, TerminalFrames.completeLength(text, 3));
+        assertEquals(3, TerminalFrames.completeLength(text, 5));
+        assertEquals(6, TerminalFrames.completeLength(text, 9));
+        assertEquals(0, TerminalFrames.completeLength(new byte[] { (byte) 0xE2 }, 1));
+    }
+
+    @Test
+    void countsUtf8BytesOfDecodedOutput() {
+        String text = "a\u00f1\u20ac\ud83d\ude00";
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, TerminalFrames.utf8Length(text));
+        assertEquals(3, TerminalFrames.utf8Length("\ud83d"));
+    }
+}
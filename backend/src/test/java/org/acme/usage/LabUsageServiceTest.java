@@ -0,0 +1,201 @@
+package org.acme.usage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+import org.acme.LabScheduler;
+import org.acme.diagnostics.EventLog;
+import org.acme.diagnostics.EventLogSettings;
+import org.acme.metrics.LabMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LabUsageServiceTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-03-02T09:00:00Z"));
+    private LabUsageService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new LabUsageService();
+        service.clock = clock;
+        service.settings = new LabUsageSettings(2, 10, 30, "premium", false, 15, 15);
+        service.metrics = new LabMetrics(new SimpleMeterRegistry());
+        // metering is driven by the test, not by the scheduler
+        service.scheduler = new LabScheduler() {
+            @Override
+            public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period) {
+                return null;
+            }
+        };
+        service.events = new EventLog(new EventLogSettings(64, 1, 100, 1, 100, 1, 100), service.metrics);
+        service.initOverride();
+    }
+
+    @Test
+    void detachedTimeIsNotCharged() {
+        String session = start("alice");
+        clock.advance(20);
+        service.meterActiveSessions();
+        assertEquals(20, consumed("alice"));
+
+        service.suspendSession(session);
+        clock.advance(100);
+        service.meterActiveSessions();
+        assertEquals(20, consumed("alice"));
+
+        service.resumeSession(session);
+        clock.advance(10);
+        service.finishSession(session);
+        assertEquals(30, consumed("alice"));
+    }
+
+    @Test
+    void anExpiredDetachedSessionSettlesOnlyTheAttachedTime() {
+        String session = start("bob");
+        clock.advance(5);
+        service.suspendSession(session);
+        clock.advance(60);
+        service.resumeSession(session);
+        service.finishSession(session);
+        assertEquals(5, consumed("bob"));
+    }
+
+    @Test
+    void aSharedSessionKeepsChargingWhileAnotherConsoleIsAttached() {
+        String session = start("carol");
+        service.startSession(session);
+        service.suspendSession(session);
+        clock.advance(30);
+        service.meterActiveSessions();
+        assertEquals(30, consumed("carol"));
+
+        // the attached console closes while the other one is still detached
+        service.finishSession(session);
+        clock.advance(30);
+        service.meterActiveSessions();
+        assertEquals(30, consumed("carol"));
+    }
+
+    @Test
+    void meteringChargesStartedSessionsOnEveryTick() {
+        String alice = start("alice");
+        service.prepareSession("bob", UsagePlan.FREE);
+        clock.advance(15);
+        service.meterActiveSessions();
+        assertEquals(15, consumed("alice"));
+        assertEquals(0, consumed("bob"));
+
+        clock.advance(15);
+        service.meterActiveSessions();
+        service.meterActiveSessions();
+        assertEquals(30, consumed("alice"));
+
+        clock.advance(4);
+        service.finishSession(alice);
+        assertEquals(34, consumed("alice"));
+    }
+
+    @Test
+    void meteringCarriesPartialSecondsToTheNextTick() {
+        start("alice");
+        clock.advanceMillis(1_500);
+        service.meterActiveSessions();
+        assertEquals(1, consumed("alice"));
+
+        clock.advanceMillis(1_500);
+        service.meterActiveSessions();
+        assertEquals(3, consumed("alice"));
+    }
+
+    @Test
+    void meteringChargesEachSessionToItsOwnAccount() {
+        start("alice");
+        start("alice");
+        start("dave");
+        clock.advance(10);
+        service.meterActiveSessions();
+        assertEquals(20, consumed("alice"));
+        assertEquals(10, consumed("dave"));
+    }
+
+    @Test
+    void settleAllChargesTheUnmeteredTimeAndEndsEverySession() {
+        List<String> ended = new ArrayList<>();
+        service.onSessionEnded(ended::add);
+        String alice = start("alice");
+        String bob = service.prepareSession("bob", UsagePlan.FREE).sessionId();
+        clock.advance(20);
+        service.meterActiveSessions();
+        clock.advance(7);
+
+        assertEquals(1, service.settleAll());
+        assertEquals(27, consumed("alice"));
+        assertEquals(0, consumed("bob"));
+        assertEquals(Set.of(alice, bob), Set.copyOf(ended));
+        assertFalse(service.hasSession(alice));
+        assertFalse(service.hasSession(bob));
+
+        // the endpoints closing afterwards find nothing left to charge
+        clock.advance(30);
+        assertTrue(service.finishSession(alice).isEmpty());
+        service.meterActiveSessions();
+        assertEquals(0, service.settleAll());
+        assertEquals(27, consumed("alice"));
+    }
+
+    private String start(String principal) {
+        String session = service.prepareSession(principal, UsagePlan.FREE).sessionId();
+        service.startSession(session);
+        return session;
+    }
+
+    private long consumed(String principal) {
+        return service.snapshot(principal, UsagePlan.FREE).consumedSeconds();
+    }
+
+    static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(long seconds) {
+            now = now.plusSeconds(seconds);
+        }
+
+        void advanceMillis(long millis) {
+            now = now.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
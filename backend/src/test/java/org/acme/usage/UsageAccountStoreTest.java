@@ -0,0 +1,110 @@
+package org.acme.usage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class UsageAccountStoreTest {
+
+    private static final long PERIOD = 3600;
+
+    @Test
+    void chargesUpToTheAllowanceAndResetsOnPlanChange() {
+        UsageAccountStore store = new UsageAccountStore(4);
+        assertEquals(100, store.remaining("alice", UsagePlan.FREE, 100, 1_000, PERIOD));
+        store.consume("alice", UsagePlan.FREE, 70, 100, 1_010, PERIOD);
+        store.consume("alice", UsagePlan.FREE, 70, 100, 1_020, PERIOD);
+        assertEquals(0, store.remaining("alice", UsagePlan.FREE, 100, 1_030, PERIOD));
+        assertEquals(500, store.remaining("alice", UsagePlan.PREMIUM, 500, 1_040, PERIOD));
+    }
+
+    @Test
+    void growsAndKeepsAccountsApart() {
+        UsageAccountStore store = new UsageAccountStore(4);
+        for (int i = 0; i < 1_000; i++) {
+            store.consume("user" + i, UsagePlan.FREE, i, 10_000, 1_000, PERIOD);
+        }
+        assertEquals(1_000, store.size());
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(10_000 - i, store.remaining("user" + i, UsagePlan.FREE, 10_000, 1_000, PERIOD));
+        }
+    }
+
+    @Test
+    void evictsOnlyExpiredPeriodsAndReusesSlots() {
+        UsageAccountStore store = new UsageAccountStore(4);
+        store.consume("old", UsagePlan.FREE, 10, 100, 0, PERIOD);
+        store.consume("new", UsagePlan.FREE, 10, 100, PERIOD, PERIOD);
+        assertEquals(1, store.evictExpired(PERIOD + 1, PERIOD));
+        assertEquals(1, store.size());
+        assertEquals(90, store.remaining("new", UsagePlan.FREE, 100, PERIOD + 1, PERIOD));
+        LabUsageService.UsageSnapshot fresh = store.snapshot("old", UsagePlan.FREE, 100, PERIOD + 1, PERIOD);
+        assertEquals(0, fresh.consumedSeconds());
+        assertEquals(PERIOD + 1, fresh.periodStartedAt().getEpochSecond());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void keepsSurvivingAccountsReachableAfterEvictingMany() {
+        UsageAccountStore store = new UsageAccountStore(4);
+        for (int i = 0; i < 1_000; i++) {
+            store.consume("user" + i, UsagePlan.FREE, i, 10_000, i % 3 == 0 ? 0 : PERIOD, PERIOD);
+        }
+        assertEquals(334, store.evictExpired(PERIOD + 1, PERIOD));
+        assertEquals(666, store.size());
+        for (int i = 0; i < 1_000; i++) {
+            if (i % 3 != 0) {
+                assertEquals(10_000 - i, store.remaining("user" + i, UsagePlan.FREE, 10_000, PERIOD + 1, PERIOD));
+            }
+        }
+        assertEquals(666, store.size());
+        assertEquals(0, store.evictExpired(PERIOD + 1, PERIOD));
+    }
+
+    @Test
+    void concurrentAddsAreAllFound() throws Exception {
+        UsageAccountStore store = new UsageAccountStore(4);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> adds = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            adds.add(pool.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    // every thread also charges a shared account
+                    store.consume("user" + thread + "-" + i, UsagePlan.FREE, 1, 10_000, 1_000, PERIOD);
+                    store.consume("shared", UsagePlan.FREE, 1, 10_000, 1_000, PERIOD);
+                }
+            }));
+        }
+        for (Future<?> add : adds) {
+            add.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertEquals(4_001, store.size());
+        assertEquals(10_000 - 4_000, store.remaining("shared", UsagePlan.FREE, 10_000, 1_000, PERIOD));
+        for (int t = 0; t < 8; t++) {
+            for (int i = 0; i < 500; i++) {
+                assertEquals(9_999, store.remaining("user" + t + "-" + i, UsagePlan.FREE, 10_000, 1_000, PERIOD));
+            }
+        }
+    }
+
+    @Test
+    void chargesBatchesIncludingEvictedAccounts() {
+        UsageAccountStore store = new UsageAccountStore(4);
+        store.consume("alice", UsagePlan.FREE, 10, 100, 1_000, PERIOD);
+        String[] names = { "alice", "bob", "alice" };
+        UsagePlan[] plans = { UsagePlan.FREE, UsagePlan.PREMIUM, UsagePlan.FREE };
+        long[] seconds = { 15, 15, 100 };
+        store.consumeAll(names, plans, seconds, 3, 100, 500, 1_015, PERIOD);
+        assertEquals(0, store.remaining("alice", UsagePlan.FREE, 100, 1_015, PERIOD));
+        assertEquals(485, store.remaining("bob", UsagePlan.PREMIUM, 500, 1_015, PERIOD));
+    }
+}
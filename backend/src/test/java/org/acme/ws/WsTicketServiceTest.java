@@ -0,0 +1,116 @@
+package org.acme.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.acme.usage.LabUsageService;
+import org.acme.usage.UsagePlan;
+import org.junit.jupiter.api.Test;
+
+class WsTicketServiceTest {
+
+    private final Set<String> liveSessions = new HashSet<>(Set.of("s1"));
+    private final List<String> cancelled = new ArrayList<>();
+    private final WsTicketService service = newService();
+
+    @Test
+    void singleConsoleTicketIsUsedOnce() {
+        WsTicketService.Ticket ticket = service.issue("alice", "s1", UsagePlan.FREE);
+        assertTrue(service.consume(ticket.value(), "r1").isPresent());
+        assertFalse(service.consume(ticket.value(), "r1").isPresent());
+    }
+
+    @Test
+    void labTicketCoversItsNodesUpToItsUses() {
+        WsTicketService.Ticket ticket = service.issueForLab("alice", "s1", UsagePlan.FREE, "bgp01",
+                Set.of("r1", "r2", "r3"), 0);
+        assertEquals(6, ticket.remainingUses());
+
+        assertFalse(service.consume(ticket.value(), "default").isPresent());
+        for (int i = 0; i < 6; i++) {
+            assertEquals("s1", service.consume(ticket.value(), "r" + (i % 3 + 1)).orElseThrow().sessionId());
+        }
+        assertFalse(service.consume(ticket.value(), "r1").isPresent());
+    }
+
+    @Test
+    void requestedUsesAreCapped() {
+        WsTicketService.Ticket ticket = service.issueForLab("alice", "s1", UsagePlan.FREE, "bgp01",
+                Set.of("r1"), 50);
+        assertEquals(2, ticket.remainingUses());
+    }
+
+    @Test
+    void refusedSingleConsoleUseCancelsItsReservation() {
+        WsTicketService.Ticket ticket = service.issue("alice", "s1", UsagePlan.FREE);
+        service.release(service.consume(ticket.value(), "r1").orElseThrow());
+        assertEquals(List.of("s1"), cancelled);
+    }
+
+    @Test
+    void refusedLabUseIsHandedBackWithoutCancellingTheSharedReservation() {
+        WsTicketService.Ticket ticket = service.issueForLab("alice", "s1", UsagePlan.FREE, "bgp01",
+                Set.of("r1"), 2);
+        WsTicketService.Ticket first = service.consume(ticket.value(), "r1").orElseThrow();
+        WsTicketService.Ticket last = service.consume(ticket.value(), "r1").orElseThrow();
+        service.release(last);
+        service.release(first);
+
+        assertTrue(cancelled.isEmpty());
+        assertTrue(service.consume(ticket.value(), "r1").isPresent());
+        assertTrue(service.consume(ticket.value(), "r1").isPresent());
+        assertFalse(service.consume(ticket.value(), "r1").isPresent());
+    }
+
+    @Test
+    void usesLeftOnASettledSessionAreDropped() {
+        WsTicketService.Ticket ticket = service.issueForLab("alice", "s1", UsagePlan.FREE, "bgp01",
+                Set.of("r1", "r2"), 0);
+        WsTicketService.Ticket used = service.consume(ticket.value(), "r1").orElseThrow();
+        liveSessions.remove("s1");
+        service.revokeSession("s1");
+        assertFalse(service.consume(ticket.value(), "r2").isPresent());
+
+        // a use refused after the session ended is not handed back either
+        service.release(used);
+        assertFalse(service.consume(ticket.value(), "r2").isPresent());
+    }
+
+    @Test
+    void presentingAnExpiredTicketCancelsItsReservation() {
+        WsTicketService.Ticket expired = service.issue("alice", "s1", UsagePlan.FREE, Duration.ofSeconds(-1));
+        WsTicketService.Ticket other = service.issue("alice", "s1", UsagePlan.FREE);
+
+        assertFalse(service.consume(expired.value(), "r1").isPresent());
+        assertEquals(List.of("s1"), cancelled);
+        // the ended session's other tickets are revoked too
+        assertFalse(service.consume(other.value(), "r1").isPresent());
+    }
+
+    private WsTicketService newService() {
+        WsTicketService service = new WsTicketService();
+        service.usageService = new LabUsageService() {
+            @Override
+            public boolean hasSession(String sessionId) {
+                return liveSessions.contains(sessionId);
+            }
+
+            @Override
+            public void cancelSession(String sessionId) {
+                cancelled.add(sessionId);
+                // what the session-ended listener does
+                service.revokeSession(sessionId);
+            }
+        };
+        service.labTtlSeconds = 120;
+        service.labUsesPerNode = 2;
+        return service;
+    }
+}
@@ -2,6 +2,7 @@ import { useEffect, useMemo, useRef, useState } from "react";
 import { Link, Navigate, useParams } from "react-router-dom";
 import SshConsole from "./SshConsole";
 import { findNode, useLabsConfig } from "../hooks/useLabsConfig";
+import { useLabTicket } from "../hooks/useLabTicket";
 import { tutorials } from "../data/tutorials";
 
 const wsRoot = `${window.location.protocol === "https:" ? "wss:" : "ws:"}//${window.location.host}`;
@@ -9,6 +10,7 @@ const wsRoot = `${window.location.protocol === "https:" ? "wss:" : "ws:"}//${win
 export default function LabNodeConsole() {
   const { labId, nodeId } = useParams();
   const { loading, error, config } = useLabsConfig();
+  const requestTicket = useLabTicket(labId);
   const [sessionIds, setSessionIds] = useState([]);
   const [pendingNodeId, setPendingNodeId] = useState("");
   const [expandedTasks, setExpandedTasks] = useState(() => new Set());
@@ -327,7 +329,11 @@ export default function LabNodeConsole() {
                 </div>
               </header>
               <div className="lab-node-console-body">
-                <SshConsole key={`${currentLab.id}-${sessionNode.id}`} wsUrl={makeWsUrl(sessionNode)} />
+                <SshConsole
+                  key={`${currentLab.id}-${sessionNode.id}`}
+                  wsUrl={makeWsUrl(sessionNode)}
+                  requestTicket={requestTicket}
+                />
               </div>
             </article>
           ))}
@@ -1,18 +1,47 @@
-import { useEffect, useRef, useState } from "react";
+import { useCallback, useEffect, useRef, useState } from "react";
 import { Terminal } from "xterm";
 import { FitAddon } from "xterm-addon-fit";
 import "xterm/css/xterm.css";
 import { useAuth } from "../hooks/useAuth";
+import { consoleTicketUrl } from "../hooks/useLabTicket";
+import { createFrameInflater, withFrameCompression } from "./frameCompression";
 
 const MSG_DATA = "0";
 const MSG_RESIZE = "1";
+// server is draining: reconnect with a fresh ticket after the given milliseconds
+const MSG_MIGRATE = "4";
+// close code of a refused or ended connection the server wants retried later (draining, full, rate limited)
+const TRY_AGAIN_LATER = 1013;
+const PREEMPTED_REASON = "Session ended to make room for priority users";
+// retries after a 503 or a TRY_AGAIN_LATER close: doubling delays with jitter, then give up
+const BUSY_RETRY_BASE_MS = 1000;
+const BUSY_RETRY_MAX_MS = 30000;
+const BUSY_RETRY_LIMIT = 6;
 
-export default function SshConsole({ wsUrl }) {
+// node of a /ws/sshterm/<node> URL, or null for other endpoints
+const terminalNode = (wsUrl) => {
+  try {
+    const match = new URL(wsUrl).pathname.match(/\/ws\/sshterm\/([^/]+)$/);
+    return match ? decodeURIComponent(match[1]) : null;
+  } catch {
+    return null;
+  }
+};
+
+/**
+ * `requestTicket(fresh, node)` supplies the WebSocket ticket, e.g. a lab ticket shared with
+ * the other consoles of a lab; without it every console requests its own for its node.
+ */
+export default function SshConsole({ wsUrl, requestTicket }) {
   const containerRef = useRef(null);
   const termRef = useRef(null);
   const fitRef = useRef(null);
   const wsRef = useRef(null);
   const resizeTimerRef = useRef(null);
+  const freshTicketRef = useRef(false);
+  const ticketRetriesRef = useRef(0);
+  const busyRetriesRef = useRef(0);
+  const busyTimerRef = useRef(null);
   const { isAuthenticated, fetchWithAuth } = useAuth();
 
   const [status, setStatus] = useState("disconnected");
@@ -20,6 +49,29 @@ export default function SshConsole({ wsUrl }) {
   const [plan, setPlan] = useState(null);
   const [usage, setUsage] = useState(null);
   const [errorMessage, setErrorMessage] = useState("");
+  const [connectAttempt, setConnectAttempt] = useState(0);
+
+  // schedules another connect attempt after a backoff delay; false once the retries are used up
+  const retryLater = useCallback(() => {
+    const attempt = busyRetriesRef.current;
+    if (attempt >= BUSY_RETRY_LIMIT) return false;
+    busyRetriesRef.current = attempt + 1;
+    const delay = Math.min(BUSY_RETRY_MAX_MS, BUSY_RETRY_BASE_MS * 2 ** attempt);
+    setStatus("waiting");
+    if (busyTimerRef.current) clearTimeout(busyTimerRef.current);
+    busyTimerRef.current = setTimeout(() => {
+      busyTimerRef.current = null;
+      setConnectAttempt((n) => n + 1);
+    }, delay / 2 + Math.random() * (delay / 2));
+    return true;
+  }, []);
+
+  useEffect(
+    () => () => {
+      if (busyTimerRef.current) clearTimeout(busyTimerRef.current);
+    },
+    []
+  );
 
   const formatRemaining = (snapshot) => {
     if (!snapshot) return null;
@@ -48,17 +100,24 @@ export default function SshConsole({ wsUrl }) {
       try {
         setStatus("authorizing");
         setErrorMessage("");
-        const response = await fetchWithAuth("/api/ws-ticket", { method: "POST" });
+        const fresh = freshTicketRef.current;
+        freshTicketRef.current = false;
+        const node = terminalNode(wsUrl);
+        const response = requestTicket
+          ? await requestTicket(fresh, node)
+          : await fetchWithAuth(consoleTicketUrl(node), { method: "POST" });
         if (cancelled) return;
         const ticket = response?.ticket;
         if (!ticket) throw new Error("No ticket returned");
         setPlan(response?.plan ?? null);
         setUsage(response?.usage ?? null);
-        const url = new URL(wsUrl);
+        const url = new URL(withFrameCompression(wsUrl));
         url.searchParams.set("ticket", ticket);
         setResolvedUrl(url.toString());
       } catch (err) {
         console.error("Failed to obtain WebSocket ticket", err);
+        // the server is draining or at capacity: keep the current state and try again later
+        if (!cancelled && err?.status === 503 && retryLater()) return;
         if (!cancelled) {
           setResolvedUrl(null);
           setPlan(null);
@@ -73,7 +132,7 @@ export default function SshConsole({ wsUrl }) {
     return () => {
       cancelled = true;
     };
-  }, [wsUrl, isAuthenticated, fetchWithAuth]);
+  }, [wsUrl, isAuthenticated, fetchWithAuth, requestTicket, connectAttempt, retryLater]);
 
   useEffect(() => {
     if (!resolvedUrl) return;
@@ -100,7 +159,12 @@ export default function SshConsole({ wsUrl }) {
     fitRef.current = fitAddon;
 
     const socket = new WebSocket(resolvedUrl);
+    socket.binaryType = "arraybuffer";
     wsRef.current = socket;
+    let migrateTimer = null;
+    // the backend accepts the upgrade before it checks the ticket, so a refused ticket
+    // shows up as a close after onopen; only output proves the terminal is live
+    let live = false;
     setStatus("connecting");
 
     const sendResize = () => {
@@ -127,7 +191,18 @@ export default function SshConsole({ wsUrl }) {
       sendResize();
     };
 
-    socket.onclose = async () => {
+    socket.onclose = async (event) => {
+      if (!live && !disposed && requestTicket && event.reason === "Invalid ticket" && ticketRetriesRef.current < 1) {
+        // a shared lab ticket ran out or its session ended: retry once with a new one
+        ticketRetriesRef.current += 1;
+        freshTicketRef.current = true;
+        setConnectAttempt((n) => n + 1);
+        return;
+      }
+      if (!disposed && event.code === TRY_AGAIN_LATER && event.reason !== PREEMPTED_REASON && retryLater()) {
+        freshTicketRef.current = true;
+        return;
+      }
       setStatus("disconnected");
       try {
         const snapshot = await fetchWithAuth("/api/usage");
@@ -145,21 +220,36 @@ export default function SshConsole({ wsUrl }) {
       setStatus("error");
     };
 
-    socket.onmessage = (event) => {
-      const message = event.data ?? "";
-      if (!message) return;
+    const handleMessage = (message) => {
+      if (!message || disposed) return;
       const type = message.charAt(0);
       const body = message.substring(1);
+      if (!live) {
+        live = true;
+        ticketRetriesRef.current = 0;
+        busyRetriesRef.current = 0;
+      }
       if (type === MSG_DATA) {
         terminal.write(body);
+      } else if (type === MSG_MIGRATE && !migrateTimer) {
+        const delay = Number.parseInt(body, 10);
+        setStatus("migrating");
+        migrateTimer = setTimeout(() => setConnectAttempt((n) => n + 1), Number.isNaN(delay) ? 0 : delay);
       }
     };
+    const inflater = createFrameInflater(handleMessage, (err) => {
+      console.error("Failed to inflate terminal output", err);
+      socket.close();
+    });
+    socket.onmessage = (event) => inflater.push(event.data ?? "");
 
     const handleResize = () => scheduleResize();
     window.addEventListener("resize", handleResize);
 
     return () => {
       disposed = true;
+      if (migrateTimer) clearTimeout(migrateTimer);
+      inflater.close();
       dataDisposable?.dispose?.();
       window.removeEventListener("resize", handleResize);
       if (resizeTimerRef.current) {
@@ -175,7 +265,7 @@ export default function SshConsole({ wsUrl }) {
       wsRef.current = null;
       setStatus("disconnected");
     };
-  }, [resolvedUrl, fetchWithAuth]);
+  }, [resolvedUrl, fetchWithAuth, requestTicket, retryLater]);
 
   return (
     <div className="console-root">
@@ -0,0 +1,71 @@
+// Frame compression negotiated with ?compress=deflate on /ws/sshterm, /ws/tunnel and /ws/cont:
+// large frames arrive as binary messages (inflated UTF-8 length as 4 bytes big-endian, then
+// raw-deflate data sync-flushed on one stream per socket), small ones as plain text.
+
+export const supportsFrameCompression = () => {
+  try {
+    new DecompressionStream("deflate-raw");
+    return true;
+  } catch {
+    return false;
+  }
+};
+
+// asks for compressed frames when this browser can inflate them
+export const withFrameCompression = (wsUrl) => {
+  if (!supportsFrameCompression()) return wsUrl;
+  const url = new URL(wsUrl);
+  url.searchParams.set("compress", "deflate");
+  return url.toString();
+};
+
+/**
+ * Hands every message of a socket to `onFrame` as text, in arrival order; binary messages
+ * are inflated first. Set the socket's `binaryType` to "arraybuffer".
+ */
+export function createFrameInflater(onFrame, onError) {
+  // created on the first binary message, so plain-text sockets never need DecompressionStream
+  let writer = null;
+  let reader = null;
+  const decoder = new TextDecoder();
+  let inflated = new Uint8Array(0);
+  let queue = Promise.resolve();
+
+  const take = async (length) => {
+    while (inflated.length < length) {
+      const { value, done } = await reader.read();
+      if (done) throw new Error("Compressed stream ended");
+      const merged = new Uint8Array(inflated.length + value.length);
+      merged.set(inflated);
+      merged.set(value, inflated.length);
+      inflated = merged;
+    }
+    const frame = inflated.subarray(0, length);
+    inflated = inflated.subarray(length);
+    return frame;
+  };
+
+  const inflate = async (data) => {
+    if (!writer) {
+      const stream = new DecompressionStream("deflate-raw");
+      writer = stream.writable.getWriter();
+      reader = stream.readable.getReader();
+    }
+    const length = new DataView(data).getUint32(0);
+    // not awaited: the write only settles once its output has been read
+    writer.write(new Uint8Array(data, 4)).catch(() => {});
+    return decoder.decode(await take(length));
+  };
+
+  return {
+    push(data) {
+      queue = queue
+        .then(async () => onFrame(typeof data === "string" ? data : await inflate(data)))
+        .catch((err) => onError?.(err));
+    },
+    close() {
+      reader?.cancel().catch(() => {});
+      writer?.abort().catch(() => {});
+    }
+  };
+}
@@ -129,7 +129,9 @@ export function AuthProvider({ children }) {
       });
       if (!response.ok) {
         const text = await response.text();
-        throw new Error(text || `Request failed with status ${response.status}`);
+        const error = new Error(text || `Request failed with status ${response.status}`);
+        error.status = response.status;
+        throw error;
       }
       if (response.status === 204) return null;
       const contentType = response.headers.get("content-type") ?? "";
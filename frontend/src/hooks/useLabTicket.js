@@ -0,0 +1,64 @@
+import { useCallback, useRef } from "react";
+import { useAuth } from "./useAuth";
+
+// tickets this close to expiry are not handed out any more
+const EXPIRY_MARGIN_MS = 5000;
+
+/**
+ * Ticket URL for a single console; naming the node lets the backend start the SSH
+ * connect while the WebSocket is still being opened.
+ */
+export function consoleTicketUrl(node) {
+  return node ? `/api/ws-ticket?node=${encodeURIComponent(node)}` : "/api/ws-ticket";
+}
+
+/**
+ * Shares one lab ticket between every console of a lab page: the backend lets it open
+ * `uses` connections to the lab's nodes, all charged to a single usage session. A new
+ * ticket is requested once the uses run out, it is about to expire, or a console asks
+ * for a fresh one after the backend refused the ticket. Labs the backend does not know
+ * fall back to one ticket per console, requested for the console's `node`.
+ */
+export function useLabTicket(labId) {
+  const { fetchWithAuth } = useAuth();
+  const currentRef = useRef(null);
+  const perConsoleRef = useRef(false);
+
+  return useCallback(
+    async (fresh = false, node = null) => {
+      if (perConsoleRef.current || !labId) {
+        return fetchWithAuth(consoleTicketUrl(node), { method: "POST" });
+      }
+      let entry = currentRef.current;
+      const used =
+        entry && entry.uses !== undefined &&
+        (entry.taken >= entry.uses || entry.expiresAt - Date.now() < EXPIRY_MARGIN_MS);
+      if (fresh || !entry || entry.failed || used) {
+        entry = {
+          taken: 0,
+          pending: fetchWithAuth(`/api/ws-ticket?lab=${encodeURIComponent(labId)}`, { method: "POST" }),
+        };
+        entry.pending.then(
+          (response) => {
+            entry.uses = response?.uses ?? 1;
+            entry.expiresAt = Date.parse(response?.expiresAt) || 0;
+          },
+          () => {
+            entry.failed = true;
+          }
+        );
+        currentRef.current = entry;
+      }
+      entry.taken += 1;
+      try {
+        return await entry.pending;
+      } catch (err) {
+        const message = err instanceof Error ? err.message : String(err);
+        if (!message.includes("Unknown lab")) throw err;
+        perConsoleRef.current = true;
+        return fetchWithAuth(consoleTicketUrl(node), { method: "POST" });
+      }
+    },
+    [fetchWithAuth, labId]
+  );
+}